@@ -0,0 +1,119 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.service.AvailabilityCalculator;
+import com.sona.warehouse.service.AvailabilityEngine;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ConflictRetry;
+import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.SellableQuantityProjection;
+import com.sona.warehouse.service.StockDecrementBatcher;
+import com.sona.warehouse.service.StockJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the calculation of the sellable quantity of the whole catalog by the {@link AvailabilityEngine}
+ * with the per-product loop of the {@link AvailabilityCalculator} over a stock map.
+ * The stock map is loaded once up front, so both sides measure the calculation only, without repository access.
+ * The repositories are in memory, so there is no mode parameter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AvailabilityEngineBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int catalogSize;
+
+    private WarehouseProperties properties;
+    private AvailabilityCalculator availabilityCalculator;
+    private AvailabilityEngine availabilityEngine;
+    private List<Product> products;
+    private Map<String, Long> stockByArticle;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        properties = new WarehouseProperties();
+        properties.getProduct().getProjection().setEnabled(false);
+        properties.getProduct().getEngine().setEnabled(true);
+        InMemoryInventoryRepository inventoryRepository = new InMemoryInventoryRepository();
+        InMemoryProductRepository productRepository = new InMemoryProductRepository();
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+        availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+        CatalogVersion catalogVersion = new CatalogVersion(properties);
+        availabilityEngine = new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties);
+        ConflictRetry conflictRetry = new ConflictRetry(properties, new SimpleMeterRegistry());
+        SellableQuantityProjection projection = new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion, conflictRetry, properties);
+        StockJournal stockJournal = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine,
+                catalogVersion, properties);
+        new InventoryService(inventoryCache, projection, availabilityEngine, stockJournal, catalogVersion, conflictRetry, properties,
+                new SimpleMeterRegistry())
+                .saveAll(Catalog.inventory(catalogSize));
+        StockDecrementBatcher stockDecrementBatcher = new StockDecrementBatcher(inventoryCache, properties, new SimpleMeterRegistry());
+        new ProductService(productRepository, inventoryCache, availabilityCalculator, projection, availabilityEngine,
+                stockDecrementBatcher, stockJournal, catalogVersion, conflictRetry, properties, new SimpleMeterRegistry())
+                .saveAll(Catalog.products(catalogSize).getProducts());
+
+        products = productRepository.findAll();
+        stockByArticle = availabilityCalculator.findStock(products);
+        availabilityEngine.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        availabilityCalculator.shutdown();
+    }
+
+    @Benchmark
+    public void calculatorLoop(Blackhole blackhole) {
+        for (Product product : products) {
+            long quantity = availabilityCalculator.findQuantity(product, stockByArticle);
+            if (quantity > 0) {
+                blackhole.consume(product);
+                blackhole.consume(quantity);
+            }
+        }
+    }
+
+    @Benchmark
+    public void engineSequential(Blackhole blackhole) {
+        properties.getProduct().getEngine().setParallelThreshold(Integer.MAX_VALUE);
+        availabilityEngine.forEachSellable((product, quantity) -> {
+            blackhole.consume(product);
+            blackhole.consume(quantity);
+        });
+    }
+
+    @Benchmark
+    public void engineParallel(Blackhole blackhole) {
+        properties.getProduct().getEngine().setParallelThreshold(0);
+        availabilityEngine.forEachSellable((product, quantity) -> {
+            blackhole.consume(product);
+            blackhole.consume(quantity);
+        });
+    }
+}
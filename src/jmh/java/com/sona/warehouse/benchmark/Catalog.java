@@ -0,0 +1,61 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.ProductArticleDTO;
+import com.sona.warehouse.dto.ProductDTO;
+import com.sona.warehouse.dto.ProductUploadDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates deterministic uploads for the benchmarks.
+ * A catalog of size {@code n} has {@code n} articles and {@code n} products;
+ * product {@code i} contains {@value #ARTICLES_PER_PRODUCT} consecutive articles starting at article {@code i},
+ * so every article is shared by several products.
+ */
+final class Catalog {
+
+    static final int ARTICLES_PER_PRODUCT = 4;
+
+    /**
+     * Stock per article, high enough that the sell benchmarks never run out.
+     */
+    static final long STOCK = 1_000_000_000_000L;
+
+    private Catalog() {
+    }
+
+    static InventoryDTO inventory(int size) {
+        List<InventoryArticleDTO> articles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            InventoryArticleDTO article = new InventoryArticleDTO();
+            article.setArticleId(articleId(i));
+            article.setName("article " + i);
+            article.setStock(Long.toString(STOCK));
+            articles.add(article);
+        }
+        InventoryDTO inventory = new InventoryDTO();
+        inventory.setInventory(articles);
+        return inventory;
+    }
+
+    static ProductUploadDTO products(int size) {
+        List<ProductDTO> products = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<ProductArticleDTO> articles = new ArrayList<>(ARTICLES_PER_PRODUCT);
+            for (int a = 0; a < ARTICLES_PER_PRODUCT; a++) {
+                articles.add(new ProductArticleDTO(articleId((i + a) % size), Integer.toString(a + 1)));
+            }
+            products.add(new ProductDTO("product " + i, 10.0 + i % 100, articles));
+        }
+        ProductUploadDTO upload = new ProductUploadDTO();
+        upload.setProducts(products);
+        return upload;
+    }
+
+    private static String articleId(int index) {
+        return Integer.toString(index + 1);
+    }
+}
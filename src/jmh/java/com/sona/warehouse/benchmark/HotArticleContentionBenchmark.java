@@ -0,0 +1,181 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.WarehouseApplication;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.ProductArticleDTO;
+import com.sona.warehouse.dto.ProductDTO;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.ProductRepository;
+import com.sona.warehouse.service.AvailabilityCalculator;
+import com.sona.warehouse.service.AvailabilityEngine;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ConflictRetry;
+import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.SellableQuantityProjection;
+import com.sona.warehouse.service.StockDecrementBatcher;
+import com.sona.warehouse.service.StockJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sales per second of products that all contain the same hot article, as the number of concurrent sellers grows.
+ * Every product contains {@value #HOT_ARTICLE} and one article of its own, so all sales decrement the hot article.
+ * With {@code stripes=0} they all write its single inventory document; otherwise its stock is split into that many stripes.
+ * The projection is disabled, so that the numbers are dominated by the stock writes.
+ * In {@code memory} mode a write costs next to nothing, so the stripes only show their overhead there;
+ * the contention on the inventory document they remove is measured in {@code mongo} mode.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotArticleContentionBenchmark {
+
+    static final String HOT_ARTICLE = "screw";
+    private static final int PRODUCTS = 64;
+
+    @Param({"memory", "mongo"})
+    public String mode;
+
+    @Param({"0", "8"})
+    public int stripes;
+
+    private ProductService productService;
+    private List<Product> products;
+    private MongoDBContainer container;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InventoryService inventoryService;
+        ProductRepository productRepository;
+        switch (mode) {
+            case "memory" -> {
+                WarehouseProperties properties = new WarehouseProperties();
+                properties.getProduct().getProjection().setEnabled(false);
+                if (stripes > 0) {
+                    properties.getInventory().getHotArticles().getStripes().put(HOT_ARTICLE, stripes);
+                }
+                InMemoryInventoryRepository inventoryRepository = new InMemoryInventoryRepository();
+                productRepository = new InMemoryProductRepository();
+                InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+                AvailabilityCalculator availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+                CatalogVersion catalogVersion = new CatalogVersion(properties);
+                ConflictRetry conflictRetry = new ConflictRetry(properties, new SimpleMeterRegistry());
+                SellableQuantityProjection projection =
+                        new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion, conflictRetry, properties);
+                AvailabilityEngine availabilityEngine = new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties);
+                StockJournal stockJournal = new StockJournal(inventoryRepository, inventoryCache, projection,
+                        availabilityEngine, catalogVersion, properties);
+                productService = new ProductService(productRepository, inventoryCache, availabilityCalculator, projection,
+                        availabilityEngine, new StockDecrementBatcher(inventoryCache, properties, new SimpleMeterRegistry()),
+                        stockJournal, catalogVersion, conflictRetry, properties, new SimpleMeterRegistry());
+                inventoryService = new InventoryService(inventoryCache, projection, availabilityEngine, stockJournal,
+                        catalogVersion, conflictRetry, properties, new SimpleMeterRegistry());
+            }
+            case "mongo" -> {
+                container = new MongoDBContainer(DockerImageName.parse("mongo:latest"));
+                container.start();
+                List<String> args = new ArrayList<>(List.of(
+                        "--spring.data.mongodb.uri=" + container.getReplicaSetUrl("warehouse"),
+                        "--warehouse.product.projection.enabled=false",
+                        "--logging.level.root=WARN"));
+                if (stripes > 0) {
+                    args.add("--warehouse.inventory.hot-articles.stripes[" + HOT_ARTICLE + "]=" + stripes);
+                }
+                context = new SpringApplicationBuilder(WarehouseApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .run(args.toArray(String[]::new));
+                productRepository = context.getBean(ProductRepository.class);
+                productService = context.getBean(ProductService.class);
+                inventoryService = context.getBean(InventoryService.class);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        List<InventoryArticleDTO> articles = new ArrayList<>();
+        articles.add(article(HOT_ARTICLE));
+        List<ProductDTO> productDTOs = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            articles.add(article("part " + i));
+            productDTOs.add(new ProductDTO("product " + i, 10.0,
+                    List.of(new ProductArticleDTO(HOT_ARTICLE, "2"), new ProductArticleDTO("part " + i, "1"))));
+        }
+        inventoryService.saveAll(articles.iterator());
+        productService.saveAll(productDTOs);
+        products = productRepository.findAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long sellers01(WarehouseState.Cursor cursor) {
+        return sell(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long sellers04(WarehouseState.Cursor cursor) {
+        return sell(cursor);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long sellers16(WarehouseState.Cursor cursor) {
+        return sell(cursor);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long sellers64(WarehouseState.Cursor cursor) {
+        return sell(cursor);
+    }
+
+    private long sell(WarehouseState.Cursor cursor) {
+        return productService.sell(cursor.next(products).getId());
+    }
+
+    private static InventoryArticleDTO article(String articleId) {
+        InventoryArticleDTO article = new InventoryArticleDTO();
+        article.setArticleId(articleId);
+        article.setName(articleId);
+        article.setStock(Long.toString(Catalog.STOCK));
+        return article;
+    }
+}
@@ -0,0 +1,161 @@
+package com.sona.warehouse.benchmark;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.InventoryStripe;
+import com.sona.warehouse.model.StockJournalEntry;
+import com.sona.warehouse.repository.InventoryRepository;
+import org.bson.BsonString;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An {@link InventoryRepository} in memory, applying the conditional stock updates atomically per article
+ * like the {@code findAndModify} calls of the MongoDB implementation.
+ */
+class InMemoryInventoryRepository extends InMemoryRepository<Inventory> implements InventoryRepository {
+
+    // The stock of the stripes of hot articles, keyed by stripe ID
+    private final ConcurrentNavigableMap<String, Long> stripes = new ConcurrentSkipListMap<>();
+
+    @Override
+    protected String idOf(Inventory inventory) {
+        return inventory.getArticleId();
+    }
+
+    @Override
+    public Optional<Inventory> decrementStock(String articleId, long amount) {
+        Inventory[] updated = new Inventory[1];
+        documents.computeIfPresent(articleId, (id, inventory) -> {
+            if (inventory.getStock() < amount) {
+                return inventory;
+            }
+            updated[0] = new Inventory(id, inventory.getName(), inventory.getStock() - amount);
+            return updated[0];
+        });
+        return Optional.ofNullable(updated[0]);
+    }
+
+    @Override
+    public Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        List<Map.Entry<String, Long>> decremented = new ArrayList<>();
+        for (Map.Entry<String, Long> amount : amountByArticle.entrySet()) {
+            if (decrementStock(amount.getKey(), amount.getValue()).isEmpty()) {
+                decremented.forEach(restored -> incrementStock(restored.getKey(), restored.getValue()));
+                return Optional.of(amount.getKey());
+            }
+            decremented.add(amount);
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Inventory> incrementStock(String articleId, long amount) {
+        return Optional.ofNullable(documents.computeIfPresent(articleId,
+                (id, inventory) -> new Inventory(id, inventory.getName(), inventory.getStock() + amount)));
+    }
+
+    @Override
+    public BulkWriteResult addStock(List<Inventory> articles, boolean ordered) {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        int matched = 0;
+        for (int index = 0; index < articles.size(); index++) {
+            Inventory article = articles.get(index);
+            Inventory previous = documents.get(article.getArticleId());
+            documents.merge(article.getArticleId(), article, (existing, added) ->
+                    new Inventory(existing.getArticleId(), existing.getName(), existing.getStock() + added.getStock()));
+            if (previous == null) {
+                upserts.add(new BulkWriteUpsert(index, new BsonString(article.getArticleId())));
+            } else {
+                matched++;
+            }
+        }
+        return BulkWriteResult.acknowledged(0, matched, 0, matched, upserts, List.of());
+    }
+
+    @Override
+    public int applyJournal(List<StockJournalEntry> entries) {
+        int applied = 0;
+        for (StockJournalEntry entry : entries) {
+            for (StockJournalEntry.Delta delta : entry.getDeltas()) {
+                Inventory previous = documents.get(delta.getArticleId());
+                if (previous != null && previous.getJournalSequence() != null && previous.getJournalSequence() >= entry.getSequence()) {
+                    continue;
+                }
+                Inventory updated = previous == null
+                        ? new Inventory(delta.getArticleId(), delta.getName(), delta.getAmount())
+                        : new Inventory(previous.getArticleId(), previous.getName(), previous.getStock() + delta.getAmount());
+                updated.setJournalSequence(entry.getSequence());
+                documents.put(delta.getArticleId(), updated);
+                applied++;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public long findMaxJournalSequence() {
+        return documents.values().stream()
+                .map(Inventory::getJournalSequence)
+                .filter(Objects::nonNull)
+                .mapToLong(Long::longValue)
+                .max()
+                .orElse(0L);
+    }
+
+    @Override
+    public boolean decrementStripe(String articleId, int stripe, long amount) {
+        boolean[] decremented = new boolean[1];
+        stripes.computeIfPresent(InventoryStripe.idOf(articleId, stripe), (id, stock) -> {
+            decremented[0] = stock >= amount;
+            return decremented[0] ? stock - amount : stock;
+        });
+        return decremented[0];
+    }
+
+    @Override
+    public long rebalanceStripes(String articleId, int stripeCount, long minimum) {
+        long[] total = new long[1];
+        if (documents.computeIfPresent(articleId, (id, inventory) -> {
+            total[0] += inventory.getStock();
+            return new Inventory(id, inventory.getName(), 0L);
+        }) == null) {
+            return 0;
+        }
+        for (String stripeId : ofArticle(articleId).keySet()) {
+            stripes.computeIfPresent(stripeId, (id, stock) -> {
+                total[0] += stock;
+                return 0L;
+            });
+        }
+        long share = total[0] / stripeCount;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            long amount = share >= minimum ? share + (stripe < total[0] % stripeCount ? 1 : 0) : (stripe == 0 ? total[0] : 0);
+            stripes.merge(InventoryStripe.idOf(articleId, stripe), amount, Long::sum);
+        }
+        return total[0];
+    }
+
+    @Override
+    public Map<String, Long> findStripedStock(Collection<String> articleIds) {
+        Map<String, Long> stock = new HashMap<>();
+        for (String articleId : articleIds) {
+            ofArticle(articleId).values().forEach(amount -> stock.merge(articleId, amount, Long::sum));
+        }
+        return stock;
+    }
+
+    private ConcurrentNavigableMap<String, Long> ofArticle(String articleId) {
+        // '$' follows '#', so the range holds exactly the stripes of the article
+        return stripes.subMap(articleId + "#", articleId + "$");
+    }
+}
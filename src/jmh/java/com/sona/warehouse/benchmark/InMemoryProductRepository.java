@@ -0,0 +1,155 @@
+package com.sona.warehouse.benchmark;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.ProductRepository;
+import org.bson.BsonString;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ProductRepository} in memory.
+ * Products are also indexed by name and by contained article, so that lookups cost about as much
+ * as the indexed queries of the MongoDB implementation instead of a scan of every product.
+ */
+class InMemoryProductRepository extends InMemoryRepository<Product> implements ProductRepository {
+
+    private final Map<String, String> idByName = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> idsByArticle = new ConcurrentHashMap<>();
+
+    @Override
+    protected String idOf(Product product) {
+        if (product.getId() == null) {
+            product.setId(new ObjectId().toHexString());
+        }
+        return product.getId();
+    }
+
+    @Override
+    public <S extends Product> S save(S product) {
+        super.save(product);
+        idByName.put(product.getName(), product.getId());
+        product.getContainArticles().forEach(article ->
+                idsByArticle.computeIfAbsent(article.getArticleId(), id -> ConcurrentHashMap.newKeySet()).add(product.getId()));
+        return product;
+    }
+
+    @Override
+    public void deleteAll() {
+        super.deleteAll();
+        idByName.clear();
+        idsByArticle.clear();
+    }
+
+    @Override
+    public Optional<Product> findByName(String name) {
+        return Optional.ofNullable(idByName.get(name)).map(documents::get);
+    }
+
+    @Override
+    public List<Product> findByNameIn(Collection<String> names) {
+        List<Product> products = new ArrayList<>();
+        names.forEach(name -> findByName(name).ifPresent(products::add));
+        return products;
+    }
+
+    @Override
+    public List<Product> findByContainArticlesArticleIdIn(Collection<String> articleIds) {
+        Set<String> ids = new LinkedHashSet<>();
+        articleIds.forEach(articleId -> ids.addAll(idsByArticle.getOrDefault(articleId, Set.of())));
+        return findAllById(ids);
+    }
+
+    @Override
+    public List<Product> findBySellableQuantityGreaterThan(long quantity) {
+        return documents.values().stream().filter(product -> isAbove(product, quantity)).toList();
+    }
+
+    @Override
+    public List<Product> findAllBy(Pageable pageable) {
+        return page(null, pageable);
+    }
+
+    @Override
+    public List<Product> findByIdGreaterThan(String id, Pageable pageable) {
+        return page(id, pageable);
+    }
+
+    @Override
+    public List<Product> findBySellableQuantityGreaterThan(long quantity, Pageable pageable) {
+        return findBySellableQuantityGreaterThanAndIdGreaterThan(quantity, null, pageable);
+    }
+
+    @Override
+    public List<Product> findBySellableQuantityGreaterThanAndIdGreaterThan(long quantity, String id, Pageable pageable) {
+        return (id == null ? documents : documents.tailMap(id, false)).values().stream()
+                .filter(product -> isAbove(product, quantity))
+                .limit(pageable.getPageSize())
+                .toList();
+    }
+
+    @Override
+    public BulkWriteResult upsertByName(List<Product> products, boolean ordered) {
+        List<BulkWriteUpsert> upserts = new ArrayList<>();
+        int matched = 0;
+        for (int index = 0; index < products.size(); index++) {
+            Product product = products.get(index);
+            Optional<Product> existing = findByName(product.getName());
+            Product written = Product.builder()
+                    .id(existing.map(Product::getId).orElse(null))
+                    .name(product.getName())
+                    .price(product.getPrice())
+                    .containArticles(product.getContainArticles())
+                    .sellableQuantity(existing.map(Product::getSellableQuantity).orElse(null))
+                    .build();
+            save(written);
+            if (existing.isPresent()) {
+                matched++;
+            } else {
+                upserts.add(new BulkWriteUpsert(index, new BsonString(written.getId())));
+            }
+        }
+        return BulkWriteResult.acknowledged(0, matched, 0, matched, upserts, List.of());
+    }
+
+    @Override
+    public int updateSellableQuantities(List<Product> products, Map<String, Long> quantityById) {
+        int written = 0;
+        for (Product read : products) {
+            Product[] updated = new Product[1];
+            documents.computeIfPresent(read.getId(), (id, product) -> {
+                if (!Objects.equals(product.getVersion(), read.getVersion())) {
+                    return product;
+                }
+                updated[0] = Product.builder()
+                        .id(id)
+                        .name(product.getName())
+                        .price(product.getPrice())
+                        .containArticles(product.getContainArticles())
+                        .sellableQuantity(quantityById.get(id))
+                        .version(product.getVersion() == null ? 1L : product.getVersion() + 1)
+                        .build();
+                return updated[0];
+            });
+            if (updated[0] != null) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    private static boolean isAbove(Product product, long quantity) {
+        return product.getSellableQuantity() != null && product.getSellableQuantity() > quantity;
+    }
+}
@@ -0,0 +1,42 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.InventoryUploadResultDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link com.sona.warehouse.service.InventoryService#saveAll(InventoryDTO)} re-uploading the whole inventory,
+ * so every article is an update of an existing one and the products containing it are recalculated.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InventoryServiceBenchmark {
+
+    private InventoryDTO upload;
+
+    @Setup(Level.Trial)
+    public void setUp(WarehouseState state) {
+        upload = Catalog.inventory(state.catalogSize);
+    }
+
+    @Benchmark
+    public InventoryUploadResultDTO saveAll(WarehouseState state) {
+        return state.inventoryService.saveAll(upload);
+    }
+}
@@ -0,0 +1,56 @@
+package com.sona.warehouse.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.ProductUploadDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the Jackson deserialization of whole inventory and product upload documents.
+ * No repository is involved, so there is no mode parameter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int catalogSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] inventory;
+    private byte[] products;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        inventory = objectMapper.writeValueAsBytes(Catalog.inventory(catalogSize));
+        products = objectMapper.writeValueAsBytes(Catalog.products(catalogSize));
+    }
+
+    @Benchmark
+    public InventoryDTO readInventory() throws IOException {
+        return objectMapper.readValue(inventory, InventoryDTO.class);
+    }
+
+    @Benchmark
+    public ProductUploadDTO readProducts() throws IOException {
+        return objectMapper.readValue(products, ProductUploadDTO.class);
+    }
+}
@@ -0,0 +1,70 @@
+package com.sona.warehouse.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.controller.ProductListingCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Measures the body of {@code GET /api/products}: the products listed and serialized for every request,
+ * against the bytes kept by the {@link ProductListingCache}, each as JSON and gzip.
+ * The cached benchmarks measure requests between two changes; the first request after a change costs as much as
+ * the uncached one. Add {@code -prof gc} to the JMH arguments to compare the allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductListingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ProductListingCache listingCache;
+
+    @Setup(Level.Trial)
+    public void setUp(WarehouseState state) {
+        listingCache = new ProductListingCache(state.productService, state.catalogVersion, objectMapper,
+                new WarehouseProperties(), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public byte[] encodeJson(WarehouseState state) throws IOException {
+        return objectMapper.writeValueAsBytes(state.productService.findAll());
+    }
+
+    @Benchmark
+    public byte[] encodeGzip(WarehouseState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 8192)) {
+            objectMapper.writeValue(gzip, state.productService.findAll());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] cachedJson() {
+        return listingCache.get().getJson();
+    }
+
+    @Benchmark
+    public byte[] cachedGzip() {
+        return listingCache.get().getGzip();
+    }
+}
@@ -0,0 +1,42 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.dto.SellableProductDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the read and sell paths of {@link com.sona.warehouse.service.ProductService}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductServiceBenchmark {
+
+    @Benchmark
+    public List<SellableProductDTO> findAll(WarehouseState state) {
+        return state.productService.findAll();
+    }
+
+    @Benchmark
+    public void sell(WarehouseState state, WarehouseState.Cursor cursor) {
+        state.productService.sell(cursor.next(state.products).getId());
+    }
+
+    /**
+     * The sellable quantity of one product, read through the inventory cache.
+     */
+    @Benchmark
+    public long findQuantity(WarehouseState state, WarehouseState.Cursor cursor) {
+        return state.availabilityCalculator.findQuantity(cursor.next(state.products));
+    }
+}
@@ -0,0 +1,62 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.dto.ProductDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link com.sona.warehouse.service.ProductService#saveAll(java.util.Iterator)} uploading a whole catalog
+ * onto an existing catalog of the same size, so every product is upserted by name onto an existing one.
+ * The catalog is set up like {@link WarehouseState}, but with a size of its own, as it is larger than the catalogs
+ * of the other benchmarks; every upload takes long enough to be measured on its own.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ProductUploadBenchmark {
+
+    @Param({"memory", "mongo"})
+    public String mode;
+
+    @Param({"50000"})
+    public int catalogSize;
+
+    private WarehouseState catalog;
+    private List<ProductDTO> upload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        catalog = new WarehouseState();
+        catalog.mode = mode;
+        catalog.catalogSize = catalogSize;
+        catalog.setUp();
+        upload = Catalog.products(catalogSize).getProducts();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        catalog.tearDown();
+    }
+
+    @Benchmark
+    public void saveAll() {
+        catalog.productService.saveAll(upload.iterator());
+    }
+}
@@ -0,0 +1,160 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.ProductDTO;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.service.AvailabilityCalculator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Compares resolving the stock of the whole catalog with one {@code findById} per article of every product,
+ * as before the batched lookups, with {@link AvailabilityCalculator#findStock(java.util.Collection)},
+ * which sends {@code $in} queries of {@code warehouse.inventory.lookup-batch-size} IDs.
+ * Every repository call is counted as a round trip and waits {@code roundTripMicros} to stand in for the network;
+ * the {@code roundTrips} counter reports the round trips of one operation next to its latency.
+ * The inventory cache is disabled, so every lookup reaches the repository.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StockLookupBenchmark {
+
+    @Param({"1000"})
+    public int catalogSize;
+
+    @Param({"0", "100"})
+    public long roundTripMicros;
+
+    private RoundTripInventoryRepository inventoryRepository;
+    private AvailabilityCalculator availabilityCalculator;
+    private List<Product> products;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        WarehouseProperties properties = new WarehouseProperties();
+        properties.getInventory().getCache().setEnabled(false);
+        inventoryRepository = new RoundTripInventoryRepository(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        for (InventoryArticleDTO article : Catalog.inventory(catalogSize).getInventory()) {
+            inventoryRepository.save(new Inventory(article.getArticleId(), article.getName(), Long.parseLong(article.getStock())));
+        }
+        availabilityCalculator = new AvailabilityCalculator(
+                new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry()), properties);
+
+        products = new ArrayList<>(catalogSize);
+        List<ProductDTO> uploaded = Catalog.products(catalogSize).getProducts();
+        for (int i = 0; i < uploaded.size(); i++) {
+            ProductDTO product = uploaded.get(i);
+            products.add(Product.builder()
+                    .id(Integer.toString(i))
+                    .name(product.getName())
+                    .price(product.getPrice())
+                    .containArticles(product.getContainArticles().stream()
+                            .map(article -> new Product.ArticleQuantity(article.getArticleId(), Long.parseLong(article.getAmountOf())))
+                            .toList())
+                    .build());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        availabilityCalculator.shutdown();
+    }
+
+    /**
+     * One {@code findById} per article of every product, as the stock was resolved before the batched lookups.
+     */
+    @Benchmark
+    public void perArticle(RoundTrips roundTrips, Blackhole blackhole) {
+        long before = inventoryRepository.calls.get();
+        for (Product product : products) {
+            long quantity = Long.MAX_VALUE;
+            for (Product.ArticleQuantity article : product.getContainArticles()) {
+                Optional<Inventory> inventory = inventoryRepository.findById(article.getArticleId());
+                quantity = Math.min(quantity, inventory.map(Inventory::getStock).orElse(0L) / article.getQuantity());
+            }
+            blackhole.consume(quantity);
+        }
+        roundTrips.roundTrips = inventoryRepository.calls.get() - before;
+    }
+
+    @Benchmark
+    public void batched(RoundTrips roundTrips, Blackhole blackhole) {
+        long before = inventoryRepository.calls.get();
+        Map<String, Long> stockByArticle = availabilityCalculator.findStock(products);
+        for (Product product : products) {
+            blackhole.consume(availabilityCalculator.findQuantity(product, stockByArticle));
+        }
+        roundTrips.roundTrips = inventoryRepository.calls.get() - before;
+    }
+
+    /**
+     * The repository calls of the last operation; the lookups are deterministic, so every operation makes as many.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RoundTrips {
+
+        public long roundTrips;
+    }
+
+    /**
+     * Counts the lookups and waits for a simulated round trip on each of them.
+     */
+    static class RoundTripInventoryRepository extends InMemoryInventoryRepository {
+
+        final AtomicLong calls = new AtomicLong();
+        private final long roundTripNanos;
+
+        RoundTripInventoryRepository(long roundTripNanos) {
+            this.roundTripNanos = roundTripNanos;
+        }
+
+        @Override
+        public Optional<Inventory> findById(String id) {
+            roundTrip();
+            return super.findById(id);
+        }
+
+        @Override
+        public List<Inventory> findAllById(Iterable<String> ids) {
+            roundTrip();
+            return super.findAllById(ids);
+        }
+
+        private void roundTrip() {
+            calls.incrementAndGet();
+            if (roundTripNanos > 0) {
+                LockSupport.parkNanos(roundTripNanos);
+            }
+        }
+    }
+}
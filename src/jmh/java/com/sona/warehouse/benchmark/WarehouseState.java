@@ -0,0 +1,131 @@
+package com.sona.warehouse.benchmark;
+
+import com.sona.warehouse.WarehouseApplication;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import com.sona.warehouse.service.AvailabilityCalculator;
+import com.sona.warehouse.service.AvailabilityEngine;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ConflictRetry;
+import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.SellableQuantityProjection;
+import com.sona.warehouse.service.StockDecrementBatcher;
+import com.sona.warehouse.service.StockJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+
+/**
+ * The services under benchmark, loaded with a generated {@link Catalog}.
+ * <ul>
+ *     <li>{@code memory}: the services are wired by hand on top of in-memory repositories, so no database or Docker is needed
+ *     and the numbers isolate the cost of the service code itself.</li>
+ *     <li>{@code mongo}: the application context is started against a MongoDB Testcontainer, so the numbers include
+ *     the driver and database round trips.</li>
+ * </ul>
+ * The default configuration of {@link WarehouseProperties} is used in both modes, with the inventory cache and projection enabled.
+ */
+@State(Scope.Benchmark)
+public class WarehouseState {
+
+    @Param({"memory", "mongo"})
+    public String mode;
+
+    @Param({"1000", "10000"})
+    public int catalogSize;
+
+    ProductService productService;
+    InventoryService inventoryService;
+    AvailabilityCalculator availabilityCalculator;
+    InventoryCache inventoryCache;
+    CatalogVersion catalogVersion;
+    List<Product> products;
+
+    private MongoDBContainer container;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ProductRepository productRepository;
+        switch (mode) {
+            case "memory" -> {
+                WarehouseProperties properties = new WarehouseProperties();
+                InventoryRepository inventoryRepository = new InMemoryInventoryRepository();
+                productRepository = new InMemoryProductRepository();
+                inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+                availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+                catalogVersion = new CatalogVersion(properties);
+                ConflictRetry conflictRetry = new ConflictRetry(properties, new SimpleMeterRegistry());
+                SellableQuantityProjection projection =
+                        new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion, conflictRetry, properties);
+                AvailabilityEngine availabilityEngine = new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties);
+                StockJournal stockJournal = new StockJournal(inventoryRepository, inventoryCache, projection,
+                        availabilityEngine, catalogVersion, properties);
+                productService = new ProductService(productRepository, inventoryCache, availabilityCalculator, projection,
+                        availabilityEngine, new StockDecrementBatcher(inventoryCache, properties, new SimpleMeterRegistry()),
+                        stockJournal, catalogVersion, conflictRetry, properties, new SimpleMeterRegistry());
+                inventoryService = new InventoryService(inventoryCache, projection, availabilityEngine, stockJournal,
+                        catalogVersion, conflictRetry, properties, new SimpleMeterRegistry());
+            }
+            case "mongo" -> {
+                container = new MongoDBContainer(DockerImageName.parse("mongo:latest"));
+                container.start();
+                context = new SpringApplicationBuilder(WarehouseApplication.class)
+                        .web(WebApplicationType.NONE)
+                        .run("--spring.data.mongodb.uri=" + container.getReplicaSetUrl("warehouse"),
+                                "--logging.level.root=WARN");
+                productRepository = context.getBean(ProductRepository.class);
+                inventoryCache = context.getBean(InventoryCache.class);
+                availabilityCalculator = context.getBean(AvailabilityCalculator.class);
+                productService = context.getBean(ProductService.class);
+                inventoryService = context.getBean(InventoryService.class);
+                catalogVersion = context.getBean(CatalogVersion.class);
+            }
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+
+        inventoryService.saveAll(Catalog.inventory(catalogSize));
+        productService.saveAll(Catalog.products(catalogSize).getProducts());
+        products = productRepository.findAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+        if (container != null) {
+            container.stop();
+        }
+    }
+
+    /**
+     * Picks the product for the next operation of a thread, cycling through the whole catalog.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        Product next(List<Product> products) {
+            Product product = products.get(next);
+            next = (next + 1) % products.size();
+            return product;
+        }
+    }
+}
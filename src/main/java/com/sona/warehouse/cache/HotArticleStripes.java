@@ -0,0 +1,181 @@
+package com.sona.warehouse.cache;
+
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.InventoryStripe;
+import com.sona.warehouse.repository.InventoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The stock of the hot articles of {@code warehouse.inventory.hot-articles.stripes}, spread over {@link InventoryStripe}
+ * documents so that concurrent sales of products sharing an article write different documents.
+ * <p>
+ * A sale starts at a random stripe and takes its amount from the first stripe that has enough. If none has, the stock
+ * of the article is moved between its stripes while holding the article's lock, and the sale tries once more before the
+ * article counts as sold out. This also moves the stock of uploads, which is added to the inventory document,
+ * into the stripes. Reads sum the inventory document and the stripes while holding the same lock,
+ * so they never see the stock half moved by this instance.
+ */
+final class HotArticleStripes {
+
+    private final InventoryRepository inventoryRepository;
+    private final Map<String, Integer> stripes;
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Counter rebalances;
+
+    HotArticleStripes(InventoryRepository inventoryRepository, Map<String, Integer> stripes, MeterRegistry meterRegistry) {
+        this.inventoryRepository = inventoryRepository;
+        this.stripes = new HashMap<>();
+        stripes.forEach((articleId, count) -> this.stripes.put(articleId, Math.max(1, count)));
+        this.rebalances = Counter.builder("warehouse.inventory.stripes.rebalances")
+                .description("Moves of the stock of a hot article between its stripes")
+                .register(meterRegistry);
+    }
+
+    boolean isHot(String articleId) {
+        return stripes.containsKey(articleId);
+    }
+
+    /**
+     * Retrieves hot articles with the stock of their inventory documents and stripes added up.
+     *
+     * @param articleIds the IDs of hot articles.
+     * @return a map from article ID to article; articles that do not exist are absent.
+     */
+    Map<String, Inventory> findAllById(Collection<String> articleIds) {
+        // Locked in a fixed order; sales only ever hold one of the locks
+        List<String> sorted = articleIds.stream().distinct().sorted().toList();
+        sorted.forEach(articleId -> lock(articleId).lock());
+        try {
+            Map<String, Inventory> found = new HashMap<>();
+            inventoryRepository.findAllById(sorted).forEach(inventory -> found.put(inventory.getArticleId(), inventory));
+            inventoryRepository.findStripedStock(sorted).forEach((articleId, stock) -> {
+                Inventory inventory = found.get(articleId);
+                if (inventory != null) {
+                    inventory.setStock(inventory.getStock() + stock);
+                }
+            });
+            return found;
+        } finally {
+            sorted.forEach(articleId -> lock(articleId).unlock());
+        }
+    }
+
+    /**
+     * Decrements the stock of several articles, undone if one fails, with the same contract as
+     * {@link InventoryRepository#decrementStock(Map)}. The other articles are decremented first,
+     * then the hot articles one by one. If one of them cannot be decremented, or its write fails, the stock taken before is given back.
+     *
+     * @param amountByArticle the amount to be removed from the stock, keyed by article ID.
+     * @return an empty Optional if every article was decremented, otherwise the ID of the first article
+     *         that does not exist or does not have enough stock.
+     */
+    Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        Map<String, Long> regular = new LinkedHashMap<>();
+        List<Map.Entry<String, Long>> hot = new ArrayList<>();
+        amountByArticle.forEach((articleId, amount) -> {
+            if (isHot(articleId)) {
+                hot.add(Map.entry(articleId, amount));
+            } else {
+                regular.put(articleId, amount);
+            }
+        });
+        if (!regular.isEmpty()) {
+            Optional<String> failedArticle = inventoryRepository.decrementStock(regular);
+            if (failedArticle.isPresent()) {
+                return failedArticle;
+            }
+        }
+        List<Map.Entry<String, Long>> decremented = new ArrayList<>(regular.entrySet());
+        String failedArticle = null;
+        try {
+            for (Map.Entry<String, Long> amount : hot) {
+                if (!decrement(amount.getKey(), amount.getValue())) {
+                    failedArticle = amount.getKey();
+                    break;
+                }
+                decremented.add(amount);
+            }
+        } catch (RuntimeException e) {
+            try {
+                restore(decremented);
+            } catch (RuntimeException restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            throw e;
+        }
+        if (failedArticle != null) {
+            restore(decremented);
+            return Optional.of(failedArticle);
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Gives back the stock taken from the articles, each with its own write, so that one failing write
+     * does not keep the others from being given back; the first failure is thrown with the others suppressed.
+     * Hot articles get their stock back in the inventory document, to be moved to the stripes when needed.
+     */
+    private void restore(List<Map.Entry<String, Long>> decremented) {
+        RuntimeException failure = null;
+        for (Map.Entry<String, Long> amount : decremented) {
+            try {
+                inventoryRepository.incrementStock(amount.getKey(), amount.getValue());
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private boolean decrement(String articleId, long amount) {
+        int count = stripes.get(articleId);
+        if (decrementAnyStripe(articleId, count, amount)) {
+            return true;
+        }
+        ReentrantLock lock = lock(articleId);
+        lock.lock();
+        try {
+            // Another sale may have moved the stock while this one waited
+            if (decrementAnyStripe(articleId, count, amount)) {
+                return true;
+            }
+            rebalances.increment();
+            return inventoryRepository.rebalanceStripes(articleId, count, amount) >= amount
+                    && decrementAnyStripe(articleId, count, amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean decrementAnyStripe(String articleId, int count, long amount) {
+        int first = ThreadLocalRandom.current().nextInt(count);
+        for (int offset = 0; offset < count; offset++) {
+            if (inventoryRepository.decrementStripe(articleId, (first + offset) % count, amount)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ReentrantLock lock(String articleId) {
+        return locks.computeIfAbsent(articleId, id -> new ReentrantLock());
+    }
+}
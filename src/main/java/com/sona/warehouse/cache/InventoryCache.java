@@ -0,0 +1,233 @@
+package com.sona.warehouse.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.event.ArticleStockChangedEvent;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.repository.InventoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded in-process cache of {@link Inventory} documents keyed by article ID.
+ * Reads are served from the cache and fall back to the {@link InventoryRepository};
+ * writes go through to the repository and refresh the cached entry.
+ * When {@code warehouse.inventory.cache.enabled} is {@code false} every call is passed straight to the repository.
+ * Cached entries are copied on the way in and out, so callers may freely modify the returned documents.
+ * <p>
+ * The stock of the hot articles of {@code warehouse.inventory.hot-articles.stripes} is spread over stripes.
+ * These articles are never cached: their reads add up the stripes and their decrements go to a single stripe.
+ */
+@Component
+public class InventoryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryCache.class);
+    private static final String CACHE_NAME = "inventory";
+
+    private final InventoryRepository inventoryRepository;
+    private final Cache<String, Inventory> cache;
+    private final HotArticleStripes hotArticles;
+
+    /**
+     * Constructs an InventoryCache in front of the specified InventoryRepository.
+     *
+     * @param inventoryRepository the repository for accessing inventory data.
+     * @param properties          the warehouse configuration properties.
+     * @param meterRegistry       the registry the hit, miss and eviction metrics are published to.
+     */
+    @Autowired
+    public InventoryCache(InventoryRepository inventoryRepository, WarehouseProperties properties, MeterRegistry meterRegistry) {
+        this.inventoryRepository = inventoryRepository;
+        Map<String, Integer> stripes = properties.getInventory().getHotArticles().getStripes();
+        this.hotArticles = stripes.isEmpty() ? null : new HotArticleStripes(inventoryRepository, stripes, meterRegistry);
+        if (hotArticles != null) {
+            logger.info("Stock of hot articles split into stripes: {}", stripes);
+        }
+
+        WarehouseProperties.Cache cacheProperties = properties.getInventory().getCache();
+        if (cacheProperties.isEnabled()) {
+            Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                    .maximumSize(cacheProperties.getMaxSize())
+                    .recordStats();
+            if (cacheProperties.getExpireAfterWrite() != null) {
+                builder.expireAfterWrite(cacheProperties.getExpireAfterWrite());
+            }
+            this.cache = builder.build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+            logger.info("Inventory cache enabled with max size {} and expire after write {}",
+                    cacheProperties.getMaxSize(), cacheProperties.getExpireAfterWrite());
+            if (properties.getMultiInstance().isEnabled() && !properties.getChangeStream().isEnabled()) {
+                logger.warn("Running with other instances without change streams: cached stock written by them "
+                        + "may be stale for up to {}", cacheProperties.getExpireAfterWrite());
+            }
+        } else {
+            this.cache = null;
+            logger.info("Inventory cache disabled.");
+        }
+    }
+
+    /**
+     * Indicates whether the cache is active or every call is passed through to the repository.
+     *
+     * @return true if the cache is enabled.
+     */
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Retrieves an inventory article by its ID.
+     *
+     * @param articleId the ID of the article.
+     * @return the article, or an empty Optional if it does not exist.
+     */
+    public Optional<Inventory> findById(String articleId) {
+        if (isHot(articleId)) {
+            return Optional.ofNullable(hotArticles.findAllById(List.of(articleId)).get(articleId));
+        }
+        if (cache == null) {
+            return inventoryRepository.findById(articleId);
+        }
+        Inventory cached = cache.get(articleId, id -> inventoryRepository.findById(id).map(InventoryCache::copyOf).orElse(null));
+        return Optional.ofNullable(cached).map(InventoryCache::copyOf);
+    }
+
+    /**
+     * Retrieves the inventory articles with the given IDs.
+     * Only the IDs missing from the cache are loaded from the repository, with a single query.
+     *
+     * @param articleIds the IDs of the articles.
+     * @return a map from article ID to article; articles that do not exist are absent.
+     */
+    public Map<String, Inventory> findAllById(Collection<String> articleIds) {
+        return findAllById(articleIds, cache != null);
+    }
+
+    /**
+     * Retrieves the inventory articles with the given IDs from the repository, bypassing the cache,
+     * for reads that must see the writes of other instances.
+     *
+     * @param articleIds the IDs of the articles.
+     * @return a map from article ID to article; articles that do not exist are absent.
+     */
+    public Map<String, Inventory> findAllByIdUncached(Collection<String> articleIds) {
+        return findAllById(articleIds, false);
+    }
+
+    private Map<String, Inventory> findAllById(Collection<String> articleIds, boolean cached) {
+        Map<String, Inventory> result = new HashMap<>(articleIds.size());
+        if (hotArticles != null && articleIds.stream().anyMatch(this::isHot)) {
+            result.putAll(hotArticles.findAllById(articleIds.stream().filter(this::isHot).toList()));
+            articleIds = articleIds.stream().filter(articleId -> !isHot(articleId)).toList();
+        }
+        if (!cached) {
+            inventoryRepository.findAllById(articleIds).forEach(inventory -> result.put(inventory.getArticleId(), inventory));
+            return result;
+        }
+        cache.getAll(articleIds, missingIds -> {
+            Map<String, Inventory> loaded = new HashMap<>();
+            inventoryRepository.findAllById(List.copyOf(missingIds)).forEach(inventory -> loaded.put(inventory.getArticleId(), copyOf(inventory)));
+            return loaded;
+        }).forEach((id, inventory) -> result.put(id, copyOf(inventory)));
+        return result;
+    }
+
+    /**
+     * Decrements the stock of several articles with conditional updates, undone if one fails, and drops their cached entries.
+     * Hot articles are decremented one stripe each after the other articles.
+     *
+     * @param amountByArticle the amount to be removed from the stock, keyed by article ID.
+     * @return an empty Optional if every article was decremented, otherwise the ID of the first article
+     *         that does not exist or does not have enough stock.
+     */
+    public Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        try {
+            if (hotArticles != null && amountByArticle.keySet().stream().anyMatch(this::isHot)) {
+                return hotArticles.decrementStock(amountByArticle);
+            }
+            return inventoryRepository.decrementStock(amountByArticle);
+        } finally {
+            amountByArticle.keySet().forEach(this::evict);
+        }
+    }
+
+    /**
+     * Adds stock to the given articles with a single bulk upsert and drops their cached entries.
+     *
+     * @param articles the articles with the stock to be added.
+     * @param ordered  whether the write stops at the first failing article.
+     * @return the result of the bulk write.
+     */
+    public BulkWriteResult addStock(List<Inventory> articles, boolean ordered) {
+        try {
+            return inventoryRepository.addStock(articles, ordered);
+        } finally {
+            articles.forEach(article -> evict(article.getArticleId()));
+        }
+    }
+
+    /**
+     * Removes an article from the cache so that the next read goes to the repository.
+     *
+     * @param articleId the ID of the article.
+     */
+    public void evict(String articleId) {
+        if (cache != null) {
+            cache.invalidate(articleId);
+        }
+    }
+
+    /**
+     * Drops the cached entry of an article written by another instance or directly in MongoDB.
+     * Runs before the other listeners, so that they read the new stock.
+     *
+     * @param event the change of the article.
+     */
+    @EventListener
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void articleStockChanged(ArticleStockChangedEvent event) {
+        evict(event.getArticleId());
+    }
+
+    /**
+     * Indicates whether the stock of an article is spread over stripes.
+     *
+     * @param articleId the ID of the article.
+     * @return true if the article is listed in {@code warehouse.inventory.hot-articles.stripes}.
+     */
+    public boolean isHot(String articleId) {
+        return hotArticles != null && hotArticles.isHot(articleId);
+    }
+
+    /**
+     * Removes all articles from the cache.
+     */
+    public void evictAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static Inventory copyOf(Inventory inventory) {
+        return Inventory.builder()
+                .articleId(inventory.getArticleId())
+                .name(inventory.getName())
+                .stock(inventory.getStock())
+                .build();
+    }
+}
@@ -0,0 +1,27 @@
+package com.sona.warehouse.config;
+
+import io.micrometer.core.aop.CountedAspect;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Enables the {@link io.micrometer.core.annotation.Timed @Timed} and {@link io.micrometer.core.annotation.Counted @Counted}
+ * annotations on the services.
+ * Timers are tagged with the class, the method and the exception thrown, if any;
+ * failure counters are tagged with the exception, so sold-out, missing-article and parse rejections can be told apart.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration {
+
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry meterRegistry) {
+        return new TimedAspect(meterRegistry);
+    }
+
+    @Bean
+    public CountedAspect countedAspect(MeterRegistry meterRegistry) {
+        return new CountedAspect(meterRegistry);
+    }
+}
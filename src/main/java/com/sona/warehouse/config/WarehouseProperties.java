@@ -0,0 +1,401 @@
+package com.sona.warehouse.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration properties for the warehouse service, bound from the {@code warehouse.*} namespace.
+ */
+@Data
+@ConfigurationProperties(prefix = "warehouse")
+public class WarehouseProperties {
+
+    /**
+     * Settings related to reading and writing inventory articles.
+     */
+    private Inventory inventory = new Inventory();
+
+    /**
+     * Settings related to reading and writing products.
+     */
+    private Product product = new Product();
+
+    /**
+     * Settings of the MongoDB change stream listener.
+     */
+    private ChangeStream changeStream = new ChangeStream();
+
+    /**
+     * Settings for running several instances against the same database.
+     */
+    private MultiInstance multiInstance = new MultiInstance();
+
+    /**
+     * Settings of the retries of writes that conflict with concurrent writes.
+     */
+    private Retry retry = new Retry();
+
+    /**
+     * Settings of the local stock journal.
+     */
+    private Journal journal = new Journal();
+
+    /**
+     * Local stock journal settings.
+     */
+    @Data
+    public static class Journal {
+
+        /**
+         * Whether stock changes are appended to a local journal and acknowledged once it is flushed,
+         * and applied to MongoDB in the background. Requires this instance to be the only one writing the inventory,
+         * so the {@code reactive} profile refuses to start with it.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The directory of the journal files.
+         */
+        private Path directory = Path.of("journal");
+
+        /**
+         * The size of each journal file. A new file is started when one is full,
+         * and files are deleted once all their entries are applied.
+         */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+        /**
+         * How often appended entries are flushed to disk. Stock changes are acknowledged after the next flush.
+         */
+        private Duration flushInterval = Duration.ofMillis(2);
+
+        /**
+         * The largest number of entries applied to MongoDB with one bulk write.
+         */
+        private int applyBatchSize = 1000;
+    }
+
+    /**
+     * Conflict retry settings.
+     */
+    @Data
+    public static class Retry {
+
+        /**
+         * The number of attempts of a conflicting write, including the first one. 1 disables retries.
+         */
+        private int maxAttempts = 3;
+
+        /**
+         * The upper bound of the random backoff before the first retry. It doubles with every further retry.
+         */
+        private Duration initialBackoff = Duration.ofMillis(10);
+
+        /**
+         * The largest upper bound of the random backoff between two attempts.
+         */
+        private Duration maxBackoff = Duration.ofMillis(500);
+    }
+
+    /**
+     * Multi-instance settings.
+     */
+    @Data
+    public static class MultiInstance {
+
+        /**
+         * Whether other instances may write the same inventory. Sales are then decided by the conditional stock
+         * updates in MongoDB alone, without rejecting them early on stock read from this instance's cache.
+         */
+        private boolean enabled = false;
+    }
+
+    /**
+     * Change stream settings.
+     */
+    @Data
+    public static class ChangeStream {
+
+        /**
+         * Whether changes of the inventory and products collections are watched and published as in-process events,
+         * keeping the caches and the projection up to date with writes of other instances. Requires a replica set.
+         */
+        private boolean enabled = false;
+    }
+
+    /**
+     * Inventory related settings.
+     */
+    @Data
+    public static class Inventory {
+
+        /**
+         * The maximum number of article IDs resolved in a single {@code $in} query
+         * when computing the sellable quantity of products.
+         */
+        private int lookupBatchSize = 1000;
+
+        /**
+         * The maximum number of {@code $in} queries for article IDs in flight at the same time
+         * when the articles of many products are resolved, or of a single product in parallel lookup mode.
+         */
+        private int lookupConcurrency = 4;
+
+        /**
+         * Settings of the parallel resolution of the articles of a single product.
+         */
+        private ParallelLookup parallelLookup = new ParallelLookup();
+
+        /**
+         * Settings of the in-process inventory cache.
+         */
+        private Cache cache = new Cache();
+
+        /**
+         * Settings of the inventory upload.
+         */
+        private Upload upload = new Upload();
+
+        /**
+         * Settings of the articles whose stock is split across stripes.
+         */
+        private HotArticles hotArticles = new HotArticles();
+    }
+
+    /**
+     * Settings of hot articles, which are contained in so many products that their single inventory document
+     * becomes the bottleneck of concurrent sales.
+     */
+    @Data
+    public static class HotArticles {
+
+        /**
+         * The number of stripes per hot article ID. The stock of these articles is spread over as many documents in
+         * the {@code inventory_stripes} collection, so that concurrent sales write different documents.
+         * Not supported together with the stock journal; the {@code reactive} profile refuses to start with stripes.
+         * An article must not be removed
+         * while its stripes still hold stock, as the stripes are only read for hot articles.
+         */
+        private Map<String, Integer> stripes = new HashMap<>();
+    }
+
+    /**
+     * Parallel article lookup settings.
+     */
+    @Data
+    public static class ParallelLookup {
+
+        /**
+         * Whether the articles of a single product are resolved with concurrent queries on a dedicated executor,
+         * up to {@code warehouse.inventory.lookup-concurrency} at a time, instead of one query after the other.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The number of threads shared by the parallel lookups of all requests.
+         */
+        private int threads = 16;
+
+        /**
+         * How long the lookups of a single product may take before the request is failed.
+         */
+        private Duration timeout = Duration.ofSeconds(2);
+    }
+
+    /**
+     * Settings of a bulk upload.
+     */
+    @Data
+    public static class Upload {
+
+        /**
+         * The number of rows sent to MongoDB in a single bulk write.
+         */
+        private int batchSize = 1000;
+
+        /**
+         * Whether a bulk write stops at the first failing row ({@code true}) or continues with the remaining rows.
+         */
+        private boolean ordered = true;
+    }
+
+    /**
+     * Product related settings.
+     */
+    @Data
+    public static class Product {
+
+        /**
+         * Settings of the product upload.
+         */
+        private Upload upload = new Upload();
+
+        /**
+         * Settings of the materialized sellable quantity of products.
+         */
+        private Projection projection = new Projection();
+
+        /**
+         * Settings of the paginated product listing.
+         */
+        private Page page = new Page();
+
+        /**
+         * Settings of the in-memory availability engine.
+         */
+        private Engine engine = new Engine();
+
+        /**
+         * Settings of the group commit of sales.
+         */
+        private GroupCommit groupCommit = new GroupCommit();
+
+        /**
+         * Settings of the encoded listing of all available products.
+         */
+        private ListingCache listingCache = new ListingCache();
+
+        /**
+         * How long a version of the available products is trusted without change streams, which alone see writes made
+         * directly in MongoDB. The ETag of {@code GET /api/products} and the cached listing change at least this often.
+         * Zero trusts a version until this instance changes it.
+         */
+        private Duration versionMaxAge = Duration.ofSeconds(10);
+    }
+
+    /**
+     * Settings of the encoded listing of all available products.
+     */
+    @Data
+    public static class ListingCache {
+
+        /**
+         * Whether the JSON and gzip bytes of {@code GET /api/products} are kept until the products or stock change,
+         * instead of being encoded for every request.
+         */
+        private boolean enabled = true;
+    }
+
+    /**
+     * Group commit settings of the stock decrements of sales.
+     */
+    @Data
+    public static class GroupCommit {
+
+        /**
+         * Whether the stock decrements of concurrent sales are collected in windows and written together.
+         * Trades up to {@code maxWait} of latency per sale for fewer writes of hot articles.
+         * The {@code reactive} profile refuses to start with it, as its sales would bypass the windows.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The largest number of sales written together.
+         */
+        private int maxBatchSize = 128;
+
+        /**
+         * How long the first sale of a window waits for more sales before the window is written.
+         */
+        private Duration maxWait = Duration.ofMillis(2);
+    }
+
+    /**
+     * In-memory availability engine settings.
+     */
+    @Data
+    public static class Engine {
+
+        /**
+         * Whether the whole catalog is held in memory to calculate the available products.
+         * Takes precedence over the projection when listing all available products.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The number of products from which the catalog is calculated in parallel on the common fork-join pool.
+         */
+        private int parallelThreshold = 10_000;
+
+        /**
+         * Settings of the snapshot file the engine is started from.
+         */
+        private Snapshot snapshot = new Snapshot();
+    }
+
+    /**
+     * Availability engine snapshot settings.
+     */
+    @Data
+    public static class Snapshot {
+
+        /**
+         * The file the catalog is written to and started from. No snapshot is written or read when not set.
+         */
+        private Path path;
+
+        /**
+         * How often the snapshot is rewritten. It is also written on shutdown.
+         */
+        private Duration interval = Duration.ofMinutes(1);
+    }
+
+    /**
+     * Paginated product listing settings.
+     */
+    @Data
+    public static class Page {
+
+        /**
+         * The number of products returned when a page is requested without a limit.
+         */
+        private int defaultSize = 100;
+
+        /**
+         * The largest page that can be requested. Larger limits are reduced to this size.
+         * Streamed listings read the catalog in pages of this size.
+         */
+        private int maxSize = 1000;
+    }
+
+    /**
+     * Materialized sellable quantity settings.
+     */
+    @Data
+    public static class Projection {
+
+        /**
+         * Whether the sellable quantity of products is materialized and maintained on every stock change.
+         * When disabled the available products are calculated from the inventory on every request.
+         */
+        private boolean enabled = true;
+    }
+
+    /**
+     * In-process inventory cache settings.
+     */
+    @Data
+    public static class Cache {
+
+        /**
+         * Whether inventory articles are cached in process. When disabled every read goes to MongoDB.
+         */
+        private boolean enabled = true;
+
+        /**
+         * The maximum number of articles kept in the cache before the least recently used ones are evicted.
+         */
+        private long maxSize = 10_000;
+
+        /**
+         * How long an article stays cached after it was loaded or written. Unbounded when not set.
+         */
+        private Duration expireAfterWrite = Duration.ofMinutes(5);
+    }
+}
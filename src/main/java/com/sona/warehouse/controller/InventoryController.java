@@ -3,12 +3,20 @@ package com.sona.warehouse.controller;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.dto.InventoryArticleDTO;
 import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.InventoryUploadResultDTO;
+import com.sona.warehouse.dto.SellableProductDTO;
 import com.sona.warehouse.exceptions.CustomHttpStatusCodeException;
+import com.sona.warehouse.exceptions.PartialUploadException;
 import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -16,57 +24,96 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 
 /**
  * Controller for handling inventory-related operations.
- * Provides an endpoint for uploading inventory data via a JSON file.
+ * Provides endpoints for uploading inventory data via a JSON file and for finding the products an article is used in.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/inventory")
 public class InventoryController {
 
     private final InventoryService inventoryService;
+    private final ProductService productService;
     private final ObjectMapper objectMapper;
 
     /**
      * Constructor for InventoryController.
      *
      * @param inventoryService The service handling inventory operations.
+     * @param productService   The service handling product operations.
      * @param objectMapper     The Jackson ObjectMapper for JSON processing.
      */
     @Autowired
-    public InventoryController(InventoryService inventoryService, ObjectMapper objectMapper) {
+    public InventoryController(InventoryService inventoryService, ProductService productService, ObjectMapper objectMapper) {
         this.inventoryService = inventoryService;
+        this.productService = productService;
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Lists the products that contain an article, with the number of units of each that can currently be sold.
+     *
+     * @param articleId the ID of the article
+     * @return ResponseEntity with the products containing the article, or an error message if the article is unknown
+     */
+    @GetMapping("/{articleId}/products")
+    public ResponseEntity<?> getProductsContaining(@PathVariable String articleId) {
+        try {
+            List<SellableProductDTO> products = productService.findByArticle(articleId);
+            return ResponseEntity.ok(products);
+        } catch (CustomHttpStatusCodeException e) {
+            return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
+        }
+    }
+
     /**
      * Uploads and processes an inventory JSON file.
-     * Reads the file content, converts it into an {@link InventoryDTO}, and saves it to the database.
+     * Streams the file content article by article, in the shape of an {@link InventoryDTO}, and saves it to the database
+     * in batches, so the whole file is never held in memory.
+     * If the upload fails after some batches were saved, the error message says how many articles were kept.
      *
      * @param file The uploaded JSON file containing inventory data.
-     * @return ResponseEntity with a success or error message.
+     * @return ResponseEntity with an {@link InventoryUploadResultDTO} on success or an error message.
      */
     @PostMapping("/upload")
-    public ResponseEntity<String> uploadInventory(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> uploadInventory(@RequestParam("file") MultipartFile file) {
         if (file == null || file.isEmpty()) {
             return ResponseEntity.badRequest().body("File is empty or not provided.");
         }
 
-        try {
-            InventoryDTO inventory = objectMapper.readValue(file.getBytes(), objectMapper.getTypeFactory().constructType(InventoryDTO.class));
+        try (JsonArrayIterator<InventoryArticleDTO> articles =
+                     new JsonArrayIterator<>(objectMapper, file.getInputStream(), "inventory", InventoryArticleDTO.class)) {
+            InventoryUploadResultDTO result = inventoryService.saveAll(articles);
+            return ResponseEntity.ok(result);
 
-            inventoryService.saveAll(inventory);
-            return ResponseEntity.ok("Inventory uploaded successfully!");
-
-        }catch (CustomHttpStatusCodeException e) {
+        } catch (PartialUploadException e) {
+            return toErrorResponse(e);
+        } catch (CustomHttpStatusCodeException e) {
             return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
-        } catch (JsonMappingException e) {
+        } catch (UncheckedIOException e) {
+            return toErrorResponse(e.getCause());
+        } catch (IOException e) {
+            return toErrorResponse(e);
+        }
+    }
+
+    private ResponseEntity<String> toErrorResponse(PartialUploadException e) {
+        ResponseEntity<String> failure = e.getCause() instanceof UncheckedIOException cause
+                ? toErrorResponse(cause.getCause())
+                : ResponseEntity.status(e.getHttpStatus()).body(e.getCause().getMessage());
+        return ResponseEntity.status(failure.getStatusCode()).body(e.describe(failure.getBody()));
+    }
+
+    private ResponseEntity<String> toErrorResponse(IOException e) {
+        if (e instanceof JsonMappingException) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid JSON format: " + e.getMessage());
-        } catch (JsonProcessingException e) {
+        } else if (e instanceof JsonProcessingException) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error processing JSON: " + e.getMessage());
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload inventory file: " + e.getMessage());
         }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload inventory file: " + e.getMessage());
     }
 }
@@ -0,0 +1,115 @@
+package com.sona.warehouse.controller;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the elements of an array field of an uploaded JSON document, reading one element at a time.
+ * Only the element being returned is held in memory, so uploads of any size can be processed in constant memory.
+ * The document is only read once the iterator is first used, so a document that is not a JSON object fails on the first
+ * {@link #hasNext()} like any later element, within the upload consuming the iterator.
+ * Errors raised while reading the document are rethrown as an {@link UncheckedIOException} wrapping the original exception.
+ *
+ * @param <T> the type the array elements are mapped to.
+ */
+class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+
+    private final JsonParser parser;
+    private final ObjectReader reader;
+    private final String fieldName;
+    private boolean opened;
+    private boolean hasNext;
+
+    /**
+     * Opens the document; the iterator is positioned at the first element of the array field when it is first used.
+     * A missing or null array field yields no elements.
+     *
+     * @param objectMapper the ObjectMapper used for JSON processing.
+     * @param inputStream  the stream containing the JSON document; it is closed together with the iterator.
+     * @param fieldName    the name of the array field of the root object.
+     * @param type         the type the array elements are mapped to.
+     * @throws IOException if the document cannot be opened.
+     */
+    JsonArrayIterator(ObjectMapper objectMapper, InputStream inputStream, String fieldName, Class<T> type) throws IOException {
+        this.parser = objectMapper.createParser(inputStream);
+        this.reader = objectMapper.readerFor(type);
+        this.fieldName = fieldName;
+    }
+
+    @Override
+    public boolean hasNext() {
+        open();
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            T element = reader.readValue(parser);
+            hasNext = moveToNextElement();
+            return element;
+        } catch (IOException e) {
+            hasNext = false;
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private void open() {
+        if (opened) {
+            return;
+        }
+        opened = true;
+        try {
+            hasNext = moveToArray(fieldName) && moveToNextElement();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean moveToArray(String fieldName) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (fieldName.equals(name)) {
+                if (value == JsonToken.VALUE_NULL) {
+                    return false;
+                }
+                if (value != JsonToken.START_ARRAY) {
+                    throw new JsonParseException(parser, "Expected an array for field: " + fieldName);
+                }
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private boolean moveToNextElement() throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            throw new JsonParseException(parser, "Unexpected end of input inside array");
+        }
+        return token != JsonToken.END_ARRAY;
+    }
+}
@@ -3,17 +3,30 @@ package com.sona.warehouse.controller;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.dto.OrderLineDTO;
+import com.sona.warehouse.dto.ProductDTO;
 import com.sona.warehouse.dto.ProductUploadDTO;
+import com.sona.warehouse.dto.SaleResultDTO;
 import com.sona.warehouse.dto.SellableProductDTO;
+import com.sona.warehouse.dto.SellableProductPageDTO;
 import com.sona.warehouse.exceptions.CustomHttpStatusCodeException;
+import com.sona.warehouse.exceptions.PartialUploadException;
+import com.sona.warehouse.service.CatalogVersion;
 import com.sona.warehouse.service.ProductService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 /**
@@ -21,46 +34,108 @@ import java.util.List;
  * Provides endpoints for uploading product data, retrieving products, and selling products.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/products")
 public class ProductController {
 
     private final ProductService productService;
+    private final CatalogVersion catalogVersion;
+    private final ProductListingCache listingCache;
     private final ObjectMapper objectMapper;
 
     /**
-     * Constructs a ProductController with the specified ProductService and ObjectMapper.
+     * Constructs a ProductController with the specified ProductService, CatalogVersion, ProductListingCache and ObjectMapper.
      *
      * @param productService the service used for product operations
+     * @param catalogVersion the version of the available products, sent as their ETag
+     * @param listingCache the encoded listing of all available products
      * @param objectMapper the ObjectMapper used for JSON processing
      */
     @Autowired
-    public ProductController(ProductService productService, ObjectMapper objectMapper) {
+    public ProductController(ProductService productService, CatalogVersion catalogVersion, ProductListingCache listingCache,
+                             ObjectMapper objectMapper) {
         this.productService = productService;
+        this.catalogVersion = catalogVersion;
+        this.listingCache = listingCache;
         this.objectMapper = objectMapper;
     }
 
     /**
-     * Retrieves a list of all products.
+     * Retrieves a list of all products, tagged with the {@link CatalogVersion} they were read at.
+     * A request whose {@code If-None-Match} names the current version is answered with Not Modified,
+     * without reading the products. Otherwise the bytes of the {@link ProductListingCache} are written,
+     * gzip compressed if the client accepts it.
      *
-     * @return a ResponseEntity containing the list of products and an OK status
+     * @param request the request, checked for a matching {@code If-None-Match} header
+     * @return a ResponseEntity containing the list of products and an OK status, or null if Not Modified was sent
      */
     @GetMapping
-    public ResponseEntity<List<SellableProductDTO>> getAllProducts() {
-        List<SellableProductDTO> products = productService.findAll();
-        return ResponseEntity.ok(products);
+    public ResponseEntity<?> getAllProducts(WebRequest request) {
+        if (!catalogVersion.tracksAllWrites()) {
+            return ResponseEntity.ok(productService.findAll());
+        }
+        if (!listingCache.isEnabled()) {
+            // Read before the products, so that a concurrent change leaves an outdated tag rather than outdated products
+            String eTag = catalogVersion.getETag();
+            if (request.checkNotModified(eTag)) {
+                return null;
+            }
+            List<SellableProductDTO> products = productService.findAll();
+            return ResponseEntity.ok().eTag(eTag).body(products);
+        }
+
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        if (request.checkNotModified(ProductListingCache.eTagOf(catalogVersion.getETag(), gzip))) {
+            return null;
+        }
+        ProductListingCache.Listing listing = listingCache.get();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(listing.getETag(gzip))
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(listing.getGzip());
+        }
+        return response.body(listing.getJson());
     }
 
     /**
-     * Sells a product by its ID.
+     * Streams all available products as newline-delimited JSON, one product per line.
+     * Each product is written as soon as its quantity is known, so the response never holds the whole catalog.
      *
-     * @param id the ID of the product to be sold
-     * @return a ResponseEntity with a success message or an error message in case of failure
+     * @return a ResponseEntity streaming the available products and an OK status
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllProducts() {
+        StreamingResponseBody body = outputStream -> productService.forEachAvailable(product -> write(outputStream, product));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Retrieves a page of the available products, ordered by ID.
+     *
+     * @param after the cursor returned with the previous page, or none for the first page
+     * @param limit the maximum number of products to return
+     * @return a ResponseEntity containing the page of products and an OK status
+     */
+    @GetMapping("/page")
+    public ResponseEntity<SellableProductPageDTO> getProductPage(@RequestParam(required = false) String after,
+                                                                 @RequestParam(required = false) Integer limit) {
+        return ResponseEntity.ok(productService.findPage(after, limit));
+    }
+
+    /**
+     * Sells units of a product by its ID.
+     *
+     * @param id    the ID of the product to be sold
+     * @param count the number of units to be sold, one by default
+     * @return a ResponseEntity with a {@link SaleResultDTO} reporting the remaining quantity, or an error message in case of failure
      */
     @PatchMapping("/{id}")
-    public ResponseEntity<String> sellProduct(@PathVariable String id) {
+    public ResponseEntity<?> sellProduct(@PathVariable String id, @RequestParam(defaultValue = "1") long count) {
         try {
-            productService.sell(id);
-            return ResponseEntity.ok("Product sold successfully.");
+            long remaining = productService.sell(id, count);
+            return ResponseEntity.ok(new SaleResultDTO(id, count, remaining));
         } catch (CustomHttpStatusCodeException e) {
             return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
         } catch (Exception e) {
@@ -68,8 +143,30 @@ public class ProductController {
         }
     }
 
+    /**
+     * Sells all products of an order at once. If a line cannot be sold, the stock already taken for the order is given back,
+     * but other requests may see the order partly applied until then.
+     *
+     * @param lines the IDs of the products and how many units of each are sold
+     * @return a ResponseEntity with a success message or an error message in case of failure
+     */
+    @PostMapping("/sell")
+    public ResponseEntity<String> sellOrder(@RequestBody List<OrderLineDTO> lines) {
+        try {
+            productService.sellOrder(lines);
+            return ResponseEntity.ok("Order sold successfully.");
+        } catch (CustomHttpStatusCodeException e) {
+            return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to sell order: " + e.getMessage());
+        }
+    }
+
     /**
      * Uploads products from a JSON file.
+     * The file is streamed product by product, in the shape of a {@link ProductUploadDTO},
+     * and saved in batches, so the whole file is never held in memory.
+     * If the upload fails after some batches were saved, the error message says how many products were kept.
      *
      * @param file the MultipartFile containing the JSON data for products
      * @return a ResponseEntity with a success message or an error message in case of failure
@@ -80,23 +177,66 @@ public class ProductController {
             return ResponseEntity.badRequest().body("File is empty or not provided.");
         }
 
-        try {
-            // Check if the file content is valid JSON
-            byte[] bytes = file.getBytes();
-
-            ProductUploadDTO uploaded = objectMapper.readValue(bytes, objectMapper.getTypeFactory().constructType(ProductUploadDTO.class));
+        try (JsonArrayIterator<ProductDTO> products =
+                     new JsonArrayIterator<>(objectMapper, file.getInputStream(), "products", ProductDTO.class)) {
             // Save all products
-            productService.saveAll(uploaded.getProducts());
+            productService.saveAll(products);
             return ResponseEntity.ok("Products uploaded successfully!");
 
+        } catch (PartialUploadException e) {
+            return toErrorResponse(e);
         } catch (CustomHttpStatusCodeException e) {
             return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
-        } catch (JsonMappingException e) {
+        } catch (UncheckedIOException e) {
+            return toErrorResponse(e.getCause());
+        } catch (IOException e) {
+            return toErrorResponse(e);
+        }
+    }
+
+    /**
+     * Tells whether an {@code Accept-Encoding} header lists gzip with a quality above zero.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            if (parameters[0].trim().equalsIgnoreCase("gzip")) {
+                for (int i = 1; i < parameters.length; i++) {
+                    if (parameters[i].replace(" ", "").matches("[qQ]=0(\\.0{0,3})?")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(OutputStream outputStream, SellableProductDTO product) {
+        try {
+            outputStream.write(objectMapper.writeValueAsBytes(product));
+            outputStream.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ResponseEntity<String> toErrorResponse(PartialUploadException e) {
+        ResponseEntity<String> failure = e.getCause() instanceof UncheckedIOException cause
+                ? toErrorResponse(cause.getCause())
+                : ResponseEntity.status(e.getHttpStatus()).body(e.getCause().getMessage());
+        return ResponseEntity.status(failure.getStatusCode()).body(e.describe(failure.getBody()));
+    }
+
+    private ResponseEntity<String> toErrorResponse(IOException e) {
+        if (e instanceof JsonMappingException) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid JSON format: " + e.getMessage());
-        } catch (JsonProcessingException e) {
+        } else if (e instanceof JsonProcessingException) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error processing JSON: " + e.getMessage());
-        } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload products file: " + e.getMessage());
         }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload products file: " + e.getMessage());
     }
 }
@@ -0,0 +1,186 @@
+package com.sona.warehouse.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ProductService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The listing of all available products as encoded by {@code GET /api/products}, kept for the current
+ * {@link CatalogVersion}. The products are read and serialized once per version, by the first request after a change;
+ * every other request writes the same bytes. While one request encodes a new version, the others are served the
+ * previous listing with its own ETag rather than waiting. The gzip encoding is compressed once,
+ * by the first request accepting it.
+ * <p>
+ * Only enabled when the version sees every write, since the listing would otherwise outlive changes
+ * made by other instances.
+ */
+@Component
+@Profile("!reactive")
+public class ProductListingCache {
+
+    private final ProductService productService;
+    private final CatalogVersion catalogVersion;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Counter encodings;
+
+    private final ReentrantLock encoding = new ReentrantLock();
+    private volatile Listing current;
+
+    /**
+     * Constructs an empty ProductListingCache.
+     *
+     * @param productService the service listing the available products.
+     * @param catalogVersion the version of the available products the listing is kept for.
+     * @param objectMapper   the ObjectMapper used to serialize the listing.
+     * @param properties     the warehouse configuration properties.
+     * @param meterRegistry  the registry of the encoding counter.
+     */
+    @Autowired
+    public ProductListingCache(ProductService productService, CatalogVersion catalogVersion, ObjectMapper objectMapper,
+                               WarehouseProperties properties, MeterRegistry meterRegistry) {
+        this.productService = productService;
+        this.catalogVersion = catalogVersion;
+        this.objectMapper = objectMapper;
+        this.enabled = properties.getProduct().getListingCache().isEnabled() && catalogVersion.tracksAllWrites();
+        this.encodings = Counter.builder("warehouse.product.listing.encodings")
+                .description("Serializations of the listing of all available products")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Indicates whether the listing is kept between requests.
+     *
+     * @return true if {@code warehouse.product.listing-cache.enabled} is set and the catalog version sees every write.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the entity tag of the listing at the given version, which differs between its encodings.
+     *
+     * @param versionETag the entity tag of a {@link CatalogVersion}.
+     * @param gzip        whether the tag is that of the gzip encoding.
+     * @return the quoted entity tag.
+     */
+    public static String eTagOf(String versionETag, boolean gzip) {
+        return gzip ? versionETag.substring(0, versionETag.length() - 1) + "-gzip\"" : versionETag;
+    }
+
+    /**
+     * Returns the listing at the current version, encoding it first if the version changed since the last call.
+     * Only one call encodes at a time; the others return the previous listing meanwhile,
+     * and only wait for the very first encoding.
+     *
+     * @return the listing at the current version, or the previous one while the current one is being encoded.
+     */
+    public Listing get() {
+        Listing listing = current;
+        if (listing != null && listing.versionETag.equals(catalogVersion.getETag())) {
+            return listing;
+        }
+        if (listing == null) {
+            encoding.lock();
+        } else if (!encoding.tryLock()) {
+            return listing;
+        }
+        try {
+            // Read before the products, so that a concurrent change leaves an outdated tag rather than outdated products
+            String versionETag = catalogVersion.getETag();
+            listing = current;
+            if (listing == null || !listing.versionETag.equals(versionETag)) {
+                listing = new Listing(versionETag, encode());
+                current = listing;
+            }
+            return listing;
+        } finally {
+            encoding.unlock();
+        }
+    }
+
+    private byte[] encode() {
+        encodings.increment();
+        try {
+            return objectMapper.writeValueAsBytes(productService.findAll());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize the available products", e);
+        }
+    }
+
+    /**
+     * The encoded listing of the available products at one version.
+     */
+    public static final class Listing {
+
+        private final String versionETag;
+        private final byte[] json;
+        private volatile byte[] gzip;
+
+        Listing(String versionETag, byte[] json) {
+            this.versionETag = versionETag;
+            this.json = json;
+        }
+
+        /**
+         * Returns the entity tag of an encoding of the listing.
+         *
+         * @param gzip whether the tag is that of the gzip encoding.
+         * @return the quoted entity tag.
+         */
+        public String getETag(boolean gzip) {
+            return eTagOf(versionETag, gzip);
+        }
+
+        /**
+         * Returns the listing as a JSON array. The array is shared and must not be modified.
+         *
+         * @return the UTF-8 encoded JSON.
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * Returns the gzip compressed JSON, compressing it on the first call. The array is shared and must not be modified.
+         *
+         * @return the gzip encoded JSON.
+         */
+        public byte[] getGzip() {
+            byte[] compressed = gzip;
+            if (compressed == null) {
+                synchronized (this) {
+                    compressed = gzip;
+                    if (compressed == null) {
+                        compressed = compress(json);
+                        gzip = compressed;
+                    }
+                }
+            }
+            return compressed;
+        }
+
+        private static byte[] compress(byte[] json) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+            try (GZIPOutputStream gzip = new GZIPOutputStream(bytes, 8192)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
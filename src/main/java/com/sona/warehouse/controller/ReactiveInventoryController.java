@@ -0,0 +1,118 @@
+package com.sona.warehouse.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.InventoryUploadResultDTO;
+import com.sona.warehouse.exceptions.CustomHttpStatusCodeException;
+import com.sona.warehouse.exceptions.PartialUploadException;
+import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestPart;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * WebFlux equivalent of {@link InventoryController}, served by the {@code reactive} profile.
+ * The upload is parsed and written in batches by the blocking {@link InventoryService} on the bounded elastic scheduler,
+ * reading the file part through a back-pressured input stream, so it is never held in memory as a whole.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/inventory")
+public class ReactiveInventoryController {
+
+    private static final int UPLOAD_DEMAND = 16;
+
+    private final InventoryService inventoryService;
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructs a ReactiveInventoryController with the specified services and ObjectMapper.
+     *
+     * @param inventoryService the service used for inventory operations
+     * @param productService   the service used for product operations
+     * @param objectMapper     the ObjectMapper used for JSON processing
+     */
+    @Autowired
+    public ReactiveInventoryController(InventoryService inventoryService, ProductService productService, ObjectMapper objectMapper) {
+        this.inventoryService = inventoryService;
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Lists the products that contain an article, with the number of units of each that can currently be sold.
+     *
+     * @param articleId the ID of the article
+     * @return ResponseEntity with the products containing the article, or an error message if the article is unknown
+     */
+    @GetMapping("/{articleId}/products")
+    public Mono<ResponseEntity<?>> getProductsContaining(@PathVariable String articleId) {
+        return Mono.<ResponseEntity<?>>fromCallable(() -> ResponseEntity.ok(productService.findByArticle(articleId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorResume(CustomHttpStatusCodeException.class,
+                        e -> Mono.just(ResponseEntity.status(e.getHttpStatus()).body(e.getMessage())));
+    }
+
+    /**
+     * Uploads and processes an inventory JSON file.
+     *
+     * @param file The uploaded JSON file containing inventory data.
+     * @return ResponseEntity with an {@link InventoryUploadResultDTO} on success or an error message.
+     */
+    @PostMapping("/upload")
+    public Mono<ResponseEntity<?>> uploadInventory(@RequestPart(value = "file", required = false) FilePart file) {
+        if (file == null) {
+            return Mono.just(ResponseEntity.badRequest().body("File is empty or not provided."));
+        }
+        return Mono.<ResponseEntity<?>>fromCallable(() -> {
+            try (JsonArrayIterator<InventoryArticleDTO> articles = new JsonArrayIterator<>(objectMapper,
+                    DataBufferUtils.subscriberInputStream(file.content(), UPLOAD_DEMAND), "inventory", InventoryArticleDTO.class)) {
+                InventoryUploadResultDTO result = inventoryService.saveAll(articles);
+                return ResponseEntity.ok(result);
+
+            } catch (PartialUploadException e) {
+                return toErrorResponse(e);
+            } catch (CustomHttpStatusCodeException e) {
+                return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
+            } catch (UncheckedIOException e) {
+                return toErrorResponse(e.getCause());
+            } catch (IOException e) {
+                return toErrorResponse(e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private ResponseEntity<String> toErrorResponse(PartialUploadException e) {
+        ResponseEntity<String> failure = e.getCause() instanceof UncheckedIOException cause
+                ? toErrorResponse(cause.getCause())
+                : ResponseEntity.status(e.getHttpStatus()).body(e.getCause().getMessage());
+        return ResponseEntity.status(failure.getStatusCode()).body(e.describe(failure.getBody()));
+    }
+
+    private ResponseEntity<String> toErrorResponse(IOException e) {
+        if (e instanceof JsonMappingException) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid JSON format: " + e.getMessage());
+        } else if (e instanceof JsonProcessingException) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error processing JSON: " + e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload inventory file: " + e.getMessage());
+    }
+}
@@ -0,0 +1,166 @@
+package com.sona.warehouse.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.dto.OrderLineDTO;
+import com.sona.warehouse.dto.ProductDTO;
+import com.sona.warehouse.dto.SellableProductDTO;
+import com.sona.warehouse.dto.SellableProductPageDTO;
+import com.sona.warehouse.exceptions.CustomHttpStatusCodeException;
+import com.sona.warehouse.exceptions.PartialUploadException;
+import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.ReactiveProductService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * WebFlux equivalent of {@link ProductController}, served by the {@code reactive} profile.
+ * Listing and selling single products run on the reactive repositories through {@link ReactiveProductService}.
+ * Paging, order sales and uploads are delegated to the blocking {@link ProductService} on the bounded elastic scheduler.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/products")
+public class ReactiveProductController {
+
+    private static final int UPLOAD_DEMAND = 16;
+
+    private final ReactiveProductService reactiveProductService;
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Constructs a ReactiveProductController.
+     *
+     * @param reactiveProductService the non-blocking service used for listing and selling products
+     * @param productService         the service used for the remaining product operations
+     * @param objectMapper           the ObjectMapper used for JSON processing
+     */
+    @Autowired
+    public ReactiveProductController(ReactiveProductService reactiveProductService, ProductService productService,
+                                     ObjectMapper objectMapper) {
+        this.reactiveProductService = reactiveProductService;
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Retrieves all available products, as a JSON array or, with {@code Accept: application/x-ndjson}, one product per line.
+     *
+     * @return the available products
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<SellableProductDTO> getAllProducts() {
+        return reactiveProductService.findAll();
+    }
+
+    /**
+     * Retrieves a page of the available products, ordered by ID.
+     *
+     * @param after the cursor returned with the previous page, or none for the first page
+     * @param limit the maximum number of products to return
+     * @return the page of products and the cursor of the next page
+     */
+    @GetMapping("/page")
+    public Mono<SellableProductPageDTO> getProductPage(@RequestParam(required = false) String after,
+                                                       @RequestParam(required = false) Integer limit) {
+        return Mono.fromCallable(() -> productService.findPage(after, limit)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Sells units of a product by its ID.
+     *
+     * @param id    the ID of the product to be sold
+     * @param count the number of units to be sold, one by default
+     * @return a ResponseEntity with a {@link com.sona.warehouse.dto.SaleResultDTO} or an error message in case of failure
+     */
+    @PatchMapping("/{id}")
+    public Mono<ResponseEntity<?>> sellProduct(@PathVariable String id, @RequestParam(defaultValue = "1") long count) {
+        return reactiveProductService.sell(id, count)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .onErrorResume(CustomHttpStatusCodeException.class,
+                        e -> Mono.just(ResponseEntity.status(e.getHttpStatus()).body(e.getMessage())))
+                .onErrorResume(e -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("Failed to sell product: " + e.getMessage())));
+    }
+
+    /**
+     * Sells all products of an order at once. If a line cannot be sold, the stock already taken for the order is given back,
+     * but other requests may see the order partly applied until then.
+     *
+     * @param lines the IDs of the products and how many units of each are sold
+     * @return a ResponseEntity with a success message or an error message in case of failure
+     */
+    @PostMapping("/sell")
+    public Mono<ResponseEntity<String>> sellOrder(@RequestBody List<OrderLineDTO> lines) {
+        return Mono.fromCallable(() -> {
+            try {
+                productService.sellOrder(lines);
+                return ResponseEntity.ok("Order sold successfully.");
+            } catch (CustomHttpStatusCodeException e) {
+                return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to sell order: " + e.getMessage());
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Uploads products from a JSON file, streamed product by product and saved in batches.
+     *
+     * @param file the file part containing the JSON data for products
+     * @return a ResponseEntity with a success message or an error message in case of failure
+     */
+    @PostMapping("/upload")
+    public Mono<ResponseEntity<String>> uploadProducts(@RequestPart(value = "file", required = false) FilePart file) {
+        if (file == null) {
+            return Mono.just(ResponseEntity.badRequest().body("File is empty or not provided."));
+        }
+        return Mono.fromCallable(() -> {
+            try (JsonArrayIterator<ProductDTO> products = new JsonArrayIterator<>(objectMapper,
+                    DataBufferUtils.subscriberInputStream(file.content(), UPLOAD_DEMAND), "products", ProductDTO.class)) {
+                productService.saveAll(products);
+                return ResponseEntity.ok("Products uploaded successfully!");
+
+            } catch (PartialUploadException e) {
+                return toErrorResponse(e);
+            } catch (CustomHttpStatusCodeException e) {
+                return ResponseEntity.status(e.getHttpStatus()).body(e.getMessage());
+            } catch (UncheckedIOException e) {
+                return toErrorResponse(e.getCause());
+            } catch (IOException e) {
+                return toErrorResponse(e);
+            }
+        }).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private ResponseEntity<String> toErrorResponse(PartialUploadException e) {
+        ResponseEntity<String> failure = e.getCause() instanceof UncheckedIOException cause
+                ? toErrorResponse(cause.getCause())
+                : ResponseEntity.status(e.getHttpStatus()).body(e.getCause().getMessage());
+        return ResponseEntity.status(failure.getStatusCode()).body(e.describe(failure.getBody()));
+    }
+
+    private ResponseEntity<String> toErrorResponse(IOException e) {
+        if (e instanceof JsonMappingException) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid JSON format: " + e.getMessage());
+        } else if (e instanceof JsonProcessingException) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Error processing JSON: " + e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to upload products file: " + e.getMessage());
+    }
+}
@@ -0,0 +1,85 @@
+package com.sona.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object reporting the outcome of an inventory upload.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+public class InventoryUploadResultDTO {
+
+    /**
+     * The number of articles in the upload.
+     */
+    private long articles;
+
+    /**
+     * The number of articles that did not exist yet and were created.
+     */
+    private long inserted;
+
+    /**
+     * The number of existing articles whose stock was increased.
+     */
+    private long updated;
+
+    /**
+     * The number of times the sellable quantity of a product changed because of the upload.
+     * A product whose articles were spread over several batches may be counted once per batch.
+     * Always 0 when the sellable quantity projection is disabled.
+     */
+    private long changedProducts;
+
+    /**
+     * The total time spent writing the upload, in milliseconds.
+     */
+    private long elapsedMillis;
+
+    /**
+     * The outcome of every bulk write, in the order they were sent.
+     */
+    private List<Batch> batches;
+
+    /**
+     * The outcome of a single bulk write.
+     */
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    @Builder
+    public static class Batch {
+
+        /**
+         * The number of articles in the batch.
+         */
+        private int articles;
+
+        /**
+         * The number of articles created by the batch.
+         */
+        private long inserted;
+
+        /**
+         * The number of existing articles updated by the batch.
+         */
+        private long updated;
+
+        /**
+         * The number of products whose sellable quantity changed because of the batch.
+         */
+        private long changedProducts;
+
+        /**
+         * The time spent on the bulk write, in milliseconds.
+         */
+        private long elapsedMillis;
+    }
+}
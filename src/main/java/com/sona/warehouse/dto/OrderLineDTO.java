@@ -0,0 +1,24 @@
+package com.sona.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Data Transfer Object representing one line of an order: a product and how many units of it are sold.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderLineDTO {
+
+    /**
+     * The ID of the product being sold.
+     */
+    private String productId;
+
+    /**
+     * The number of units of the product being sold.
+     */
+    private Long count;
+}
@@ -0,0 +1,20 @@
+package com.sona.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * Data Transfer Object (DTO) that reports the outcome of selling units of a product,
+ * including how many units of the product can still be sold afterwards.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class SaleResultDTO {
+
+    private String productId;
+    private Long sold;
+    private Long remaining;
+
+}
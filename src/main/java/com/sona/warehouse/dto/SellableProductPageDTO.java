@@ -0,0 +1,26 @@
+package com.sona.warehouse.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Data Transfer Object representing one page of sellable products.
+ */
+@Data
+@AllArgsConstructor
+@Builder
+public class SellableProductPageDTO {
+
+    /**
+     * The sellable products of this page, ordered by ID.
+     */
+    private List<SellableProductDTO> products;
+
+    /**
+     * The cursor to pass as {@code after} to fetch the next page, or null if this is the last page.
+     */
+    private String nextCursor;
+}
@@ -0,0 +1,21 @@
+package com.sona.warehouse.event;
+
+import lombok.Value;
+
+/**
+ * Published when an inventory article was written, by this or any other instance or directly in MongoDB.
+ */
+@Value
+public class ArticleStockChangedEvent {
+
+    /**
+     * The ID of the article.
+     */
+    String articleId;
+
+    /**
+     * The stock of the inventory document of the article after the change,
+     * or null if the article was deleted or only one of its stripes was written.
+     */
+    Long stock;
+}
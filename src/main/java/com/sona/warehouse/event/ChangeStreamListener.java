@@ -0,0 +1,138 @@
+package com.sona.warehouse.event;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.sona.warehouse.model.InventoryStripe;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.messaging.ChangeStreamRequest;
+import org.springframework.data.mongodb.core.messaging.DefaultMessageListenerContainer;
+import org.springframework.data.mongodb.core.messaging.Message;
+import org.springframework.data.mongodb.core.messaging.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+
+/**
+ * Watches the {@code inventory}, {@code inventory_stripes} and {@code products} collections with MongoDB change streams
+ * and republishes every change as an {@link ArticleStockChangedEvent} or a {@link ProductDefinitionChangedEvent} in process,
+ * so that caches and projections also see writes made by other instances or directly in the database.
+ * A write to a stripe of a hot article is published as a change of the article without its stock,
+ * which the listeners read again with all stripes.
+ * Events are published on the listener threads, one change at a time in the order of the oplog.
+ * Change streams need a replica set, so the listener only runs when {@code warehouse.change-stream.enabled} is set.
+ */
+@Component
+@ConditionalOnProperty(prefix = "warehouse.change-stream", name = "enabled", havingValue = "true")
+public class ChangeStreamListener implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeStreamListener.class);
+
+    private static final String INVENTORY = "inventory";
+    private static final String STRIPES = "inventory_stripes";
+    private static final String PRODUCTS = "products";
+    private static final String ID = "_id";
+    private static final String STOCK = "stock";
+    private static final String NAME = "name";
+    private static final String SELLABLE_QUANTITY = "sellableQuantity";
+    private static final String VERSION = "version";
+    private static final Set<OperationType> WRITES = Set.of(
+            OperationType.INSERT, OperationType.UPDATE, OperationType.REPLACE, OperationType.DELETE);
+
+    private final MessageListenerContainer container;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Constructs a ChangeStreamListener.
+     *
+     * @param mongoTemplate  the template the change streams are opened with.
+     * @param eventPublisher the publisher of the in-process events.
+     */
+    @Autowired
+    public ChangeStreamListener(MongoTemplate mongoTemplate, ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+        this.container = new DefaultMessageListenerContainer(mongoTemplate, new SimpleAsyncTaskExecutor("change-stream-"),
+                e -> logger.error("Change stream failed, caches may be stale until their entries expire.", e));
+        container.register(ChangeStreamRequest.builder(this::inventoryChanged)
+                .collection(INVENTORY)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .build(), Document.class);
+        container.register(ChangeStreamRequest.builder(this::stripeChanged)
+                .collection(STRIPES)
+                .build(), Document.class);
+        container.register(ChangeStreamRequest.builder(this::productChanged)
+                .collection(PRODUCTS)
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                .build(), Document.class);
+    }
+
+    @Override
+    public void start() {
+        container.start();
+        logger.info("Listening to changes of the {}, {} and {} collections.", INVENTORY, STRIPES, PRODUCTS);
+    }
+
+    @Override
+    public void stop() {
+        container.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return container.isRunning();
+    }
+
+    private void inventoryChanged(Message<ChangeStreamDocument<Document>, Document> message) {
+        ChangeStreamDocument<Document> change = message.getRaw();
+        if (change == null || !WRITES.contains(change.getOperationType())) {
+            return;
+        }
+        Document article = change.getOperationType() == OperationType.DELETE ? null : change.getFullDocument();
+        Number stock = article == null ? null : article.get(STOCK, Number.class);
+        eventPublisher.publishEvent(new ArticleStockChangedEvent(idOf(change), stock == null ? null : stock.longValue()));
+    }
+
+    private void stripeChanged(Message<ChangeStreamDocument<Document>, Document> message) {
+        ChangeStreamDocument<Document> change = message.getRaw();
+        if (change == null || !WRITES.contains(change.getOperationType())) {
+            return;
+        }
+        eventPublisher.publishEvent(new ArticleStockChangedEvent(InventoryStripe.articleIdOf(idOf(change)), null));
+    }
+
+    private void productChanged(Message<ChangeStreamDocument<Document>, Document> message) {
+        ChangeStreamDocument<Document> change = message.getRaw();
+        if (change == null || !WRITES.contains(change.getOperationType()) || isSellableQuantityOnly(change)) {
+            return;
+        }
+        Document product = change.getOperationType() == OperationType.DELETE ? null : change.getFullDocument();
+        eventPublisher.publishEvent(new ProductDefinitionChangedEvent(idOf(change), product == null ? null : product.getString(NAME)));
+    }
+
+    /**
+     * Recognizes the updates made by the sellable quantity projection, which would otherwise trigger themselves again.
+     */
+    private static boolean isSellableQuantityOnly(ChangeStreamDocument<Document> change) {
+        UpdateDescription update = change.getUpdateDescription();
+        return change.getOperationType() == OperationType.UPDATE && update != null
+                && (update.getRemovedFields() == null || update.getRemovedFields().isEmpty())
+                && update.getUpdatedFields() != null
+                && update.getUpdatedFields().containsKey(SELLABLE_QUANTITY)
+                && update.getUpdatedFields().keySet().stream().allMatch(field -> field.equals(SELLABLE_QUANTITY) || field.equals(VERSION));
+    }
+
+    private static String idOf(ChangeStreamDocument<Document> change) {
+        BsonValue id = change.getDocumentKey().get(ID);
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+}
@@ -0,0 +1,22 @@
+package com.sona.warehouse.event;
+
+import lombok.Value;
+
+/**
+ * Published when a product was created, deleted or had its name, price or articles changed,
+ * by this or any other instance or directly in MongoDB.
+ * Updates of the materialized sellable quantity alone are not published.
+ */
+@Value
+public class ProductDefinitionChangedEvent {
+
+    /**
+     * The ID of the product.
+     */
+    String productId;
+
+    /**
+     * The name of the product after the change, or null if the product was deleted.
+     */
+    String name;
+}
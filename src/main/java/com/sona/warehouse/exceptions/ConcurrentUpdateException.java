@@ -0,0 +1,21 @@
+package com.sona.warehouse.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when a write kept conflicting with concurrent writes of the same documents
+ * after all attempts allowed by the retry policy.
+ */
+public class ConcurrentUpdateException extends CustomHttpStatusCodeException {
+
+    /**
+     * Constructs a new ConcurrentUpdateException.
+     *
+     * @param operation the operation that could not be completed
+     * @param cause     the conflict of the last attempt
+     */
+    public ConcurrentUpdateException(String operation, Throwable cause) {
+        super(HttpStatus.CONFLICT, "Concurrent update, please retry: " + operation);
+        initCause(cause);
+    }
+}
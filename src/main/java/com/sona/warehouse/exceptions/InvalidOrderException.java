@@ -0,0 +1,18 @@
+package com.sona.warehouse.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when an order to sell products is empty or has a line without a product or a positive count.
+ */
+public class InvalidOrderException extends CustomHttpStatusCodeException {
+
+    /**
+     * Constructs a new InvalidOrderException.
+     *
+     * @param reason what is wrong with the order
+     */
+    public InvalidOrderException(String reason) {
+        super(HttpStatus.BAD_REQUEST, "Invalid order: " + reason);
+    }
+}
@@ -0,0 +1,18 @@
+package com.sona.warehouse.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when the articles of a product could not be resolved from the inventory in time.
+ */
+public class InventoryLookupTimeoutException extends CustomHttpStatusCodeException {
+
+    /**
+     * Constructs a new InventoryLookupTimeoutException.
+     *
+     * @param productId the ID of the product whose articles were being resolved
+     */
+    public InventoryLookupTimeoutException(String productId) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Inventory lookup timed out for product: " + productId);
+    }
+}
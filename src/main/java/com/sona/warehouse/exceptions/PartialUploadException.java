@@ -0,0 +1,51 @@
+package com.sona.warehouse.exceptions;
+
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Exception thrown when an upload fails after some of its batches were already saved.
+ * The saved batches are kept, so uploading the same document again would apply them twice.
+ */
+@Getter
+public class PartialUploadException extends CustomHttpStatusCodeException {
+    private final long saved;
+    private final String items;
+
+    /**
+     * Constructs a new PartialUploadException.
+     *
+     * @param saved the number of items saved before the failure
+     * @param items the name of the uploaded items, e.g. "products"
+     * @param cause the failure that stopped the upload
+     */
+    public PartialUploadException(long saved, String items, RuntimeException cause) {
+        super(statusOf(cause), describe(saved, items, cause.getMessage()));
+        this.saved = saved;
+        this.items = items;
+        initCause(cause);
+    }
+
+    /**
+     * Describes the failure of the upload, prefixed with how much of it was saved.
+     *
+     * @param failure the description of the failure that stopped the upload
+     * @return the description of the partial upload
+     */
+    public String describe(String failure) {
+        return describe(saved, items, failure);
+    }
+
+    private static String describe(long saved, String items, String failure) {
+        return "Only the first " + saved + " " + items + " were saved before the upload failed: " + failure;
+    }
+
+    private static HttpStatus statusOf(RuntimeException cause) {
+        if (cause instanceof CustomHttpStatusCodeException e) {
+            return e.getHttpStatus();
+        }
+        return cause instanceof UncheckedIOException ? HttpStatus.BAD_REQUEST : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+}
@@ -0,0 +1,20 @@
+package com.sona.warehouse.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Exception thrown when the stock journal can no longer force its entries to disk and refuses further stock changes.
+ * Nothing was changed by the refused request.
+ */
+public class StockJournalFailedException extends CustomHttpStatusCodeException {
+
+    /**
+     * Constructs a new StockJournalFailedException.
+     *
+     * @param cause the failure of the flush
+     */
+    public StockJournalFailedException(Throwable cause) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "The stock journal failed, stock changes are not accepted");
+        initCause(cause);
+    }
+}
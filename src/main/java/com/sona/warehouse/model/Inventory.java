@@ -3,7 +3,9 @@ package com.sona.warehouse.model;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 /**
@@ -14,10 +16,36 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @Data
 @Builder
 @AllArgsConstructor
+@NoArgsConstructor
 public class Inventory {
 
     @Id
     private String articleId;
     private String name;
     private Long stock;
+
+    /**
+     * Incremented by every write, including the server-side stock updates, so that saving a document
+     * read before a concurrent change fails instead of overwriting it. The application itself never saves
+     * whole inventory documents; all its stock changes are conditional or {@code $inc} updates.
+     */
+    @Version
+    private Long version;
+
+    /**
+     * The sequence number of the last stock journal entry applied to this article, so that entries replayed
+     * after a restart are applied only once. Not set for articles only written outside the journal.
+     */
+    private Long journalSequence;
+
+    /**
+     * Constructs a new, unversioned inventory article.
+     *
+     * @param articleId the ID of the article.
+     * @param name      the name of the article.
+     * @param stock     the number of units in stock.
+     */
+    public Inventory(String articleId, String name, Long stock) {
+        this(articleId, name, stock, null, null);
+    }
 }
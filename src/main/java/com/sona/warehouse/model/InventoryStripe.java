@@ -0,0 +1,56 @@
+package com.sona.warehouse.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A share of the stock of a hot article. The stock of the article is the stock of its {@link Inventory} document
+ * plus the stock of all its stripes, so that sales can decrement different documents concurrently.
+ */
+@Document(collection = "inventory_stripes")
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class InventoryStripe {
+
+    private static final String SEPARATOR = "#";
+
+    /**
+     * The article ID and the stripe number, as built by {@link #idOf(String, int)}.
+     */
+    @Id
+    private String id;
+
+    @Indexed
+    private String articleId;
+
+    private int stripe;
+    private Long stock;
+
+    /**
+     * Builds the ID of a stripe of an article.
+     *
+     * @param articleId the ID of the article.
+     * @param stripe    the number of the stripe, from 0.
+     * @return the ID of the stripe document.
+     */
+    public static String idOf(String articleId, int stripe) {
+        return articleId + SEPARATOR + stripe;
+    }
+
+    /**
+     * Extracts the article ID from the ID of one of its stripes.
+     *
+     * @param id the ID of the stripe document, as built by {@link #idOf(String, int)}.
+     * @return the ID of the article.
+     */
+    public static String articleIdOf(String id) {
+        return id.substring(0, id.lastIndexOf(SEPARATOR));
+    }
+}
@@ -2,6 +2,8 @@ package com.sona.warehouse.model;
 
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.List;
@@ -19,11 +21,27 @@ public class Product {
     @Id
     private String id;
 
+    @Indexed(unique = true)
     private String name;
     private Double price;
 
     private List<ArticleQuantity> containArticles;
 
+    /**
+     * The number of units that can be sold with the current inventory, maintained by
+     * {@code SellableQuantityProjection} whenever the stock of a contained article changes.
+     */
+    @Indexed
+    private Long sellableQuantity;
+
+    /**
+     * Incremented by every write, including the bulk upserts and projection updates.
+     * The projection only stores a sellable quantity while the version is still the one it was calculated from,
+     * and saving a document read before a concurrent change fails instead of overwriting it.
+     */
+    @Version
+    private Long version;
+
     /**
      * Represents the quantity of an article in the product.
      */
@@ -31,6 +49,7 @@ public class Product {
     @Getter
     @Builder
     public static class ArticleQuantity {
+        @Indexed
         String articleId;
         Long quantity;
 
@@ -0,0 +1,46 @@
+package com.sona.warehouse.model;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * A change of the stock of one or more articles, appended to the local stock journal before it is applied to MongoDB.
+ * A sale is one entry with a negative delta per article, so that it is applied all or nothing after a restart.
+ */
+@Value
+public class StockJournalEntry {
+
+    /**
+     * The position of the entry in the journal. Increases with every entry, also across restarts.
+     */
+    long sequence;
+
+    /**
+     * The stock changes of the entry, at most one per article.
+     */
+    List<Delta> deltas;
+
+    /**
+     * The change of the stock of a single article.
+     */
+    @Value
+    public static class Delta {
+
+        /**
+         * The ID of the article.
+         */
+        String articleId;
+
+        /**
+         * The name of the article if the article is created when it does not exist yet, as by an inventory upload,
+         * or null if the article must exist, as for a sale.
+         */
+        String name;
+
+        /**
+         * The amount added to the stock; negative for sales.
+         */
+        long amount;
+    }
+}
@@ -0,0 +1,116 @@
+package com.sona.warehouse.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.StockJournalEntry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Atomic stock operations on inventory articles that are executed server-side by MongoDB,
+ * so concurrent callers never read-modify-write the same document.
+ */
+public interface InventoryRepositoryCustom {
+
+    /**
+     * Atomically decrements the stock of an article, but only if it has at least the given amount in stock.
+     *
+     * @param articleId the ID of the article.
+     * @param amount    the amount to be removed from the stock.
+     * @return the article after the update, or an empty Optional if the article does not exist
+     *         or does not have enough stock.
+     */
+    Optional<Inventory> decrementStock(String articleId, long amount);
+
+    /**
+     * Decrements the stock of several articles with one conditional update per article, undoing them if one fails.
+     * Each article is only decremented if it has at least the given amount in stock. The updates stop at the first article
+     * that cannot be decremented, and the articles decremented before it get their stock back with a single bulk write
+     * of increments. Missing articles are never created.
+     * <p>
+     * This is not atomic, as MongoDB may run without a replica set and so without multi-document transactions:
+     * other readers can see some articles of the sale decremented before the others are, or before they are given back,
+     * and if the process dies or the bulk write of increments fails, the stock taken before the failing article
+     * stays taken.
+     *
+     * @param amountByArticle the amount to be removed from the stock, keyed by article ID; the updates follow the map's order.
+     * @return an empty Optional if every article was decremented, otherwise the ID of the first article
+     *         that does not exist or does not have enough stock.
+     */
+    Optional<String> decrementStock(Map<String, Long> amountByArticle);
+
+    /**
+     * Atomically increments the stock of an existing article.
+     *
+     * @param articleId the ID of the article.
+     * @param amount    the amount to be added to the stock.
+     * @return the article after the update, or an empty Optional if the article does not exist.
+     */
+    Optional<Inventory> incrementStock(String articleId, long amount);
+
+    /**
+     * Adds stock to the given articles with a single bulk write. Each article becomes an upsert
+     * that increments the stock and only sets the name when the article is created.
+     *
+     * @param articles the articles with the stock to be added.
+     * @param ordered  whether the write stops at the first failing article instead of continuing with the rest.
+     * @return the result of the bulk write.
+     */
+    BulkWriteResult addStock(List<Inventory> articles, boolean ordered);
+
+    /**
+     * Applies stock journal entries in order with ordered bulk writes. Each delta is only applied if the article's
+     * {@code journalSequence} is lower than the sequence of its entry, and sets it to that sequence,
+     * so entries that were already applied, also partly, are skipped when they are applied again.
+     * Every delta upserts its article, as the journal only appends deltas of articles it knows to exist;
+     * the name of a created article is that of its delta, which may be null.
+     *
+     * @param entries the entries to be applied, ordered by sequence.
+     * @return the number of article updates that were applied, excluding the skipped ones.
+     */
+    int applyJournal(List<StockJournalEntry> entries);
+
+    /**
+     * Finds the highest journal sequence applied to any article, to continue the sequence of a new journal after it.
+     *
+     * @return the highest applied journal sequence, or 0 if no journal entry was ever applied.
+     */
+    long findMaxJournalSequence();
+
+    /**
+     * Atomically decrements the stock of one stripe of a hot article, but only if the stripe has at least the given amount.
+     *
+     * @param articleId the ID of the article.
+     * @param stripe    the number of the stripe.
+     * @param amount    the amount to be removed from the stock.
+     * @return true if the stripe was decremented, false if it does not exist or does not have enough stock.
+     */
+    boolean decrementStripe(String articleId, int stripe, long amount);
+
+    /**
+     * Moves the whole stock of a hot article, the stock of its inventory document and of all its stripes,
+     * to the stripes {@code 0} to {@code stripes - 1}. The stock is spread evenly, unless an even share is less than
+     * the minimum; then stripe {@code 0} receives all of it, so that a sale of that amount can still be served.
+     * The stock is moved in pairs of conditional {@code $inc}: an amount is taken from the document or a stripe holding
+     * more than its share, then added to a stripe holding less. It is never counted twice, and at most the amount of
+     * one move is in transit, which concurrent reads and sales do not see and a crash in between loses.
+     * Stock sold from a source while it is moved is left out.
+     *
+     * @param articleId the ID of the article.
+     * @param stripes   the number of stripes of the article.
+     * @param minimum   the amount at least one stripe must hold if the article has that much in stock.
+     * @return the total stock of the article when the move started, or 0 if the article does not exist.
+     */
+    long rebalanceStripes(String articleId, int stripes, long minimum);
+
+    /**
+     * Sums the stock of the stripes of each of the given articles, excluding the stock of their inventory documents.
+     *
+     * @param articleIds the IDs of the articles.
+     * @return the stock of the stripes keyed by article ID; articles without stripes are absent.
+     */
+    Map<String, Long> findStripedStock(Collection<String> articleIds);
+}
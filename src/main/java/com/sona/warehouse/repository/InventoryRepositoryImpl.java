@@ -0,0 +1,275 @@
+package com.sona.warehouse.repository;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.InventoryStripe;
+import com.sona.warehouse.model.StockJournalEntry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link InventoryRepositoryCustom} implementation based on conditional updates.
+ * <p>
+ * Decrements never upsert: a conditional update that matches no document means the article is missing or sold out,
+ * and is never turned into a document with negative stock. Decrements are undone with {@code $inc} only,
+ * so no document is ever removed on behalf of a sale.
+ * <p>
+ * Hot articles keep most of their stock in {@link InventoryStripe} documents, which only the stripe operations write.
+ */
+class InventoryRepositoryImpl implements InventoryRepositoryCustom {
+
+    private static final String ID = "_id";
+    private static final String STOCK = "stock";
+    private static final String NAME = "name";
+    private static final String VERSION = "version";
+    private static final String JOURNAL_SEQUENCE = "journalSequence";
+    private static final String ARTICLE_ID = "articleId";
+    private static final String STRIPE = "stripe";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    InventoryRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Optional<Inventory> decrementStock(String articleId, long amount) {
+        Query query = Query.query(Criteria.where(ID).is(articleId).and(STOCK).gte(amount));
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, new Update().inc(STOCK, -amount).inc(VERSION, 1),
+                FindAndModifyOptions.options().returnNew(true), Inventory.class));
+    }
+
+    @Override
+    public Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        List<Map.Entry<String, Long>> decremented = new ArrayList<>();
+        try {
+            for (Map.Entry<String, Long> amount : amountByArticle.entrySet()) {
+                Query query = Query.query(Criteria.where(ID).is(amount.getKey()).and(STOCK).gte(amount.getValue()));
+                Update update = new Update().inc(STOCK, -amount.getValue()).inc(VERSION, 1);
+                if (mongoTemplate.updateFirst(query, update, Inventory.class).getMatchedCount() == 0) {
+                    restore(decremented);
+                    return Optional.of(amount.getKey());
+                }
+                decremented.add(amount);
+            }
+        } catch (RuntimeException e) {
+            try {
+                restore(decremented);
+            } catch (RuntimeException restoreFailure) {
+                e.addSuppressed(restoreFailure);
+            }
+            throw e;
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<Inventory> incrementStock(String articleId, long amount) {
+        Query query = Query.query(Criteria.where(ID).is(articleId));
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, new Update().inc(STOCK, amount).inc(VERSION, 1),
+                FindAndModifyOptions.options().returnNew(true), Inventory.class));
+    }
+
+    @Override
+    public BulkWriteResult addStock(List<Inventory> articles, boolean ordered) {
+        BulkOperations bulk = mongoTemplate.bulkOps(ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED,
+                Inventory.class);
+        for (Inventory article : articles) {
+            bulk.upsert(Query.query(Criteria.where(ID).is(article.getArticleId())),
+                    new Update().inc(STOCK, article.getStock()).inc(VERSION, 1).setOnInsert(NAME, article.getName()));
+        }
+        return bulk.execute();
+    }
+
+    @Override
+    public int applyJournal(List<StockJournalEntry> entries) {
+        List<Map.Entry<Query, Update>> updates = new ArrayList<>();
+        for (StockJournalEntry entry : entries) {
+            for (StockJournalEntry.Delta delta : entry.getDeltas()) {
+                // $not $gte instead of $lt, so that articles never written by the journal match as well
+                Query query = Query.query(Criteria.where(ID).is(delta.getArticleId())
+                        .and(JOURNAL_SEQUENCE).not().gte(entry.getSequence()));
+                Update update = new Update().inc(STOCK, delta.getAmount()).inc(VERSION, 1).set(JOURNAL_SEQUENCE, entry.getSequence());
+                if (delta.getName() != null) {
+                    update.setOnInsert(NAME, delta.getName());
+                }
+                updates.add(Map.entry(query, update));
+            }
+        }
+
+        int applied = 0;
+        int start = 0;
+        while (start < updates.size()) {
+            BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.ORDERED, Inventory.class);
+            for (int index = start; index < updates.size(); index++) {
+                // Every article of an entry existed in the journal when it was appended, so a missing one is created
+                Map.Entry<Query, Update> update = updates.get(index);
+                bulk.upsert(update.getKey(), update.getValue());
+            }
+            try {
+                BulkWriteResult result = bulk.execute();
+                return applied + result.getModifiedCount() + result.getUpserts().size();
+            } catch (BulkOperationException e) {
+                // An upsert of an article that already has this or a later entry tries to insert it again: skip it
+                BulkWriteError error = e.getErrors().get(0);
+                if (!isStockConflict(error)) {
+                    throw e;
+                }
+                applied += e.getResult().getModifiedCount() + e.getResult().getUpserts().size();
+                start += error.getIndex() + 1;
+            }
+        }
+        return applied;
+    }
+
+    @Override
+    public long findMaxJournalSequence() {
+        Query query = Query.query(Criteria.where(JOURNAL_SEQUENCE).exists(true))
+                .with(Sort.by(Sort.Direction.DESC, JOURNAL_SEQUENCE))
+                .limit(1);
+        Inventory inventory = mongoTemplate.findOne(query, Inventory.class);
+        return inventory == null ? 0L : inventory.getJournalSequence();
+    }
+
+    @Override
+    public boolean decrementStripe(String articleId, int stripe, long amount) {
+        Query query = Query.query(Criteria.where(ID).is(InventoryStripe.idOf(articleId, stripe)).and(STOCK).gte(amount));
+        return mongoTemplate.updateFirst(query, new Update().inc(STOCK, -amount), InventoryStripe.class).getModifiedCount() == 1;
+    }
+
+    @Override
+    public long rebalanceStripes(String articleId, int stripes, long minimum) {
+        Inventory article = mongoTemplate.findById(articleId, Inventory.class);
+        if (article == null) {
+            return 0;
+        }
+        // Also the stripes beyond the current count, in case the count was lowered
+        Map<Integer, Long> stockByStripe = new HashMap<>();
+        for (InventoryStripe stripe : mongoTemplate.find(Query.query(Criteria.where(ARTICLE_ID).is(articleId)), InventoryStripe.class)) {
+            stockByStripe.put(stripe.getStripe(), stripe.getStock());
+        }
+        long total = article.getStock() + stockByStripe.values().stream().mapToLong(Long::longValue).sum();
+
+        // Pairs of the stripe number, or -1 for the document, and the amount
+        List<long[]> deficits = new ArrayList<>();
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            long deficit = shareOf(stripe, stripes, total, minimum) - stockByStripe.getOrDefault(stripe, 0L);
+            if (deficit > 0) {
+                deficits.add(new long[]{stripe, deficit});
+            }
+        }
+        // The sources are the document and the stripes holding more than their share, the document first
+        List<long[]> surpluses = new ArrayList<>();
+        if (article.getStock() > 0) {
+            surpluses.add(new long[]{-1, article.getStock()});
+        }
+        stockByStripe.forEach((stripe, stock) -> {
+            long target = stripe < stripes ? shareOf(stripe, stripes, total, minimum) : 0;
+            if (stock > target) {
+                surpluses.add(new long[]{stripe, stock - target});
+            }
+        });
+
+        // Each move takes an amount from one document and adds it to one stripe, so at most that amount is ever in transit
+        int source = 0;
+        for (long[] deficit : deficits) {
+            while (deficit[1] > 0 && source < surpluses.size()) {
+                long[] surplus = surpluses.get(source);
+                long amount = Math.min(surplus[1], deficit[1]);
+                if (take(articleId, (int) surplus[0], amount)) {
+                    addToStripe(articleId, (int) deficit[0], amount);
+                    deficit[1] -= amount;
+                    surplus[1] -= amount;
+                } else {
+                    // Sold meanwhile; the source gives no more in this pass
+                    surplus[1] = 0;
+                }
+                if (surplus[1] == 0) {
+                    source++;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * The stock a stripe should hold: an even share of the total, unless that is less than the minimum,
+     * in which case stripe 0 holds all of it.
+     */
+    private static long shareOf(int stripe, int stripes, long total, long minimum) {
+        long share = total / stripes;
+        if (share < minimum) {
+            return stripe == 0 ? total : 0;
+        }
+        return share + (stripe < total % stripes ? 1 : 0);
+    }
+
+    /**
+     * Takes an amount from the inventory document of an article, or from one of its stripes, if it still has that much.
+     */
+    private boolean take(String articleId, int stripe, long amount) {
+        if (stripe < 0) {
+            Query query = Query.query(Criteria.where(ID).is(articleId).and(STOCK).gte(amount));
+            return mongoTemplate.updateFirst(query, new Update().inc(STOCK, -amount).inc(VERSION, 1), Inventory.class).getModifiedCount() == 1;
+        }
+        return decrementStripe(articleId, stripe, amount);
+    }
+
+    private void addToStripe(String articleId, int stripe, long amount) {
+        Query query = Query.query(Criteria.where(ID).is(InventoryStripe.idOf(articleId, stripe)));
+        Update update = new Update().inc(STOCK, amount).setOnInsert(ARTICLE_ID, articleId).setOnInsert(STRIPE, stripe);
+        try {
+            mongoTemplate.upsert(query, update, InventoryStripe.class);
+        } catch (DuplicateKeyException e) {
+            // Two instances creating the same stripe: the upsert that lost the race is repeated as an update
+            mongoTemplate.upsert(query, update, InventoryStripe.class);
+        }
+    }
+
+    @Override
+    public Map<String, Long> findStripedStock(Collection<String> articleIds) {
+        Map<String, Long> stock = new HashMap<>();
+        for (InventoryStripe stripe : mongoTemplate.find(Query.query(Criteria.where(ARTICLE_ID).in(articleIds)), InventoryStripe.class)) {
+            stock.merge(stripe.getArticleId(), stripe.getStock(), Long::sum);
+        }
+        return stock;
+    }
+
+    /**
+     * Gives the articles decremented before a failed article their stock back. Only increments existing documents,
+     * so stock added meanwhile by an upload is kept.
+     */
+    private void restore(List<Map.Entry<String, Long>> decremented) {
+        if (decremented.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inventory.class);
+        for (Map.Entry<String, Long> amount : decremented) {
+            bulk.updateOne(Query.query(Criteria.where(ID).is(amount.getKey())),
+                    new Update().inc(STOCK, amount.getValue()).inc(VERSION, 1));
+        }
+        bulk.execute();
+    }
+
+    private static boolean isStockConflict(BulkWriteError error) {
+        return ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY;
+    }
+}
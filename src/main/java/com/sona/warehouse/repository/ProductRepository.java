@@ -1,11 +1,29 @@
 package com.sona.warehouse.repository;
 
 import com.sona.warehouse.model.Product;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface ProductRepository extends MongoRepository<Product, String> {
+public interface ProductRepository extends MongoRepository<Product, String>, ProductRepositoryCustom {
     Optional<Product> findByName(String name);
+
+    List<Product> findByNameIn(Collection<String> names);
+
+    List<Product> findByContainArticlesArticleIdIn(Collection<String> articleIds);
+
+    List<Product> findBySellableQuantityGreaterThan(long quantity);
+
+    List<Product> findAllBy(Pageable pageable);
+
+    List<Product> findByIdGreaterThan(String id, Pageable pageable);
+
+    List<Product> findBySellableQuantityGreaterThan(long quantity, Pageable pageable);
+
+    List<Product> findBySellableQuantityGreaterThanAndIdGreaterThan(long quantity, String id, Pageable pageable);
 }
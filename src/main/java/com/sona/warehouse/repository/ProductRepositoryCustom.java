@@ -0,0 +1,34 @@
+package com.sona.warehouse.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.model.Product;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk write operations on products that are executed server-side by MongoDB.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Creates or replaces the given products with a single bulk write, matching existing products by their unique name.
+     * The price and contained articles of an existing product are overwritten; its ID is kept.
+     *
+     * @param products the products to be written.
+     * @param ordered  whether the write stops at the first failing product instead of continuing with the rest.
+     * @return the result of the bulk write.
+     */
+    BulkWriteResult upsertByName(List<Product> products, boolean ordered);
+
+    /**
+     * Stores the sellable quantity of the given products with a single unordered bulk write.
+     * Each product is only written if its version is still the version it was read with, and gets a new version,
+     * so a quantity calculated from products read before a concurrent write of them is never stored.
+     *
+     * @param products     the products as read, with the version the quantity was calculated at.
+     * @param quantityById the new sellable quantity, keyed by product ID.
+     * @return the number of products written; fewer than given if some were written since they were read.
+     */
+    int updateSellableQuantities(List<Product> products, Map<String, Long> quantityById);
+}
@@ -0,0 +1,58 @@
+package com.sona.warehouse.repository;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.model.Product;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ProductRepositoryCustom} implementation based on {@link BulkOperations}.
+ */
+class ProductRepositoryImpl implements ProductRepositoryCustom {
+
+    private static final String ID = "_id";
+    private static final String NAME = "name";
+    private static final String PRICE = "price";
+    private static final String CONTAIN_ARTICLES = "containArticles";
+    private static final String SELLABLE_QUANTITY = "sellableQuantity";
+    private static final String VERSION = "version";
+
+    private final MongoTemplate mongoTemplate;
+
+    @Autowired
+    ProductRepositoryImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public BulkWriteResult upsertByName(List<Product> products, boolean ordered) {
+        BulkOperations bulk = mongoTemplate.bulkOps(ordered ? BulkOperations.BulkMode.ORDERED : BulkOperations.BulkMode.UNORDERED,
+                Product.class);
+        for (Product product : products) {
+            bulk.upsert(Query.query(Criteria.where(NAME).is(product.getName())),
+                    new Update().set(PRICE, product.getPrice()).set(CONTAIN_ARTICLES, product.getContainArticles()).inc(VERSION, 1));
+        }
+        return bulk.execute();
+    }
+
+    @Override
+    public int updateSellableQuantities(List<Product> products, Map<String, Long> quantityById) {
+        if (products.isEmpty()) {
+            return 0;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Product.class);
+        for (Product product : products) {
+            // A null version also matches documents written before they were versioned
+            bulk.updateOne(Query.query(Criteria.where(ID).is(product.getId()).and(VERSION).is(product.getVersion())),
+                    new Update().set(SELLABLE_QUANTITY, quantityById.get(product.getId())).inc(VERSION, 1));
+        }
+        return bulk.execute().getMatchedCount();
+    }
+}
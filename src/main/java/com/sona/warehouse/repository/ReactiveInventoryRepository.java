@@ -0,0 +1,12 @@
+package com.sona.warehouse.repository;
+
+import com.sona.warehouse.model.Inventory;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Non-blocking access to the inventory, used by the {@code reactive} profile.
+ */
+@Repository
+public interface ReactiveInventoryRepository extends ReactiveMongoRepository<Inventory, String>, ReactiveInventoryRepositoryCustom {
+}
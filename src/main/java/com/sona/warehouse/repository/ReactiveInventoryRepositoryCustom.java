@@ -0,0 +1,21 @@
+package com.sona.warehouse.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Non-blocking counterpart of the atomic stock operations of {@link InventoryRepositoryCustom}.
+ */
+public interface ReactiveInventoryRepositoryCustom {
+
+    /**
+     * Decrements the stock of several articles with one conditional update per article, undoing them if one fails,
+     * like {@link InventoryRepositoryCustom#decrementStock(Map)} and with the same lack of atomicity.
+     *
+     * @param amountByArticle the amount to be removed from the stock, keyed by article ID; the updates follow the map's order.
+     * @return a Mono completing empty if every article was decremented, otherwise emitting the ID of the first article
+     *         that does not exist or does not have enough stock.
+     */
+    Mono<String> decrementStock(Map<String, Long> amountByArticle);
+}
@@ -0,0 +1,70 @@
+package com.sona.warehouse.repository;
+
+import com.sona.warehouse.model.Inventory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link ReactiveInventoryRepositoryCustom} implementation using the same conditional updates
+ * as {@link InventoryRepositoryImpl}.
+ */
+class ReactiveInventoryRepositoryImpl implements ReactiveInventoryRepositoryCustom {
+
+    private static final String ID = "_id";
+    private static final String STOCK = "stock";
+    private static final String VERSION = "version";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    ReactiveInventoryRepositoryImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<String> decrementStock(Map<String, Long> amountByArticle) {
+        return decrement(new ArrayList<>(amountByArticle.entrySet()), 0);
+    }
+
+    /**
+     * Decrements the article at the index and then the following ones. If one cannot be decremented, the articles
+     * before it get their stock back and the article is emitted; errors are passed on once the stock is back.
+     */
+    private Mono<String> decrement(List<Map.Entry<String, Long>> amounts, int index) {
+        if (index == amounts.size()) {
+            return Mono.empty();
+        }
+        Map.Entry<String, Long> amount = amounts.get(index);
+        Query query = Query.query(Criteria.where(ID).is(amount.getKey()).and(STOCK).gte(amount.getValue()));
+        return mongoTemplate.updateFirst(query, new Update().inc(STOCK, -amount.getValue()).inc(VERSION, 1), Inventory.class)
+                .onErrorResume(e -> restore(amounts.subList(0, index)).then(Mono.error(e)))
+                .flatMap(result -> result.getMatchedCount() == 0
+                        ? restore(amounts.subList(0, index)).then(Mono.just(amount.getKey()))
+                        : decrement(amounts, index + 1));
+    }
+
+    /**
+     * Gives the decremented articles their stock back with increments only, never removing a document.
+     */
+    private Mono<Void> restore(List<Map.Entry<String, Long>> decremented) {
+        if (decremented.isEmpty()) {
+            return Mono.empty();
+        }
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Inventory.class);
+        for (Map.Entry<String, Long> amount : decremented) {
+            bulk.updateOne(Query.query(Criteria.where(ID).is(amount.getKey())),
+                    new Update().inc(STOCK, amount.getValue()).inc(VERSION, 1));
+        }
+        return bulk.execute().then();
+    }
+}
@@ -0,0 +1,15 @@
+package com.sona.warehouse.repository;
+
+import com.sona.warehouse.model.Product;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+/**
+ * Non-blocking access to the products, used by the {@code reactive} profile.
+ */
+@Repository
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String> {
+
+    Flux<Product> findBySellableQuantityGreaterThan(long quantity);
+}
@@ -0,0 +1,203 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.InventoryLookupTimeoutException;
+import com.sona.warehouse.model.Product;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculates how many units of products can be sold with the current inventory.
+ */
+@Component
+public class AvailabilityCalculator {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilityCalculator.class);
+
+    private final InventoryCache inventoryCache;
+    private final WarehouseProperties properties;
+    private final ExecutorService lookupExecutor;
+
+    /**
+     * Constructs an AvailabilityCalculator reading the stock through the specified InventoryCache.
+     * When {@code warehouse.inventory.parallel-lookup.enabled} is set, a thread pool is started for the parallel lookups.
+     *
+     * @param inventoryCache the cache in front of the inventory repository.
+     * @param properties     the warehouse configuration properties.
+     */
+    @Autowired
+    public AvailabilityCalculator(InventoryCache inventoryCache, WarehouseProperties properties) {
+        this.inventoryCache = inventoryCache;
+        this.properties = properties;
+
+        WarehouseProperties.ParallelLookup parallelLookup = properties.getInventory().getParallelLookup();
+        if (parallelLookup.isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("inventory-lookup-");
+            threadFactory.setDaemon(true);
+            this.lookupExecutor = Executors.newFixedThreadPool(Math.max(1, parallelLookup.getThreads()), threadFactory);
+            logger.info("Parallel article lookup enabled with {} threads, {} lookups per product and timeout {}",
+                    parallelLookup.getThreads(), properties.getInventory().getLookupConcurrency(), parallelLookup.getTimeout());
+        } else {
+            this.lookupExecutor = null;
+        }
+    }
+
+    /**
+     * Stops the thread pool of the parallel lookups, if any.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Loads the current stock of every distinct article contained in the given products.
+     * Article IDs are resolved with {@code $in} queries of at most
+     * {@code warehouse.inventory.lookup-batch-size} IDs each.
+     *
+     * @param products the products whose articles should be resolved.
+     * @return a map from article ID to its stock; articles missing from the inventory are absent.
+     */
+    public Map<String, Long> findStock(Collection<Product> products) {
+        Set<String> articleIds = new LinkedHashSet<>();
+        for (Product product : products) {
+            product.getContainArticles().forEach(article -> articleIds.add(article.getArticleId()));
+        }
+
+        List<String> ids = new ArrayList<>(articleIds);
+        Map<String, Long> stockByArticle = new HashMap<>(ids.size());
+        int batchSize = Math.max(1, properties.getInventory().getLookupBatchSize());
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            inventoryCache.findAllById(batch)
+                    .forEach((articleId, inventory) -> stockByArticle.put(articleId, inventory.getStock()));
+        }
+        logger.debug("Resolved stock for {} of {} articles", stockByArticle.size(), articleIds.size());
+        return stockByArticle;
+    }
+
+    /**
+     * Determines how many units of a product can be made with the current stock of its articles.
+     * In parallel lookup mode the articles are split into up to {@code warehouse.inventory.lookup-concurrency} groups
+     * resolved concurrently, and the result is returned as soon as one group has a missing or exhausted article.
+     *
+     * @param product the product whose sellable quantity is being calculated.
+     * @return the maximum number of units of the product that can be made.
+     * @throws InventoryLookupTimeoutException if the parallel lookups take longer than
+     *                                         {@code warehouse.inventory.parallel-lookup.timeout}.
+     */
+    public long findQuantity(Product product) {
+        int groups = Math.min(product.getContainArticles().size(), Math.max(1, properties.getInventory().getLookupConcurrency()));
+        if (lookupExecutor == null || groups < 2) {
+            return findQuantity(product, findStock(List.of(product)));
+        }
+        return findQuantityInParallel(product, groups);
+    }
+
+    private long findQuantityInParallel(Product product, int groups) {
+        List<Product.ArticleQuantity> articles = product.getContainArticles();
+        int groupSize = (articles.size() + groups - 1) / groups;
+        CompletionService<Long> lookups = new ExecutorCompletionService<>(lookupExecutor);
+        List<Future<Long>> pending = new ArrayList<>(groups);
+        try {
+            for (int from = 0; from < articles.size(); from += groupSize) {
+                List<Product.ArticleQuantity> group = articles.subList(from, Math.min(from + groupSize, articles.size()));
+                pending.add(lookups.submit(() -> findQuantity(group)));
+            }
+
+            long deadline = System.nanoTime() + properties.getInventory().getParallelLookup().getTimeout().toNanos();
+            long minAvailableProducts = Long.MAX_VALUE;
+            for (int completed = 0; completed < pending.size(); completed++) {
+                Future<Long> lookup = lookups.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (lookup == null) {
+                    throw new InventoryLookupTimeoutException(product.getId());
+                }
+                long availableProducts = lookup.get();
+                if (availableProducts == 0) {
+                    return 0L;
+                }
+                minAvailableProducts = Math.min(minAvailableProducts, availableProducts);
+            }
+            return minAvailableProducts;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resolving the articles of product " + product.getId(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            // Lookups not started yet are skipped; running ones are not interrupted, as that closes their MongoDB connection
+            pending.forEach(lookup -> lookup.cancel(false));
+        }
+    }
+
+    private long findQuantity(List<Product.ArticleQuantity> articles) {
+        Set<String> articleIds = new LinkedHashSet<>();
+        articles.forEach(article -> articleIds.add(article.getArticleId()));
+        Map<String, Long> stockByArticle = new HashMap<>(articleIds.size());
+        inventoryCache.findAllById(articleIds)
+                .forEach((articleId, inventory) -> stockByArticle.put(articleId, inventory.getStock()));
+        return findQuantity(articles, stockByArticle);
+    }
+
+    /**
+     * Determines how many units of a product can be made based on the available stock of the required articles.
+     * The method calculates the maximum number of products that can be produced with the current inventory,
+     * considering the quantities of each article required to produce one unit of the product.
+     *
+     * @param product        the product whose sellable quantity is being calculated.
+     * @param stockByArticle the current stock of the articles, keyed by article ID.
+     * @return the maximum number of units of the product that can be made based on the available stock of the articles.
+     *         Returns 0 as soon as a required article is missing from the inventory or has too little stock for one unit,
+     *         and for a product without articles, which cannot be made.
+     */
+    public long findQuantity(Product product, Map<String, Long> stockByArticle) {
+        return findQuantity(product.getContainArticles(), stockByArticle);
+    }
+
+    private static long findQuantity(List<Product.ArticleQuantity> neededArticles, Map<String, Long> stockByArticle) {
+        if (neededArticles.isEmpty()) {
+            return 0L;
+        }
+        long minAvailableProducts = Long.MAX_VALUE;
+        for (Product.ArticleQuantity neededArticle : neededArticles) {
+            long availableProducts;
+            Long stock = stockByArticle.get(neededArticle.getArticleId());
+            if (stock == null) {
+                return 0L;
+            }
+            availableProducts = stock / neededArticle.getQuantity();
+            if (availableProducts == 0) {
+                return 0L;
+            }
+            if (availableProducts < minAvailableProducts) {
+                minAvailableProducts = availableProducts;
+            }
+        }
+        return minAvailableProducts;
+    }
+}
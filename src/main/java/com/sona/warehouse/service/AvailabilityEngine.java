@@ -0,0 +1,478 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.event.ArticleStockChangedEvent;
+import com.sona.warehouse.event.ProductDefinitionChangedEvent;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Keeps the whole catalog in memory in a compact, primitive form to calculate the sellable quantity
+ * of every product in a single pass, without looking up or boxing anything per product.
+ * <p>
+ * Article IDs are interned to indexes into a stock array. The recipes of the products are flattened in
+ * compressed sparse row form: the articles of product {@code p} are {@code recipeArticles[recipeStart[p] ..
+ * recipeStart[p + 1]]} with the quantities at the same positions of {@code recipeQuantities}.
+ * Catalogs of at least {@code warehouse.product.engine.parallel-threshold} products are calculated on the fork-join pool.
+ * <p>
+ * The engine is built from the repositories at startup. Stock changes are patched in place;
+ * product changes mark the structure stale, and it is rebuilt on the next read.
+ * The articles patched while a rebuild reads the repositories are read again once the new catalog is published,
+ * so that no change is lost to a rebuild that read the stock before it. Every rebuild increases the {@link CatalogVersion}.
+ * Like the projection it is eventually consistent: a sale is still only accepted if the conditional stock updates succeed.
+ * <p>
+ * With {@code warehouse.product.engine.snapshot.path} set, the catalog is also written to that file every
+ * {@code warehouse.product.engine.snapshot.interval} and on shutdown. A new instance then starts from the snapshot,
+ * serving the stock as it was when it was written, and reconciles with MongoDB in the background.
+ * The snapshot is ignored if a request already built the engine from MongoDB.
+ * When {@code warehouse.product.engine.enabled} is {@code false} the engine is not maintained.
+ */
+@Component
+public class AvailabilityEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilityEngine.class);
+
+    private final ProductRepository productRepository;
+    private final InventoryRepository inventoryRepository;
+    private final CatalogVersion catalogVersion;
+    private final WarehouseProperties properties;
+    private final ScheduledExecutorService snapshotExecutor;
+    // Guards the publication of a catalog and the patches of its stock, but none of the reads of the repositories
+    private final Object publishLock = new Object();
+    private volatile Catalog catalog;
+    private volatile boolean stale = true;
+    // The articles patched since the running rebuild started, or null without a rebuild; guarded by publishLock
+    private Set<String> patchedDuringRebuild;
+
+    /**
+     * Constructs an AvailabilityEngine.
+     *
+     * @param productRepository   the repository the products are loaded from.
+     * @param inventoryRepository the repository the stock is loaded from.
+     * @param catalogVersion      the version increased whenever a rebuild is published.
+     * @param properties          the warehouse configuration properties.
+     */
+    @Autowired
+    public AvailabilityEngine(ProductRepository productRepository, InventoryRepository inventoryRepository,
+                              CatalogVersion catalogVersion, WarehouseProperties properties) {
+        this.productRepository = productRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.catalogVersion = catalogVersion;
+        this.properties = properties;
+        if (isEnabled() && snapshotPath() != null) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("availability-snapshot-");
+            threadFactory.setDaemon(true);
+            this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        } else {
+            this.snapshotExecutor = null;
+        }
+    }
+
+    /**
+     * Writes a last snapshot and stops the snapshot thread.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (snapshotExecutor != null) {
+            snapshotExecutor.shutdownNow();
+            writeSnapshot();
+        }
+    }
+
+    /**
+     * Indicates whether the engine is maintained and can be read.
+     *
+     * @return true if the engine is enabled.
+     */
+    public boolean isEnabled() {
+        return properties.getProduct().getEngine().isEnabled();
+    }
+
+    /**
+     * Builds the engine once the application has started, so that the first request does not pay for it.
+     * If a snapshot can be read the engine starts from it instead, and is rebuilt from the repositories in the background.
+     * A catalog already built by an earlier request is kept.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void applicationReady() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (snapshotExecutor == null) {
+            rebuild();
+            return;
+        }
+        if (restoreSnapshot()) {
+            snapshotExecutor.execute(this::rebuild);
+        } else {
+            ensureBuilt();
+        }
+        Duration interval = properties.getProduct().getEngine().getSnapshot().getInterval();
+        snapshotExecutor.scheduleWithFixedDelay(this::writeSnapshot, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts from the snapshot file, if there is a valid one and the engine has not been built yet.
+     * A catalog built from MongoDB is never replaced by the older stock of the snapshot.
+     *
+     * @return true if the snapshot was read.
+     */
+    boolean restoreSnapshot() {
+        if (catalog != null) {
+            logger.info("Ignoring the availability snapshot, the engine was already built");
+            return false;
+        }
+        Path path = snapshotPath();
+        if (!Files.isRegularFile(path)) {
+            logger.info("No availability snapshot at {}", path);
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            Catalog restored = AvailabilitySnapshot.read(path);
+            // A rebuild holds the monitor until it has published, so a catalog present now came from MongoDB
+            synchronized (this) {
+                synchronized (publishLock) {
+                    if (catalog != null) {
+                        logger.info("Ignoring the availability snapshot, the engine was already built");
+                        return false;
+                    }
+                    catalog = restored;
+                }
+                stale = false;
+            }
+            logger.info("Restored the availability engine with {} products from {} in {} ms",
+                    restored.products.length, path, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Ignoring the availability snapshot at {}", path, e);
+            return false;
+        }
+    }
+
+    /**
+     * Writes the current catalog to the snapshot file. Failures are logged, as the snapshot only speeds up the next start.
+     */
+    void writeSnapshot() {
+        Catalog current = catalog;
+        if (current == null) {
+            return;
+        }
+        Path path = snapshotPath();
+        long start = System.nanoTime();
+        try {
+            AvailabilitySnapshot.write(current, path);
+            logger.debug("Wrote the availability snapshot of {} products to {} in {} ms",
+                    current.products.length, path, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not write the availability snapshot to {}", path, e);
+        }
+    }
+
+    private Path snapshotPath() {
+        return properties.getProduct().getEngine().getSnapshot().getPath();
+    }
+
+    /**
+     * Reloads all products and the stock of all articles, then reads the articles patched in the meantime again
+     * and increases the {@link CatalogVersion}.
+     */
+    public synchronized void rebuild() {
+        long start = System.nanoTime();
+        stale = false;
+        synchronized (publishLock) {
+            patchedDuringRebuild = new HashSet<>();
+        }
+        Set<String> patched;
+        try {
+            Catalog built = build();
+            synchronized (publishLock) {
+                catalog = built;
+                patched = patchedDuringRebuild;
+            }
+        } finally {
+            synchronized (publishLock) {
+                patchedDuringRebuild = null;
+            }
+        }
+        // The stock of these articles may have been read before their change; the patch went to the previous catalog
+        articlesChanged(patched);
+        catalogVersion.increment();
+        logger.info("Built the availability engine with {} products and {} articles in {} ms",
+                catalog.products.length, catalog.articleIds.length, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private Catalog build() {
+        List<Product> products = productRepository.findAll();
+        Map<String, Integer> articleIndex = new HashMap<>();
+        int[] recipeStart = new int[products.size() + 1];
+        int recipeSize = 0;
+        for (Product product : products) {
+            recipeSize += product.getContainArticles().size();
+        }
+        int[] recipeArticles = new int[recipeSize];
+        long[] recipeQuantities = new long[recipeSize];
+
+        int position = 0;
+        for (int p = 0; p < products.size(); p++) {
+            recipeStart[p] = position;
+            for (Product.ArticleQuantity article : products.get(p).getContainArticles()) {
+                recipeArticles[position] = articleIndex.computeIfAbsent(article.getArticleId(), id -> articleIndex.size());
+                recipeQuantities[position] = article.getQuantity();
+                position++;
+            }
+        }
+        recipeStart[products.size()] = position;
+
+        // Articles no product contains are not interned; articles missing from the inventory keep a stock of 0
+        AtomicLongArray stock = new AtomicLongArray(articleIndex.size());
+        for (Inventory inventory : inventoryRepository.findAll()) {
+            Integer index = articleIndex.get(inventory.getArticleId());
+            if (index != null) {
+                stock.set(index, inventory.getStock());
+            }
+        }
+        findStripedStock(articleIndex.keySet()).forEach((articleId, striped) -> stock.addAndGet(articleIndex.get(articleId), striped));
+        String[] articleIds = new String[articleIndex.size()];
+        articleIndex.forEach((articleId, index) -> articleIds[index] = articleId);
+        return new Catalog(products.toArray(Product[]::new), articleIds, stock, recipeStart, recipeArticles, recipeQuantities);
+    }
+
+    /**
+     * Calculates the sellable quantity of every product and passes each product that can be sold to the consumer,
+     * in the order the repository returned them. The engine is rebuilt first if it is stale.
+     * Below the parallel threshold nothing is allocated; the parallel calculation writes into a buffer kept by the catalog.
+     *
+     * @param consumer receives every product with a sellable quantity above zero, and the quantity.
+     */
+    public void forEachSellable(ObjLongConsumer<Product> consumer) {
+        Catalog current = ensureBuilt();
+        if (current.products.length < properties.getProduct().getEngine().getParallelThreshold()) {
+            for (int p = 0; p < current.products.length; p++) {
+                long quantity = current.quantityOf(p);
+                if (quantity > 0) {
+                    consumer.accept(current.products[p], quantity);
+                }
+            }
+            return;
+        }
+        long[] quantities = current.borrowQuantities();
+        try {
+            Arrays.parallelSetAll(quantities, current::quantityOf);
+            for (int p = 0; p < quantities.length; p++) {
+                if (quantities[p] > 0) {
+                    consumer.accept(current.products[p], quantities[p]);
+                }
+            }
+        } finally {
+            current.returnQuantities(quantities);
+        }
+    }
+
+    /**
+     * Reloads the stock of the given articles after they were written.
+     * The stock is read again if a rebuild published a new catalog while it was read.
+     *
+     * @param articleIds the IDs of the articles whose stock changed.
+     */
+    public void articlesChanged(Collection<String> articleIds) {
+        if (!isEnabled() || articleIds.isEmpty()) {
+            return;
+        }
+        while (true) {
+            Catalog read = catalog;
+            Map<String, Long> stock = read == null ? Map.of() : findStock(articleIds);
+            synchronized (publishLock) {
+                if (patchedDuringRebuild != null) {
+                    patchedDuringRebuild.addAll(articleIds);
+                }
+                if (catalog == read) {
+                    if (read != null) {
+                        stock.forEach(read::setStock);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    private Map<String, Long> findStock(Collection<String> articleIds) {
+        Map<String, Long> stock = new HashMap<>(findStripedStock(articleIds));
+        Set<String> missing = new HashSet<>(articleIds);
+        for (Inventory inventory : inventoryRepository.findAllById(articleIds)) {
+            stock.merge(inventory.getArticleId(), inventory.getStock(), Long::sum);
+            missing.remove(inventory.getArticleId());
+        }
+        missing.forEach(articleId -> stock.put(articleId, 0L));
+        return stock;
+    }
+
+    /**
+     * Reads the stock the hot articles among the given ones keep in their stripes.
+     * Unlike the reads of the inventory cache, this does not wait for a sale moving the stock between the stripes,
+     * so the stock of an article may be off by the moved amount until the stock of the article changes again.
+     */
+    private Map<String, Long> findStripedStock(Collection<String> articleIds) {
+        Set<String> hotArticles = properties.getInventory().getHotArticles().getStripes().keySet();
+        if (hotArticles.isEmpty()) {
+            return Map.of();
+        }
+        List<String> hot = articleIds.stream().filter(hotArticles::contains).toList();
+        return hot.isEmpty() ? Map.of() : inventoryRepository.findStripedStock(hot);
+    }
+
+    /**
+     * Marks the engine stale after products were created or changed, so that it is rebuilt on the next read.
+     */
+    public void productsChanged() {
+        stale = true;
+    }
+
+    /**
+     * Patches the stock of an article written by another instance or directly in MongoDB.
+     * The event only carries the stock of the inventory document, so a hot article is read again with its stripes.
+     * Runs before the {@link CatalogVersion} is increased.
+     *
+     * @param event the change of the article.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void articleStockChanged(ArticleStockChangedEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        if (properties.getInventory().getHotArticles().getStripes().containsKey(event.getArticleId())) {
+            articlesChanged(List.of(event.getArticleId()));
+            return;
+        }
+        synchronized (publishLock) {
+            if (patchedDuringRebuild != null) {
+                patchedDuringRebuild.add(event.getArticleId());
+            }
+            Catalog current = catalog;
+            if (current != null) {
+                current.setStock(event.getArticleId(), event.getStock() == null ? 0 : event.getStock());
+            }
+        }
+    }
+
+    /**
+     * Marks the engine stale after a product was changed by another instance or directly in MongoDB.
+     * Runs before the {@link CatalogVersion} is increased.
+     *
+     * @param event the change of the product.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void productDefinitionChanged(ProductDefinitionChangedEvent event) {
+        productsChanged();
+    }
+
+    private Catalog ensureBuilt() {
+        if (stale || catalog == null) {
+            synchronized (this) {
+                if (stale || catalog == null) {
+                    rebuild();
+                }
+            }
+        }
+        return catalog;
+    }
+
+    /**
+     * An immutable catalog structure with the mutable stock of its articles.
+     * Article {@code a} has the ID {@code articleIds[a]} and the stock {@code stock[a]}.
+     */
+    static final class Catalog {
+
+        final Product[] products;
+        final String[] articleIds;
+        final AtomicLongArray stock;
+        final int[] recipeStart;
+        final int[] recipeArticles;
+        final long[] recipeQuantities;
+        private final Map<String, Integer> articleIndex;
+        // The buffer of the parallel calculation not in use, so that concurrent calculations allocate at most one more
+        private final AtomicReference<long[]> spareQuantities = new AtomicReference<>();
+
+        Catalog(Product[] products, String[] articleIds, AtomicLongArray stock,
+                int[] recipeStart, int[] recipeArticles, long[] recipeQuantities) {
+            this.products = products;
+            this.articleIds = articleIds;
+            this.articleIndex = new HashMap<>(articleIds.length * 4 / 3 + 1);
+            for (int a = 0; a < articleIds.length; a++) {
+                articleIndex.put(articleIds[a], a);
+            }
+            this.stock = stock;
+            this.recipeStart = recipeStart;
+            this.recipeArticles = recipeArticles;
+            this.recipeQuantities = recipeQuantities;
+        }
+
+        private void setStock(String articleId, long value) {
+            Integer index = articleIndex.get(articleId);
+            if (index != null) {
+                stock.set(index, value);
+            }
+        }
+
+        private long[] borrowQuantities() {
+            long[] quantities = spareQuantities.getAndSet(null);
+            return quantities != null ? quantities : new long[products.length];
+        }
+
+        private void returnQuantities(long[] quantities) {
+            spareQuantities.set(quantities);
+        }
+
+        /**
+         * Returns how many units of a product the stock of its articles makes. A product without articles makes none,
+         * as with {@link AvailabilityCalculator#findQuantity(Product, Map)}.
+         */
+        private long quantityOf(int product) {
+            int end = recipeStart[product + 1];
+            if (recipeStart[product] == end) {
+                return 0L;
+            }
+            long minAvailableProducts = Long.MAX_VALUE;
+            for (int position = recipeStart[product]; position < end; position++) {
+                long availableProducts = stock.get(recipeArticles[position]) / recipeQuantities[position];
+                if (availableProducts == 0) {
+                    return 0L;
+                }
+                minAvailableProducts = Math.min(minAvailableProducts, availableProducts);
+            }
+            return minAvailableProducts;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.model.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Reads and writes the catalog of the {@link AvailabilityEngine} as a compact binary file,
+ * so that a new instance can serve the available products before it has read MongoDB.
+ * <p>
+ * The file holds the counts, the interned article IDs, the stock, the recipe arrays and the ID, name and price
+ * of every product, all big-endian. It is written to a temporary file that is then moved over the previous snapshot,
+ * so a reader never sees a partial file, and read by memory-mapping it and copying the arrays out in bulk.
+ */
+final class AvailabilitySnapshot {
+
+    private static final int MAGIC = 0x57485331; // "WHS1"
+
+    private AvailabilitySnapshot() {
+    }
+
+    /**
+     * Writes a catalog, replacing the snapshot at the path.
+     *
+     * @param catalog the catalog to be written.
+     * @param path    the file of the snapshot.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(AvailabilityEngine.Catalog catalog, Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(catalog.products.length);
+                out.writeInt(catalog.articleIds.length);
+                out.writeInt(catalog.recipeArticles.length);
+                for (String articleId : catalog.articleIds) {
+                    writeString(out, articleId);
+                }
+                for (int a = 0; a < catalog.articleIds.length; a++) {
+                    out.writeLong(catalog.stock.get(a));
+                }
+                for (int start : catalog.recipeStart) {
+                    out.writeInt(start);
+                }
+                for (int article : catalog.recipeArticles) {
+                    out.writeInt(article);
+                }
+                for (long quantity : catalog.recipeQuantities) {
+                    out.writeLong(quantity);
+                }
+                for (Product product : catalog.products) {
+                    writeString(out, product.getId());
+                    writeString(out, product.getName());
+                    out.writeDouble(product.getPrice() == null ? Double.NaN : product.getPrice());
+                }
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads the catalog of a snapshot.
+     *
+     * @param path the file of the snapshot.
+     * @return the catalog as it was when the snapshot was written.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    static AvailabilityEngine.Catalog read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an availability snapshot: " + path);
+            }
+            int productCount = buffer.getInt();
+            int articleCount = buffer.getInt();
+            int recipeSize = buffer.getInt();
+
+            String[] articleIds = new String[articleCount];
+            for (int a = 0; a < articleCount; a++) {
+                articleIds[a] = readString(buffer);
+            }
+            long[] stock = new long[articleCount];
+            buffer.asLongBuffer().get(stock);
+            buffer.position(buffer.position() + Long.BYTES * articleCount);
+            int[] recipeStart = new int[productCount + 1];
+            buffer.asIntBuffer().get(recipeStart);
+            buffer.position(buffer.position() + Integer.BYTES * recipeStart.length);
+            int[] recipeArticles = new int[recipeSize];
+            buffer.asIntBuffer().get(recipeArticles);
+            buffer.position(buffer.position() + Integer.BYTES * recipeSize);
+            long[] recipeQuantities = new long[recipeSize];
+            buffer.asLongBuffer().get(recipeQuantities);
+            buffer.position(buffer.position() + Long.BYTES * recipeSize);
+
+            Product[] products = new Product[productCount];
+            for (int p = 0; p < productCount; p++) {
+                List<Product.ArticleQuantity> articles = new ArrayList<>(recipeStart[p + 1] - recipeStart[p]);
+                for (int position = recipeStart[p]; position < recipeStart[p + 1]; position++) {
+                    articles.add(new Product.ArticleQuantity(articleIds[recipeArticles[position]], recipeQuantities[position]));
+                }
+                String id = readString(buffer);
+                String name = readString(buffer);
+                double price = buffer.getDouble();
+                products[p] = Product.builder()
+                        .id(id)
+                        .name(name)
+                        .price(Double.isNaN(price) ? null : price)
+                        .containArticles(articles)
+                        .build();
+            }
+            return new AvailabilityEngine.Catalog(products, articleIds, new AtomicLongArray(stock),
+                    recipeStart, recipeArticles, recipeQuantities);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Truncated or corrupt availability snapshot: " + path, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,108 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.event.ArticleStockChangedEvent;
+import com.sona.warehouse.event.ProductDefinitionChangedEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The version of the available products: it increases after every change of a product or of the stock of an article,
+ * once the change is visible to {@link ProductService#findAll()}. A client that has seen the current version already
+ * has the current products, so {@code GET /api/products} can answer it without reading MongoDB.
+ * <p>
+ * The version counts the writes of this instance and the rebuilds of the projection and availability engine,
+ * and with {@code warehouse.change-stream.enabled} the writes of the other instances and direct changes in MongoDB too.
+ * Without change streams the {@link #getETag() ETag} also changes every {@code warehouse.product.version-max-age},
+ * so that a direct change in MongoDB is served at most that late.
+ * The version starts at 0 with every start of the application, so the ETag also contains the start time.
+ */
+@Component
+public class CatalogVersion {
+
+    private final AtomicLong version = new AtomicLong();
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final boolean tracksAllWrites;
+    private final long maxAgeMillis;
+
+    /**
+     * Constructs a CatalogVersion at version 0.
+     *
+     * @param properties the warehouse configuration properties.
+     */
+    @Autowired
+    public CatalogVersion(WarehouseProperties properties) {
+        this.tracksAllWrites = !properties.getMultiInstance().isEnabled() || properties.getChangeStream().isEnabled();
+        this.maxAgeMillis = properties.getChangeStream().isEnabled() ? 0 : properties.getProduct().getVersionMaxAge().toMillis();
+    }
+
+    /**
+     * Indicates whether the version sees every write of the application, within the max age of its ETag.
+     * Not when other instances write the same database without change streams; then a client could keep seeing
+     * an old version of the products.
+     *
+     * @return true if the ETag changes with every change of the available products made by the application.
+     */
+    public boolean tracksAllWrites() {
+        return tracksAllWrites;
+    }
+
+    /**
+     * Returns the current version.
+     *
+     * @return the number of changes since the application started.
+     */
+    public long get() {
+        return version.get();
+    }
+
+    /**
+     * Returns the current version as a strong entity tag. Read it before the products it stands for,
+     * so that a change in between yields an outdated tag rather than outdated products.
+     *
+     * @return the quoted start time and version, and without change streams the current period of the max age.
+     */
+    public String getETag() {
+        if (maxAgeMillis > 0) {
+            return "\"" + epoch + "-" + version.get() + "-" + Long.toString(System.currentTimeMillis() / maxAgeMillis, Character.MAX_RADIX) + "\"";
+        }
+        return "\"" + epoch + "-" + version.get() + "\"";
+    }
+
+    /**
+     * Increases the version after products or the stock of articles changed.
+     * Call it once the change is visible to the readers of the products.
+     */
+    public void increment() {
+        version.incrementAndGet();
+    }
+
+    /**
+     * Increases the version after the stock of an article was written by another instance or directly in MongoDB.
+     * Runs after the projection and the availability engine picked up the change.
+     *
+     * @param event the change of the article.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void articleStockChanged(ArticleStockChangedEvent event) {
+        increment();
+    }
+
+    /**
+     * Increases the version after a product was written by another instance or directly in MongoDB.
+     * Runs after the projection and the availability engine picked up the change.
+     *
+     * @param event the change of the product.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void productDefinitionChanged(ProductDefinitionChangedEvent event) {
+        increment();
+    }
+}
@@ -0,0 +1,126 @@
+package com.sona.warehouse.service;
+
+import com.mongodb.ErrorCategory;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.ConcurrentUpdateException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries writes that conflict with concurrent writes of the same documents, with a jittered exponential backoff.
+ * Conflicts are duplicate keys of concurrent upserts of the same new document, as when two uploads create the same
+ * product or article, and version mismatches of {@code @Version} documents; any other exception is passed through unchanged.
+ * Sales need no retry: their conditional stock updates never conflict, they either match or find too little stock.
+ * <p>
+ * Every conflict is counted in {@code warehouse.conflicts}, tagged with the operation and whether it was
+ * {@code retried} or {@code exhausted} the attempts of {@code warehouse.retry.max-attempts}, so the conflict rate
+ * of an operation is this counter divided by the count of its timer.
+ */
+@Component
+public class ConflictRetry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConflictRetry.class);
+    private static final String CONFLICTS = "warehouse.conflicts";
+
+    private final WarehouseProperties properties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Constructs a ConflictRetry.
+     *
+     * @param properties    the warehouse configuration properties.
+     * @param meterRegistry the registry the conflict counters are published to.
+     */
+    @Autowired
+    public ConflictRetry(WarehouseProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs an action, running it again after a backoff as long as it fails with a conflict and attempts are left.
+     * The action must be safe to repeat after a conflict.
+     *
+     * @param operation the name of the operation, used in the metrics and the error message.
+     * @param action    the write to be attempted.
+     * @param <T>       the type of the result.
+     * @return the result of the first attempt that did not conflict.
+     * @throws ConcurrentUpdateException if the last attempt conflicted as well.
+     */
+    public <T> T execute(String operation, Supplier<T> action) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.get();
+            } catch (RuntimeException e) {
+                if (!isConflict(e)) {
+                    throw e;
+                }
+                backOff(operation, attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Records a conflict and waits before the next attempt, for callers that retry only the conflicting part of a write.
+     *
+     * @param operation the name of the operation, used in the metrics and the error message.
+     * @param attempt   the number of the attempt that conflicted, starting at 1.
+     * @param conflict  the conflict of that attempt.
+     * @throws ConcurrentUpdateException if no attempts are left, or the thread was interrupted while waiting.
+     */
+    public void backOff(String operation, int attempt, RuntimeException conflict) {
+        WarehouseProperties.Retry retry = properties.getRetry();
+        if (attempt >= retry.getMaxAttempts()) {
+            counter(operation, "exhausted").increment();
+            logger.warn("Giving up {} after {} conflicting attempts", operation, attempt);
+            throw new ConcurrentUpdateException(operation, conflict);
+        }
+        counter(operation, "retried").increment();
+
+        // Full jitter: a random wait up to a bound that doubles with every attempt
+        long bound = retry.getInitialBackoff().toNanos() << Math.min(attempt - 1, 30);
+        bound = Math.min(Math.max(bound, 0), retry.getMaxBackoff().toNanos());
+        long backoff = bound > 0 ? ThreadLocalRandom.current().nextLong(bound + 1) : 0;
+        logger.debug("Retrying {} in {} after conflict: {}", operation, Duration.ofNanos(backoff), conflict.getMessage());
+        try {
+            TimeUnit.NANOSECONDS.sleep(backoff);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConcurrentUpdateException(operation, conflict);
+        }
+    }
+
+    /**
+     * Tells whether an exception was caused by a concurrent write of the same documents.
+     *
+     * @param e the exception of a write.
+     * @return true for version mismatches and for duplicate keys, including bulk writes failing with duplicate keys only.
+     */
+    public static boolean isConflict(Throwable e) {
+        if (e instanceof OptimisticLockingFailureException || e instanceof DuplicateKeyException) {
+            return true;
+        }
+        return e instanceof BulkOperationException bulk && !bulk.getErrors().isEmpty()
+                && bulk.getErrors().stream().allMatch(error -> ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY);
+    }
+
+    private Counter counter(String operation, String outcome) {
+        return Counter.builder(CONFLICTS)
+                .description("Writes that conflicted with concurrent writes of the same documents")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
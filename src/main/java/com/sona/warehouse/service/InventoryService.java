@@ -1,17 +1,28 @@
 package com.sona.warehouse.service;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
 import com.sona.warehouse.dto.InventoryArticleDTO;
 import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.InventoryUploadResultDTO;
+import com.sona.warehouse.exceptions.ConcurrentUpdateException;
 import com.sona.warehouse.exceptions.CustomNumberFormatException;
+import com.sona.warehouse.exceptions.PartialUploadException;
 import com.sona.warehouse.model.Inventory;
-import com.sona.warehouse.repository.InventoryRepository;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Service class responsible for managing inventory operations.
@@ -22,16 +33,41 @@ import java.util.Optional;
 public class InventoryService {
 
     private static final Logger logger = LoggerFactory.getLogger(InventoryService.class);
-    private final InventoryRepository inventoryRepository;
+    private final InventoryCache inventoryCache;
+    private final SellableQuantityProjection projection;
+    private final AvailabilityEngine availabilityEngine;
+    private final StockJournal stockJournal;
+    private final CatalogVersion catalogVersion;
+    private final ConflictRetry conflictRetry;
+    private final WarehouseProperties properties;
+    private final MeterRegistry meterRegistry;
 
     /**
-     * Constructs an InventoryService with the specified InventoryRepository.
+     * Constructs an InventoryService with the specified InventoryCache, availability components, retry policy
+     * and configuration properties.
      *
-     * @param inventoryRepository the repository for accessing inventory data.
+     * @param inventoryCache     the cache in front of the inventory repository.
+     * @param projection         the materialized sellable quantity of products.
+     * @param availabilityEngine the in-memory calculator of the sellable quantity of the whole catalog.
+     * @param stockJournal       the local write-ahead journal of stock changes.
+     * @param catalogVersion     the version of the available products, increased by every write.
+     * @param conflictRetry      the retry policy of writes conflicting with concurrent writes.
+     * @param properties         the warehouse configuration properties.
+     * @param meterRegistry      the registry of the upload failure counter.
      */
     @Autowired
-    public InventoryService(InventoryRepository inventoryRepository) {
-        this.inventoryRepository = inventoryRepository;
+    public InventoryService(InventoryCache inventoryCache, SellableQuantityProjection projection,
+                            AvailabilityEngine availabilityEngine, StockJournal stockJournal, CatalogVersion catalogVersion,
+                            ConflictRetry conflictRetry, WarehouseProperties properties,
+                            MeterRegistry meterRegistry) {
+        this.inventoryCache = inventoryCache;
+        this.projection = projection;
+        this.availabilityEngine = availabilityEngine;
+        this.stockJournal = stockJournal;
+        this.catalogVersion = catalogVersion;
+        this.conflictRetry = conflictRetry;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -40,31 +76,137 @@ public class InventoryService {
      * based on the provided inventory data.
      *
      * @param inventory the DTO containing a list of inventory articles to be saved.
-     *@throws CustomNumberFormatException if the stock field is not a valid number.
+     * @return the number of created and updated articles per batch and the total time spent.
+     * @throws CustomNumberFormatException if the stock field is not a valid number.
      */
-    @Transactional
-    public void saveAll(InventoryDTO inventory) throws CustomNumberFormatException {
-        logger.info("Saving inventory with {} items", inventory.getInventory().size());
+    @Timed(value = "warehouse.inventory.upload", histogram = true)
+    public InventoryUploadResultDTO saveAll(InventoryDTO inventory) throws CustomNumberFormatException {
+        return saveAll(inventory.getInventory().iterator());
+    }
 
-        for (InventoryArticleDTO articleDTO : inventory.getInventory()) {
-            Optional<Inventory> existingInventory = inventoryRepository.findById(articleDTO.getArticleId());
+    /**
+     * Saves all inventory articles returned by the iterator.
+     * The articles are consumed and written with bulk upserts of {@code warehouse.inventory.upload.batch-size} rows each,
+     * adding the uploaded stock to existing articles and creating the missing ones.
+     * Only one batch is held in memory at a time, so the iterator may stream an upload of any size.
+     * Batches written before a failing article are kept, and the failure is then reported as a {@link PartialUploadException},
+     * as uploading the same articles again would add their stock twice.
+     * Failures are counted by {@code warehouse.inventory.upload.failures}, tagged with the exception that stopped the upload.
+     * With {@code warehouse.journal.enabled} the batches are appended to the {@link StockJournal} instead,
+     * and the products they change are not counted, as the projection is only updated once the journal is applied.
+     *
+     * @param articles the inventory articles to be saved.
+     * @return the number of created and updated articles per batch and the total time spent.
+     * @throws CustomNumberFormatException if the stock field is not a valid number.
+     * @throws PartialUploadException      if the upload failed after some batches were saved.
+     */
+    @Timed(value = "warehouse.inventory.upload", histogram = true)
+    public InventoryUploadResultDTO saveAll(Iterator<InventoryArticleDTO> articles) throws CustomNumberFormatException {
+        logger.info("Saving inventory");
 
-            if (existingInventory.isPresent()) {
-                try {
-                    Long stock = Long.parseLong(articleDTO.getStock());
-                    Inventory existing = existingInventory.get();
-                    existing.setStock(existing.getStock() +  stock );
-                    inventoryRepository.save(existing);
-                    logger.debug("Updated stock for articleId {}: new stock {}", articleDTO.getArticleId(), existing.getStock());
-                } catch (NumberFormatException e) {
-                    throw new CustomNumberFormatException(articleDTO.getStock());
+        long start = System.nanoTime();
+        int batchSize = Math.max(1, properties.getInventory().getUpload().getBatchSize());
+        List<InventoryUploadResultDTO.Batch> batches = new ArrayList<>();
+        List<InventoryArticleDTO> batch = new ArrayList<>(batchSize);
+        try {
+            while (articles.hasNext()) {
+                batch.add(articles.next());
+                if (batch.size() == batchSize) {
+                    batches.add(saveBatch(batch));
+                    batch.clear();
                 }
+            }
+            if (!batch.isEmpty()) {
+                batches.add(saveBatch(batch));
+            }
+        } catch (RuntimeException e) {
+            UploadFailures.count(meterRegistry, "warehouse.inventory.upload.failures", InventoryService.class, e);
+            if (batches.isEmpty()) {
+                throw e;
+            }
+            throw new PartialUploadException(batches.stream().mapToLong(InventoryUploadResultDTO.Batch::getArticles).sum(), "articles", e);
+        }
 
-            } else {
-                inventoryRepository.save(toModel(articleDTO));
-                logger.info("Added new inventory item: {}", articleDTO.getArticleId());
+        InventoryUploadResultDTO result = InventoryUploadResultDTO.builder()
+                .articles(batches.stream().mapToLong(InventoryUploadResultDTO.Batch::getArticles).sum())
+                .inserted(batches.stream().mapToLong(InventoryUploadResultDTO.Batch::getInserted).sum())
+                .updated(batches.stream().mapToLong(InventoryUploadResultDTO.Batch::getUpdated).sum())
+                .changedProducts(batches.stream().mapToLong(InventoryUploadResultDTO.Batch::getChangedProducts).sum())
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .batches(batches)
+                .build();
+        logger.info("Saved inventory with {} items in {} batches: {} added, {} updated in {} ms",
+                result.getArticles(), batches.size(), result.getInserted(), result.getUpdated(), result.getElapsedMillis());
+        return result;
+    }
+
+    /**
+     * Writes a batch of inventory articles with a single bulk upsert.
+     * Adding stock cannot be repeated safely, so when new articles collide with a concurrent upload creating them,
+     * only the articles that were not written are retried.
+     *
+     * @param articleDTOs the articles to be written.
+     * @return the outcome of the bulk write.
+     * @throws CustomNumberFormatException if the stock field of an article is not a valid number.
+     * @throws ConcurrentUpdateException   if articles kept conflicting with concurrent writes.
+     */
+    private InventoryUploadResultDTO.Batch saveBatch(List<InventoryArticleDTO> articleDTOs) throws CustomNumberFormatException {
+        List<Inventory> articles = articleDTOs.stream().map(this::toModel).toList();
+
+        long start = System.nanoTime();
+        if (stockJournal.isEnabled()) {
+            int created = stockJournal.addStock(articles);
+            return InventoryUploadResultDTO.Batch.builder()
+                    .articles(articles.size())
+                    .inserted(created)
+                    .updated(articles.size() - created)
+                    .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                    .build();
+        }
+        boolean ordered = properties.getInventory().getUpload().isOrdered();
+        long inserted = 0;
+        long updated = 0;
+        List<Inventory> pending = articles;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            try {
+                BulkWriteResult written = inventoryCache.addStock(pending, ordered);
+                inserted += written.getUpserts().size();
+                updated += written.getMatchedCount();
+                pending = List.of();
+            } catch (BulkOperationException e) {
+                if (!ConflictRetry.isConflict(e)) {
+                    throw e;
+                }
+                inserted += e.getResult().getUpserts().size();
+                updated += e.getResult().getMatchedCount();
+                pending = notWritten(pending, e, ordered);
+                conflictRetry.backOff("inventory.upload", attempt, e);
             }
         }
+        List<String> articleIds = articles.stream().map(Inventory::getArticleId).toList();
+        Map<String, Long> changedProducts = projection.articlesChanged(articleIds);
+        availabilityEngine.articlesChanged(articleIds);
+        catalogVersion.increment();
+        InventoryUploadResultDTO.Batch batch = InventoryUploadResultDTO.Batch.builder()
+                .articles(articles.size())
+                .inserted(inserted)
+                .updated(updated)
+                .changedProducts(changedProducts.size())
+                .elapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+                .build();
+        logger.debug("Saved inventory batch of {} items: {} added, {} updated", batch.getArticles(), batch.getInserted(), batch.getUpdated());
+        return batch;
+    }
+
+    /**
+     * Finds the articles of a failed bulk write that were not written: an ordered write stops at the first error,
+     * an unordered one only skips the failing articles.
+     */
+    private static List<Inventory> notWritten(List<Inventory> articles, BulkOperationException failure, boolean ordered) {
+        if (ordered) {
+            return articles.subList(failure.getErrors().get(0).getIndex(), articles.size());
+        }
+        return failure.getErrors().stream().map(error -> articles.get(error.getIndex())).toList();
     }
 
     /**
@@ -0,0 +1,230 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.model.StockJournalEntry;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A memory-mapped file of the {@link StockJournal}, holding the entries from {@link #getFirstSequence()} on.
+ * <p>
+ * Each record is its payload length, the CRC-32 of the payload and the payload: the sequence, the number of deltas and
+ * per delta the article ID, the name or -1 and the amount, all big-endian. The unused rest of the file is zeroed,
+ * so a record length of 0 marks the end. Reading stops at the first record that is incomplete or fails its checksum,
+ * which is where a crash interrupted the last write.
+ */
+final class JournalSegment {
+
+    private static final String PREFIX = "stock-";
+    private static final String SUFFIX = ".journal";
+    private static final int HEADER = 2 * Integer.BYTES;
+
+    private final Path path;
+    private final long firstSequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private long lastSequence;
+
+    private JournalSegment(Path path, long firstSequence, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.firstSequence = firstSequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.lastSequence = firstSequence - 1;
+    }
+
+    /**
+     * Creates a new, empty segment file.
+     *
+     * @param directory     the directory of the journal.
+     * @param firstSequence the sequence of the first entry that will be appended.
+     * @param size          the size of the file in bytes.
+     * @return the segment, positioned at its start.
+     * @throws IOException if the file cannot be created.
+     */
+    static JournalSegment create(Path directory, long firstSequence, int size) throws IOException {
+        Path path = directory.resolve(String.format("%s%019d%s", PREFIX, firstSequence, SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new JournalSegment(path, firstSequence, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    /**
+     * Lists the segment files of a journal in the order of their entries.
+     *
+     * @param directory the directory of the journal.
+     * @return the paths of the segment files.
+     * @throws IOException if the directory cannot be read.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            // The sequence is zero-padded, so the names sort in the order of the entries
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX) && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Reads the complete records of a segment file.
+     *
+     * @param path the segment file.
+     * @return the entries up to the first incomplete or corrupt record.
+     * @throws IOException if the file cannot be read.
+     */
+    static List<StockJournalEntry> read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<StockJournalEntry> entries = new ArrayList<>();
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER) {
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                try {
+                    entries.add(decode(payload));
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Appends a record if there is room for it.
+     *
+     * @param entry the entry to be appended.
+     * @return false if the segment is too full for the entry, which then has to go to a new segment.
+     */
+    boolean append(StockJournalEntry entry) {
+        byte[] payload = encode(entry);
+        // Keep room for a zero length after the record, marking the end
+        if (buffer.remaining() < HEADER + payload.length + Integer.BYTES) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int start = buffer.position();
+        buffer.position(start + HEADER);
+        buffer.put(payload);
+        buffer.putInt(start + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(start, payload.length);
+        lastSequence = entry.getSequence();
+        return true;
+    }
+
+    /**
+     * Writes the appended records to the storage device.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    /**
+     * Closes the file and deletes it.
+     *
+     * @throws IOException if the file cannot be deleted.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Closes the file. The mapping stays valid until the segment is garbage collected.
+     *
+     * @throws IOException if the file cannot be closed.
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getFirstSequence() {
+        return firstSequence;
+    }
+
+    long getLastSequence() {
+        return lastSequence;
+    }
+
+    static byte[] encode(StockJournalEntry entry) {
+        List<byte[]> strings = new ArrayList<>(2 * entry.getDeltas().size());
+        int size = Long.BYTES + Integer.BYTES;
+        for (StockJournalEntry.Delta delta : entry.getDeltas()) {
+            byte[] articleId = delta.getArticleId().getBytes(StandardCharsets.UTF_8);
+            byte[] name = delta.getName() == null ? null : delta.getName().getBytes(StandardCharsets.UTF_8);
+            strings.add(articleId);
+            strings.add(name);
+            size += Integer.BYTES + articleId.length + Integer.BYTES + (name == null ? 0 : name.length) + Long.BYTES;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(size);
+        payload.putLong(entry.getSequence());
+        payload.putInt(entry.getDeltas().size());
+        for (int d = 0; d < entry.getDeltas().size(); d++) {
+            putString(payload, strings.get(2 * d));
+            putString(payload, strings.get(2 * d + 1));
+            payload.putLong(entry.getDeltas().get(d).getAmount());
+        }
+        return payload.array();
+    }
+
+    static StockJournalEntry decode(ByteBuffer payload) {
+        long sequence = payload.getLong();
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining()) {
+            throw new IllegalArgumentException("Invalid number of deltas: " + count);
+        }
+        List<StockJournalEntry.Delta> deltas = new ArrayList<>(count);
+        for (int d = 0; d < count; d++) {
+            String articleId = getString(payload);
+            String name = getString(payload);
+            deltas.add(new StockJournalEntry.Delta(articleId, name, payload.getLong()));
+        }
+        return new StockJournalEntry(sequence, deltas);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,25 +1,43 @@
 package com.sona.warehouse.service;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.dto.OrderLineDTO;
 import com.sona.warehouse.dto.ProductArticleDTO;
 import com.sona.warehouse.dto.ProductDTO;
 import com.sona.warehouse.dto.SellableProductDTO;
+import com.sona.warehouse.dto.SellableProductPageDTO;
 import com.sona.warehouse.exceptions.ArticleNotFoundException;
 import com.sona.warehouse.exceptions.CustomNumberFormatException;
+import com.sona.warehouse.exceptions.InvalidOrderException;
+import com.sona.warehouse.exceptions.PartialUploadException;
 import com.sona.warehouse.exceptions.ProductNotFoundException;
 import com.sona.warehouse.exceptions.ProductSoldOutException;
 import com.sona.warehouse.model.Inventory;
 import com.sona.warehouse.model.Product;
-import com.sona.warehouse.repository.InventoryRepository;
 import com.sona.warehouse.repository.ProductRepository;
+import io.micrometer.core.annotation.Counted;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -32,19 +50,50 @@ public class ProductService {
     private static final Logger logger = LoggerFactory.getLogger(ProductService.class);
 
     private final ProductRepository productRepository;
-    private final InventoryRepository inventoryRepository;
+    private final InventoryCache inventoryCache;
+    private final AvailabilityCalculator availabilityCalculator;
+    private final SellableQuantityProjection projection;
+    private final AvailabilityEngine availabilityEngine;
+    private final StockDecrementBatcher stockDecrementBatcher;
+    private final StockJournal stockJournal;
+    private final CatalogVersion catalogVersion;
+    private final ConflictRetry conflictRetry;
+    private final WarehouseProperties properties;
+    private final MeterRegistry meterRegistry;
 
     /**
-     * Constructs a ProductService with the specified ProductRepository
-     * and InventoryRepository.
+     * Constructs a ProductService with the specified ProductRepository,
+     * InventoryCache, availability components, retry policy and configuration properties.
      *
-     * @param productRepository   the repository for accessing product data.
-     * @param inventoryRepository the repository for accessing inventory data.
+     * @param productRepository      the repository for accessing product data.
+     * @param inventoryCache         the cache in front of the inventory repository.
+     * @param availabilityCalculator the calculator of the sellable quantity of products.
+     * @param projection             the materialized sellable quantity of products.
+     * @param availabilityEngine     the in-memory calculator of the sellable quantity of the whole catalog.
+     * @param stockDecrementBatcher  the group commit of the stock decrements of concurrent sales.
+     * @param stockJournal           the local write-ahead journal of stock changes.
+     * @param catalogVersion         the version of the available products, increased by every write.
+     * @param conflictRetry          the retry policy of writes conflicting with concurrent writes.
+     * @param properties             the warehouse configuration properties.
+     * @param meterRegistry          the registry of the upload failure counter.
      */
     @Autowired
-    public ProductService(ProductRepository productRepository, InventoryRepository inventoryRepository) {
+    public ProductService(ProductRepository productRepository, InventoryCache inventoryCache,
+                          AvailabilityCalculator availabilityCalculator, SellableQuantityProjection projection,
+                          AvailabilityEngine availabilityEngine, StockDecrementBatcher stockDecrementBatcher,
+                          StockJournal stockJournal, CatalogVersion catalogVersion, ConflictRetry conflictRetry,
+                          WarehouseProperties properties, MeterRegistry meterRegistry) {
         this.productRepository = productRepository;
-        this.inventoryRepository = inventoryRepository;
+        this.inventoryCache = inventoryCache;
+        this.availabilityCalculator = availabilityCalculator;
+        this.projection = projection;
+        this.availabilityEngine = availabilityEngine;
+        this.stockDecrementBatcher = stockDecrementBatcher;
+        this.stockJournal = stockJournal;
+        this.catalogVersion = catalogVersion;
+        this.conflictRetry = conflictRetry;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -55,25 +104,68 @@ public class ProductService {
      * @param productDTOs the list of ProductDTOs to be saved.
      * @throws CustomNumberFormatException if the amountOf field is not a valid number.
      */
-    @Transactional
+    @Timed(value = "warehouse.product.upload", histogram = true)
     public void saveAll(List<ProductDTO> productDTOs) throws CustomNumberFormatException {
-        logger.info("Saving {} products", productDTOs.size());
-        for (ProductDTO productDTO : productDTOs) {
-            Optional<Product> existingProduct = productRepository.findByName(productDTO.getName());
-
-            if (existingProduct.isPresent()) {
-                Product existing = existingProduct.get();
-                existing.setPrice(productDTO.getPrice());
-                existing.setContainArticles(
-                        productDTO.getContainArticles().stream()
-                                .map(this::toModel)
-                                .collect(Collectors.toList())
-                );
-                productRepository.save(existing);
-            } else {
-                productRepository.save(toModel(productDTO));
+        saveAll(productDTOs.iterator());
+    }
+
+    /**
+     * Saves all products returned by the iterator.
+     * The products are consumed in batches of {@code warehouse.product.upload.batch-size},
+     * so only one batch is held in memory at a time and the iterator may stream an upload of any size.
+     * Batches written before a failing product are kept, and the failure is then reported as a {@link PartialUploadException}.
+     * Failures are counted by {@code warehouse.product.upload.failures}, tagged with the exception that stopped the upload.
+     *
+     * @param productDTOs the products to be saved.
+     * @throws CustomNumberFormatException if the amountOf field is not a valid number.
+     * @throws PartialUploadException      if the upload failed after some batches were saved.
+     */
+    @Timed(value = "warehouse.product.upload", histogram = true)
+    public void saveAll(Iterator<ProductDTO> productDTOs) throws CustomNumberFormatException {
+        logger.info("Saving products");
+        int batchSize = Math.max(1, properties.getProduct().getUpload().getBatchSize());
+        List<ProductDTO> batch = new ArrayList<>(batchSize);
+        long saved = 0;
+        try {
+            while (productDTOs.hasNext()) {
+                batch.add(productDTOs.next());
+                if (batch.size() == batchSize) {
+                    saved += saveBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                saved += saveBatch(batch);
+            }
+        } catch (RuntimeException e) {
+            UploadFailures.count(meterRegistry, "warehouse.product.upload.failures", ProductService.class, e);
+            if (saved == 0) {
+                throw e;
             }
+            throw new PartialUploadException(saved, "products", e);
         }
+        logger.info("Saved {} products", saved);
+    }
+
+    /**
+     * Saves a batch of products with a single bulk upsert,
+     * replacing the price and articles of existing products with the same name or creating new ones.
+     * Setting the same values again is harmless, so the whole batch is retried if it conflicts with a concurrent upload.
+     *
+     * @param productDTOs the products to be saved.
+     * @return the number of saved products.
+     * @throws CustomNumberFormatException if the amountOf field is not a valid number.
+     */
+    private int saveBatch(List<ProductDTO> productDTOs) throws CustomNumberFormatException {
+        List<Product> products = productDTOs.stream().map(this::toModel).toList();
+        BulkWriteResult written = conflictRetry.execute("product.upload",
+                () -> productRepository.upsertByName(products, properties.getProduct().getUpload().isOrdered()));
+        logger.debug("Saved batch of {} products: {} added, {} updated",
+                products.size(), written.getUpserts().size(), written.getMatchedCount());
+        projection.productsChanged(products.stream().map(Product::getName).toList());
+        availabilityEngine.productsChanged();
+        catalogVersion.increment();
+        return products.size();
     }
 
     /**
@@ -113,27 +205,60 @@ public class ProductService {
         }
     }
 
+    /**
+     * Retrieves every product that contains an article, with the number of units that can currently be sold,
+     * so that the impact of a change of the article's stock can be seen without scanning the catalog.
+     * The products are found through the multikey index on {@code containArticles.articleId}
+     * and include sold-out products.
+     *
+     * @param articleId the ID of the article.
+     * @return the products containing the article, with their sellable quantity.
+     * @throws ArticleNotFoundException if no product contains the article and it is not in the inventory either.
+     */
+    @Timed(value = "warehouse.product.find.by.article", histogram = true)
+    public List<SellableProductDTO> findByArticle(String articleId) {
+        List<Product> products = productRepository.findByContainArticlesArticleIdIn(List.of(articleId));
+        if (products.isEmpty() && inventoryCache.findById(articleId).isEmpty()) {
+            throw new ArticleNotFoundException(articleId);
+        }
+        Map<String, Long> stockByArticle = availabilityCalculator.findStock(products);
+        return products.stream()
+                .map(product -> toDto(product, availabilityCalculator.findQuantity(product, stockByArticle)))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Retrieves all products and filters them based on their inventory availability.
+     * With the availability engine enabled the quantities are calculated from the catalog held in memory.
+     * With the sellable quantity projection enabled this is a single indexed query on the materialized quantities.
+     * Otherwise the stock of every article referenced by the products is loaded in batches up front,
+     * so the number of inventory queries does not grow with the number of products.
      *
      * @return a list of available products.
      */
+    @Timed(value = "warehouse.product.find.all", histogram = true)
     public List<SellableProductDTO> findAll() {
         logger.info("Fetching all available products.");
+        if (availabilityEngine.isEnabled()) {
+            List<SellableProductDTO> products = new ArrayList<>();
+            availabilityEngine.forEachSellable((product, quantity) -> products.add(toDto(product, quantity)));
+            return products;
+        }
+        if (projection.isEnabled()) {
+            return projection.findSellable().stream()
+                    .map(product -> toDto(product, product.getSellableQuantity()))
+                    .collect(Collectors.toList());
+        }
+
         List<Product> allProducts = productRepository.findAll();
+        Map<String, Long> stockByArticle = availabilityCalculator.findStock(allProducts);
 
         return allProducts.stream()
                 .map(product -> {
-                    long quantity = findQuantity(product);
+                    long quantity = availabilityCalculator.findQuantity(product, stockByArticle);
 
                     if (quantity > 0) {
-                        return SellableProductDTO.builder()
-                                .id(product.getId())
-                                .name(product.getName())
-                                .price(product.getPrice())
-                                .containArticles(toDto(product.getContainArticles()))
-                                .quantity(quantity)
-                                .build();
+                        return toDto(product, quantity);
                     }
                     return null;
                 })
@@ -141,7 +266,90 @@ public class ProductService {
                 .collect(Collectors.toList());
     }
 
-    private List<ProductArticleDTO> toDto(List<Product.ArticleQuantity> containArticles) {
+    /**
+     * Retrieves a page of the available products, ordered by ID.
+     * Paging is keyset based: the cursor is the ID of the last product examined,
+     * so every page is a range query on {@code _id} regardless of how deep into the catalog it is.
+     *
+     * @param after the {@link SellableProductPageDTO#getNextCursor() cursor} of the previous page, or null for the first page.
+     * @param limit the maximum number of products to return, or null for {@code warehouse.product.page.default-size};
+     *              limits above {@code warehouse.product.page.max-size} are reduced to it.
+     * @return the page of available products and the cursor of the next page.
+     */
+    @Timed(value = "warehouse.product.find.page", histogram = true)
+    public SellableProductPageDTO findPage(String after, Integer limit) {
+        WarehouseProperties.Page pageProperties = properties.getProduct().getPage();
+        int pageSize = Math.max(1, Math.min(limit == null ? pageProperties.getDefaultSize() : limit, pageProperties.getMaxSize()));
+        logger.debug("Fetching {} available products after {}", pageSize, after);
+
+        List<SellableProductDTO> products = new ArrayList<>(pageSize);
+        String cursor = after;
+        boolean exhausted = false;
+        while (products.size() < pageSize && !exhausted) {
+            int requested = pageSize - products.size();
+            List<Product> chunk = findChunk(cursor, requested);
+            exhausted = chunk.size() < requested;
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            Map<String, Long> stockByArticle = projection.isEnabled() ? Map.of() : availabilityCalculator.findStock(chunk);
+            for (Product product : chunk) {
+                long quantity = projection.isEnabled()
+                        ? product.getSellableQuantity()
+                        : availabilityCalculator.findQuantity(product, stockByArticle);
+                if (quantity > 0) {
+                    products.add(toDto(product, quantity));
+                }
+            }
+            cursor = chunk.get(chunk.size() - 1).getId();
+        }
+        return new SellableProductPageDTO(products, exhausted ? null : cursor);
+    }
+
+    /**
+     * Passes every available product to the consumer, ordered by ID.
+     * The catalog is read in pages of {@code warehouse.product.page.max-size}, so memory use does not depend on its size.
+     *
+     * @param consumer receives each available product as soon as its quantity is known.
+     */
+    @Timed(value = "warehouse.product.stream", histogram = true)
+    public void forEachAvailable(Consumer<SellableProductDTO> consumer) {
+        logger.info("Streaming all available products.");
+        String cursor = null;
+        do {
+            SellableProductPageDTO page = findPage(cursor, properties.getProduct().getPage().getMaxSize());
+            page.getProducts().forEach(consumer);
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    /**
+     * Loads the next products after the cursor, ordered by ID.
+     * With the projection enabled only products with a sellable quantity are loaded.
+     */
+    private List<Product> findChunk(String after, int limit) {
+        if (projection.isEnabled()) {
+            return projection.findSellable(after, limit);
+        }
+        PageRequest page = PageRequest.of(0, limit, Sort.by("id"));
+        return after == null ? productRepository.findAllBy(page) : productRepository.findByIdGreaterThan(after, page);
+    }
+
+    /**
+     * Converts a product and its sellable quantity to the DTO returned by the API.
+     */
+    static SellableProductDTO toDto(Product product, long quantity) {
+        return SellableProductDTO.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .price(product.getPrice())
+                .containArticles(toDto(product.getContainArticles()))
+                .quantity(quantity)
+                .build();
+    }
+
+    private static List<ProductArticleDTO> toDto(List<Product.ArticleQuantity> containArticles) {
         return containArticles.stream().map(conArt ->
                         ProductArticleDTO.builder()
                                 .articleId(conArt.getArticleId())
@@ -151,18 +359,49 @@ public class ProductService {
     }
 
     /**
-     * Sells a product with the specified ID.
-     * This method checks if the product exists and if it is in stock,
-     * then deducts the required articles from the inventory.
+     * Sells one unit of the product with the specified ID.
      *
      * @param id the ID of the product to be sold.
+     * @return the number of units of the product that can still be sold.
      * @throws ProductNotFoundException if the product with the specified ID does not exist.
      * @throws ProductSoldOutException  if the product is sold out.
      * @throws ArticleNotFoundException if an article required for the product is not found.
+     * @see #sell(String, long)
      */
-    @Transactional
-    public void sell(String id) {
-        logger.info("Processing sale for product ID: {}", id);
+    @Timed(value = "warehouse.product.sell", histogram = true)
+    @Counted(value = "warehouse.product.sell.failures", recordFailuresOnly = true)
+    public long sell(String id) {
+        return sell(id, 1);
+    }
+
+    /**
+     * Sells the given number of units of the product with the specified ID.
+     * This method checks once that the product exists and that enough units are in stock,
+     * then deducts {@code quantity * count} of every article with a conditional update.
+     * Each article is only decremented while it still has enough stock, so concurrent sales can never drive the stock negative,
+     * and if any article runs out in the meantime the articles decremented before it get their stock back.
+     * With {@code warehouse.multi-instance.enabled} the stock is not checked up front, as the cache of this instance
+     * may not have seen the writes of the others; the conditional write alone decides,
+     * and the remaining quantity is read from the repository.
+     * With {@code warehouse.product.group-commit.enabled} the write is shared with the concurrent sales of the same window.
+     * With {@code warehouse.journal.enabled} the stock is checked and deducted by the {@link StockJournal} instead,
+     * and the sale returns as soon as it is on the local disk.
+     *
+     * @param id    the ID of the product to be sold.
+     * @param count the number of units to be sold.
+     * @return the number of units of the product that can still be sold.
+     * @throws InvalidOrderException    if the count is not positive, or so large that the amount of an article overflows.
+     * @throws ProductNotFoundException if the product with the specified ID does not exist.
+     * @throws ProductSoldOutException  if fewer than {@code count} units are in stock; nothing is sold.
+     * @throws ArticleNotFoundException if an article required for the product is not found.
+     */
+    @Timed(value = "warehouse.product.sell", histogram = true)
+    @Counted(value = "warehouse.product.sell.failures", recordFailuresOnly = true)
+    public long sell(String id, long count) {
+        if (count <= 0) {
+            throw new InvalidOrderException("the count must be positive");
+        }
+        logger.info("Processing sale of {} units for product ID: {}", count, id);
         Optional<Product> productOpt = productRepository.findById(id);
 
         if (productOpt.isEmpty()) {
@@ -172,46 +411,196 @@ public class ProductService {
 
         Product product = productOpt.get();
 
-        if (findQuantity(product) <= 0) {
+        if (checkStockUpFront() && availabilityCalculator.findQuantity(product) < count) {
             logger.warn("Product with ID {} is sold out!", id);
             throw new ProductSoldOutException(id);
         }
 
-        // Deduct required articles from inventory
-        product.getContainArticles().forEach(articleQuantity -> {
-            Inventory inventory = inventoryRepository.findById(articleQuantity.getArticleId())
-                    .orElseThrow(() -> new ArticleNotFoundException(articleQuantity.getArticleId()));
-
-            inventory.setStock(inventory.getStock() - articleQuantity.getQuantity());
-            inventoryRepository.save(inventory);
-            logger.debug("Reduced stock for article ID {}: new stock {}", articleQuantity.getArticleId(), inventory.getStock());
-        });
+        // Deduct required articles from inventory, sorted so that concurrent sales write shared articles in the same order
+        Map<String, Long> amountByArticle = new TreeMap<>();
+        addDemand(amountByArticle, product, count);
+        Optional<String> failedArticle = decrementStock(amountByArticle);
+        if (failedArticle.isPresent()) {
+            if (!articleExists(failedArticle.get())) {
+                throw new ArticleNotFoundException(failedArticle.get());
+            }
+            logger.warn("Product with ID {} sold out during the sale!", id);
+            throw new ProductSoldOutException(id);
+        }
+        logger.debug("Reduced stock for {} articles of product ID {}", amountByArticle.size(), id);
+        stockChanged(amountByArticle.keySet());
+        if (stockJournal.isEnabled()) {
+            // The repository has not seen the sale yet
+            return availabilityCalculator.findQuantity(product, stockJournal.findStock(amountByArticle.keySet()));
+        }
+        if (properties.getMultiInstance().isEnabled()) {
+            // The cache may not have seen the sales of the other instances yet
+            Map<String, Long> stockByArticle = new HashMap<>();
+            inventoryCache.findAllByIdUncached(List.copyOf(amountByArticle.keySet()))
+                    .forEach((articleId, inventory) -> stockByArticle.put(articleId, inventory.getStock()));
+            return availabilityCalculator.findQuantity(product, stockByArticle);
+        }
+        return availabilityCalculator.findQuantity(product);
     }
 
     /**
-     * Determines how many units of a product can be made based on the available stock of the required articles.
-     * The method calculates the maximum number of products that can be produced with the current inventory,
-     * considering the quantities of each article required to produce one unit of the product.
+     * Sells all lines of an order, or none of them.
+     * The products are loaded with one query and the demand for every article is added up across the whole order,
+     * then checked against the current stock in one pass, unless running with other instances.
+     * If any article runs out in the meantime, the articles decremented before it get their stock back.
+     * This is not atomic, see {@link com.sona.warehouse.repository.InventoryRepositoryCustom#decrementStock(Map)}:
+     * other requests can see the order partly applied, and a crash before the stock is given back leaves it taken.
      *
-     * @param product the product whose sellable quantity is being calculated.
-     * @return the maximum number of units of the product that can be made based on the available stock of the articles.
-     *         Returns 0 if any required article is missing from the inventory.
-     */
-    private Long findQuantity(Product product) {
-        List<Product.ArticleQuantity> neededArticles = product.getContainArticles();
-
-        long minAvailableProducts = Long.MAX_VALUE;
-        for (Product.ArticleQuantity neededArticle : neededArticles) {
-            long availableProducts;
-            Optional<Inventory> articleInInventory = inventoryRepository.findById(neededArticle.getArticleId());
-            if (articleInInventory.isEmpty()) {
-                return 0L;
+     * @param lines the products and the number of units of each to be sold; lines for the same product are combined.
+     * @throws InvalidOrderException    if the order is empty, a line has no product or no positive count, or a count is too large.
+     * @throws ProductNotFoundException if a product of the order does not exist.
+     * @throws ProductSoldOutException  if there is not enough stock for the whole order; nothing is sold.
+     * @throws ArticleNotFoundException if an article required for a product is not found.
+     */
+    @Timed(value = "warehouse.product.sell.order", histogram = true)
+    @Counted(value = "warehouse.product.sell.order.failures", recordFailuresOnly = true)
+    public void sellOrder(List<OrderLineDTO> lines) {
+        Map<String, Long> countByProduct = toCountByProduct(lines);
+        logger.info("Processing order of {} products", countByProduct.size());
+
+        Map<String, Product> products = new LinkedHashMap<>();
+        productRepository.findAllById(countByProduct.keySet()).forEach(product -> products.put(product.getId(), product));
+        for (String id : countByProduct.keySet()) {
+            if (!products.containsKey(id)) {
+                logger.warn("Product with ID {} not found!", id);
+                throw new ProductNotFoundException(id);
+            }
+        }
+
+        // Sorted, so that concurrent orders write shared articles in the same order
+        Map<String, Long> demandByArticle = new TreeMap<>();
+        countByProduct.forEach((id, count) -> addDemand(demandByArticle, products.get(id), count));
+
+        if (checkStockUpFront()) {
+            checkStock(products.values(), demandByArticle);
+        }
+
+        Optional<String> failedArticle = stockJournal.isEnabled()
+                ? stockJournal.decrementStock(demandByArticle)
+                : inventoryCache.decrementStock(demandByArticle);
+        if (failedArticle.isPresent()) {
+            String articleId = failedArticle.get();
+            if (!articleExists(articleId)) {
+                throw new ArticleNotFoundException(articleId);
+            }
+            String id = findProductContaining(products.values(), articleId);
+            logger.warn("Product with ID {} sold out during the order!", id);
+            throw new ProductSoldOutException(id);
+        }
+        logger.debug("Reduced stock for {} articles", demandByArticle.size());
+        stockChanged(demandByArticle.keySet());
+    }
+
+    /**
+     * Decrements the stock of a single sale through the journal, the group commit or directly, whichever is enabled.
+     */
+    private Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        if (stockJournal.isEnabled()) {
+            return stockJournal.decrementStock(amountByArticle);
+        }
+        if (stockDecrementBatcher.isEnabled()) {
+            return stockDecrementBatcher.decrementStock(amountByArticle);
+        }
+        return inventoryCache.decrementStock(amountByArticle);
+    }
+
+    /**
+     * Updates the availability engine and the catalog version after a sale, and queues the refresh of the projection,
+     * which increases the catalog version again once it is written.
+     * The journal does so itself once the sale is applied to the repository.
+     */
+    private void stockChanged(Collection<String> articleIds) {
+        if (stockJournal.isEnabled()) {
+            return;
+        }
+        projection.articlesChangedLater(articleIds);
+        availabilityEngine.articlesChanged(articleIds);
+        catalogVersion.increment();
+    }
+
+    private boolean articleExists(String articleId) {
+        return stockJournal.isEnabled()
+                ? !stockJournal.findStock(List.of(articleId)).isEmpty()
+                : inventoryCache.findById(articleId).isPresent();
+    }
+
+    /**
+     * Rejects an order early if the stock read through the cache cannot cover its demand.
+     */
+    private void checkStock(Collection<Product> products, Map<String, Long> demandByArticle) {
+        Map<String, Long> stockByArticle = availabilityCalculator.findStock(products);
+        for (Map.Entry<String, Long> demand : demandByArticle.entrySet()) {
+            Long stock = stockByArticle.get(demand.getKey());
+            if (stock == null) {
+                throw new ArticleNotFoundException(demand.getKey());
             }
-            availableProducts = articleInInventory.get().getStock() / neededArticle.getQuantity();
-            if (availableProducts < minAvailableProducts) {
-                minAvailableProducts = availableProducts;
+            if (stock < demand.getValue()) {
+                String id = findProductContaining(products, demand.getKey());
+                logger.warn("Order needs {} of article {} but only {} are in stock, product with ID {} is sold out!",
+                        demand.getValue(), demand.getKey(), stock, id);
+                throw new ProductSoldOutException(id);
             }
         }
-        return minAvailableProducts;
+    }
+
+    /**
+     * Indicates whether sales may be rejected early on the stock read through the cache.
+     * Not when other instances may write the same inventory, as the cache may not have seen their writes,
+     * and not with the journal, which checks the stock itself and is ahead of the repository.
+     */
+    private boolean checkStockUpFront() {
+        return !properties.getMultiInstance().isEnabled() && !stockJournal.isEnabled();
+    }
+
+    /**
+     * Validates the lines of an order and combines the lines for the same product.
+     */
+    private Map<String, Long> toCountByProduct(List<OrderLineDTO> lines) {
+        if (lines == null || lines.isEmpty()) {
+            throw new InvalidOrderException("no products");
+        }
+        Map<String, Long> countByProduct = new LinkedHashMap<>();
+        for (OrderLineDTO line : lines) {
+            if (line.getProductId() == null || line.getCount() == null || line.getCount() <= 0) {
+                throw new InvalidOrderException("each line needs a product ID and a positive count");
+            }
+            try {
+                countByProduct.merge(line.getProductId(), line.getCount(), Math::addExact);
+            } catch (ArithmeticException e) {
+                throw new InvalidOrderException("the count of product " + line.getProductId() + " is too large");
+            }
+        }
+        return countByProduct;
+    }
+
+    /**
+     * Adds the amount of every article needed for {@code count} units of a product to the demand of a sale.
+     *
+     * @param demandByArticle the amount needed so far, keyed by article ID.
+     * @param product         the product being sold.
+     * @param count           the number of units sold.
+     * @throws InvalidOrderException if the amount of an article does not fit in a long.
+     */
+    static void addDemand(Map<String, Long> demandByArticle, Product product, long count) {
+        try {
+            for (Product.ArticleQuantity article : product.getContainArticles()) {
+                demandByArticle.merge(article.getArticleId(), Math.multiplyExact(article.getQuantity(), count), Math::addExact);
+            }
+        } catch (ArithmeticException e) {
+            throw new InvalidOrderException("the count of product " + product.getId() + " is too large");
+        }
+    }
+
+    private static String findProductContaining(Collection<Product> products, String articleId) {
+        return products.stream()
+                .filter(product -> product.getContainArticles().stream().anyMatch(article -> article.getArticleId().equals(articleId)))
+                .map(Product::getId)
+                .findFirst()
+                .orElseThrow();
     }
 }
@@ -0,0 +1,186 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.dto.SaleResultDTO;
+import com.sona.warehouse.dto.SellableProductDTO;
+import com.sona.warehouse.exceptions.ArticleNotFoundException;
+import com.sona.warehouse.exceptions.InvalidOrderException;
+import com.sona.warehouse.exceptions.ProductNotFoundException;
+import com.sona.warehouse.exceptions.ProductSoldOutException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.ReactiveInventoryRepository;
+import com.sona.warehouse.repository.ReactiveProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Non-blocking counterpart of the read and sell operations of {@link ProductService}, used by the {@code reactive} profile.
+ * Products are read as a stream and the articles of each chunk of products are resolved with {@code $in} queries
+ * that run concurrently, at most {@code warehouse.inventory.lookup-concurrency} at a time,
+ * so no thread waits on MongoDB while other lookups could proceed.
+ * <p>
+ * The in-process inventory cache is kept coherent by evicting the articles a sale touches. The blocking
+ * {@link SellableQuantityProjection} and {@link AvailabilityEngine} are refreshed on the bounded elastic scheduler,
+ * and the {@link CatalogVersion} is increased, as after a sale through {@link ProductService}.
+ * The stock is checked up front against MongoDB rather than the cache, so it is also checked with other instances.
+ * <p>
+ * Sales are written with conditional updates of the inventory documents only. The service therefore refuses to start
+ * together with the stock journal, the group commit or hot articles split into stripes, which all require every
+ * sale to go through their own write path.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveProductService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveProductService.class);
+
+    private final ReactiveProductRepository productRepository;
+    private final ReactiveInventoryRepository inventoryRepository;
+    private final InventoryCache inventoryCache;
+    private final AvailabilityCalculator availabilityCalculator;
+    private final SellableQuantityProjection projection;
+    private final AvailabilityEngine availabilityEngine;
+    private final CatalogVersion catalogVersion;
+    private final WarehouseProperties properties;
+
+    /**
+     * Constructs a ReactiveProductService.
+     *
+     * @param productRepository      the reactive repository for accessing product data.
+     * @param inventoryRepository    the reactive repository for accessing inventory data.
+     * @param inventoryCache         the cache in front of the blocking inventory repository, evicted after sales.
+     * @param availabilityCalculator the calculator of the sellable quantity of products.
+     * @param projection             the materialized sellable quantity of products.
+     * @param availabilityEngine     the in-memory availability, refreshed after sales.
+     * @param catalogVersion         the version of the available products, increased after sales.
+     * @param properties             the warehouse configuration properties.
+     * @throws IllegalStateException if a stock write path the reactive sales bypass is enabled.
+     */
+    @Autowired
+    public ReactiveProductService(ReactiveProductRepository productRepository, ReactiveInventoryRepository inventoryRepository,
+                                  InventoryCache inventoryCache, AvailabilityCalculator availabilityCalculator,
+                                  SellableQuantityProjection projection, AvailabilityEngine availabilityEngine,
+                                  CatalogVersion catalogVersion, WarehouseProperties properties) {
+        List<String> unsupported = new ArrayList<>();
+        if (properties.getJournal().isEnabled()) {
+            unsupported.add("warehouse.journal.enabled");
+        }
+        if (properties.getProduct().getGroupCommit().isEnabled()) {
+            unsupported.add("warehouse.product.group-commit.enabled");
+        }
+        if (!properties.getInventory().getHotArticles().getStripes().isEmpty()) {
+            unsupported.add("warehouse.inventory.hot-articles.stripes");
+        }
+        if (!unsupported.isEmpty()) {
+            throw new IllegalStateException("The reactive profile does not support " + String.join(", ", unsupported));
+        }
+        this.productRepository = productRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.inventoryCache = inventoryCache;
+        this.availabilityCalculator = availabilityCalculator;
+        this.projection = projection;
+        this.availabilityEngine = availabilityEngine;
+        this.catalogVersion = catalogVersion;
+        this.properties = properties;
+    }
+
+    /**
+     * Streams all products with a sellable quantity above zero.
+     * With the projection enabled the stored quantities are read; otherwise they are computed per chunk of products.
+     *
+     * @return the available products.
+     */
+    public Flux<SellableProductDTO> findAll() {
+        if (projection.isEnabled()) {
+            return Mono.fromRunnable(projection::ensureBuilt)
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .thenMany(productRepository.findBySellableQuantityGreaterThan(0))
+                    .map(product -> ProductService.toDto(product, product.getSellableQuantity()));
+        }
+        int batchSize = Math.max(1, properties.getInventory().getLookupBatchSize());
+        return productRepository.findAll()
+                .buffer(batchSize)
+                .concatMap(products -> findStock(products).flatMapMany(stockByArticle -> Flux.fromIterable(products)
+                        .map(product -> ProductService.toDto(product, availabilityCalculator.findQuantity(product, stockByArticle)))))
+                .filter(product -> product.getQuantity() > 0);
+    }
+
+    /**
+     * Sells the given number of units of a product like {@link ProductService#sell(String, long)}.
+     *
+     * @param id    the ID of the product to be sold.
+     * @param count the number of units to be sold.
+     * @return a Mono emitting the outcome of the sale with the number of units that can still be sold, or failing with
+     *         an {@link InvalidOrderException}, {@link ProductNotFoundException}, {@link ProductSoldOutException}
+     *         or {@link ArticleNotFoundException}.
+     */
+    public Mono<SaleResultDTO> sell(String id, long count) {
+        if (count <= 0) {
+            return Mono.error(new InvalidOrderException("the count must be positive"));
+        }
+        return productRepository.findById(id)
+                .switchIfEmpty(Mono.error(() -> new ProductNotFoundException(id)))
+                .flatMap(product -> findStock(List.of(product)).flatMap(stockByArticle -> {
+                    if (availabilityCalculator.findQuantity(product, stockByArticle) < count) {
+                        logger.warn("Product with ID {} is sold out!", id);
+                        return Mono.error(new ProductSoldOutException(id));
+                    }
+                    Map<String, Long> amountByArticle = new TreeMap<>();
+                    ProductService.addDemand(amountByArticle, product, count);
+                    Runnable evict = () -> amountByArticle.keySet().forEach(inventoryCache::evict);
+                    return inventoryRepository.decrementStock(amountByArticle)
+                            .doOnTerminate(evict)
+                            .doOnCancel(evict)
+                            .flatMap(failedArticle -> inventoryRepository.existsById(failedArticle)
+                                    .flatMap(exists -> Mono.<SaleResultDTO>error(exists
+                                            ? new ProductSoldOutException(id)
+                                            : new ArticleNotFoundException(failedArticle))))
+                            .switchIfEmpty(Mono.defer(() -> Mono.fromRunnable(() -> stockChanged(amountByArticle.keySet()))
+                                    .subscribeOn(Schedulers.boundedElastic())
+                                    .then(findStock(List.of(product)))
+                                    .map(stock -> new SaleResultDTO(id, count, availabilityCalculator.findQuantity(product, stock)))));
+                }));
+    }
+
+    private void stockChanged(Collection<String> articleIds) {
+        projection.articlesChangedLater(articleIds);
+        availabilityEngine.articlesChanged(articleIds);
+        catalogVersion.increment();
+    }
+
+    /**
+     * Loads the current stock of every distinct article contained in the given products,
+     * with concurrent {@code $in} queries of at most {@code warehouse.inventory.lookup-batch-size} IDs each.
+     */
+    private Mono<Map<String, Long>> findStock(Collection<Product> products) {
+        Set<String> articleIds = new LinkedHashSet<>();
+        for (Product product : products) {
+            product.getContainArticles().forEach(article -> articleIds.add(article.getArticleId()));
+        }
+        List<String> ids = new ArrayList<>(articleIds);
+        int batchSize = Math.max(1, properties.getInventory().getLookupBatchSize());
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            batches.add(ids.subList(from, Math.min(from + batchSize, ids.size())));
+        }
+        return Flux.fromIterable(batches)
+                .flatMap(inventoryRepository::findAllById, Math.max(1, properties.getInventory().getLookupConcurrency()))
+                .collectMap(Inventory::getArticleId, Inventory::getStock);
+    }
+}
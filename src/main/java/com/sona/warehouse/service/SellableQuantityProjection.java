@@ -0,0 +1,285 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.event.ArticleStockChangedEvent;
+import com.sona.warehouse.event.ProductDefinitionChangedEvent;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.ProductRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Maintains the materialized {@link Product#getSellableQuantity() sellable quantity} of every product,
+ * so that listing the available products is a single indexed query.
+ * When the stock of articles changes, only the products containing those articles are recalculated,
+ * found through the multikey index on {@code containArticles.articleId}.
+ * The projection is eventually consistent: a sale is still only accepted if the conditional stock updates succeed.
+ * Refreshes of this instance run one at a time, so a later refresh always reads the quantities an earlier one wrote
+ * and only quantities that changed need to be written. They are written conditionally on the version of the product,
+ * so a refresh of another instance that read older stock cannot overwrite a quantity written since; products written
+ * concurrently are recalculated for up to {@code warehouse.retry.max-attempts} attempts.
+ * Sales hand their articles to {@link #articlesChangedLater(Collection)}, which refreshes them on a single background
+ * thread and coalesces the articles of all sales made meanwhile into one refresh.
+ * When {@code warehouse.product.projection.enabled} is {@code false} the projection is not maintained.
+ */
+@Component
+public class SellableQuantityProjection {
+
+    private static final Logger logger = LoggerFactory.getLogger(SellableQuantityProjection.class);
+
+    private final ProductRepository productRepository;
+    private final AvailabilityCalculator availabilityCalculator;
+    private final CatalogVersion catalogVersion;
+    private final ConflictRetry conflictRetry;
+    private final boolean enabled;
+    private final ExecutorService refresher;
+    // The articles sold since the last background refresh started
+    private final Set<String> changedArticles = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshQueued = new AtomicBoolean();
+    private volatile boolean built;
+
+    /**
+     * Constructs a SellableQuantityProjection.
+     *
+     * @param productRepository      the repository for accessing product data.
+     * @param availabilityCalculator the calculator of the sellable quantity of products.
+     * @param catalogVersion         the version increased whenever the projection was rebuilt or refreshed in the background.
+     * @param conflictRetry          the retry of products written by a concurrent refresh.
+     * @param properties             the warehouse configuration properties.
+     */
+    @Autowired
+    public SellableQuantityProjection(ProductRepository productRepository, AvailabilityCalculator availabilityCalculator,
+                                      CatalogVersion catalogVersion, ConflictRetry conflictRetry, WarehouseProperties properties) {
+        this.productRepository = productRepository;
+        this.availabilityCalculator = availabilityCalculator;
+        this.catalogVersion = catalogVersion;
+        this.conflictRetry = conflictRetry;
+        this.enabled = properties.getProduct().getProjection().isEnabled();
+        if (enabled) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("projection-refresh-");
+            threadFactory.setDaemon(true);
+            this.refresher = Executors.newSingleThreadExecutor(threadFactory);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * Stops the background refresh; articles still waiting for it are picked up by the next rebuild.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Indicates whether the projection is maintained and can be read.
+     *
+     * @return true if the projection is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Retrieves the products that can currently be sold, building the projection first if this instance has not done so yet.
+     *
+     * @return the products with a sellable quantity above zero.
+     */
+    public List<Product> findSellable() {
+        ensureBuilt();
+        return productRepository.findBySellableQuantityGreaterThan(0);
+    }
+
+    /**
+     * Retrieves a page of the products that can currently be sold, ordered by ID.
+     *
+     * @param after the ID of the last product of the previous page, or null for the first page.
+     * @param limit the maximum number of products to return.
+     * @return the products with a sellable quantity above zero and an ID greater than {@code after}.
+     */
+    public List<Product> findSellable(String after, int limit) {
+        ensureBuilt();
+        PageRequest page = PageRequest.of(0, limit, Sort.by("id"));
+        return after == null
+                ? productRepository.findBySellableQuantityGreaterThan(0, page)
+                : productRepository.findBySellableQuantityGreaterThanAndIdGreaterThan(0, after, page);
+    }
+
+    /**
+     * Recalculates the sellable quantity of the products containing any of the given articles.
+     *
+     * @param articleIds the IDs of the articles whose stock changed.
+     * @return the new sellable quantity of the products whose quantity changed, keyed by product ID;
+     *         empty if the projection is disabled.
+     */
+    public Map<String, Long> articlesChanged(Collection<String> articleIds) {
+        if (!enabled || articleIds.isEmpty()) {
+            return Map.of();
+        }
+        return refresh(productRepository.findByContainArticlesArticleIdIn(articleIds));
+    }
+
+    /**
+     * Recalculates the sellable quantity of the products containing any of the given articles on the background thread,
+     * together with the articles of every other call made before the refresh starts,
+     * and increases the {@link CatalogVersion} if a quantity changed.
+     *
+     * @param articleIds the IDs of the articles whose stock changed.
+     */
+    public void articlesChangedLater(Collection<String> articleIds) {
+        if (!enabled || articleIds.isEmpty()) {
+            return;
+        }
+        changedArticles.addAll(articleIds);
+        if (refreshQueued.compareAndSet(false, true)) {
+            refresher.execute(this::refreshChangedArticles);
+        }
+    }
+
+    /**
+     * Recalculates the sellable quantity of the products with the given names.
+     *
+     * @param names the names of the products that were created or changed.
+     */
+    public void productsChanged(Collection<String> names) {
+        if (!enabled || names.isEmpty()) {
+            return;
+        }
+        refresh(productRepository.findByNameIn(names));
+    }
+
+    /**
+     * Recalculates the products containing an article written by another instance or directly in MongoDB.
+     * Runs before the {@link CatalogVersion} is increased.
+     *
+     * @param event the change of the article.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void articleStockChanged(ArticleStockChangedEvent event) {
+        articlesChanged(List.of(event.getArticleId()));
+    }
+
+    /**
+     * Recalculates a product created or changed by another instance or directly in MongoDB.
+     * Runs before the {@link CatalogVersion} is increased.
+     *
+     * @param event the change of the product; deleted products have nothing to recalculate.
+     */
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void productDefinitionChanged(ProductDefinitionChangedEvent event) {
+        if (event.getName() != null) {
+            productsChanged(List.of(event.getName()));
+        }
+    }
+
+    /**
+     * Recalculates the sellable quantity of every product and increases the {@link CatalogVersion},
+     * as the rebuild also picks up changes made while no instance was watching.
+     */
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        logger.info("Building the sellable quantity projection.");
+        refresh(productRepository.findAll());
+        built = true;
+        catalogVersion.increment();
+    }
+
+    /**
+     * Builds the projection if this instance has not done so yet.
+     */
+    public void ensureBuilt() {
+        if (!built) {
+            synchronized (this) {
+                if (!built) {
+                    rebuild();
+                }
+            }
+        }
+    }
+
+    /**
+     * Refreshes the articles collected by {@link #articlesChangedLater(Collection)}.
+     * The queued flag is cleared before the articles are taken, so articles added during the refresh queue another one.
+     */
+    private void refreshChangedArticles() {
+        refreshQueued.set(false);
+        List<String> articleIds = new ArrayList<>(changedArticles);
+        changedArticles.removeAll(articleIds);
+        try {
+            if (!articlesChanged(articleIds).isEmpty()) {
+                catalogVersion.increment();
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Refreshing the sellable quantity of the products containing {} articles failed",
+                    articleIds.size(), e);
+        }
+    }
+
+    /**
+     * Writes the quantities that differ from the stored ones. Products written by another refresh since they were read
+     * are read again, with their stock, and written again if their quantity still differs,
+     * for up to {@code warehouse.retry.max-attempts} attempts.
+     *
+     * @throws com.sona.warehouse.exceptions.ConcurrentUpdateException if products kept being written concurrently.
+     */
+    private synchronized Map<String, Long> refresh(List<Product> products) {
+        Map<String, Long> changed = new HashMap<>();
+        Map<String, Long> previousById = new HashMap<>();
+        products.forEach(product -> previousById.put(product.getId(), product.getSellableQuantity()));
+        List<Product> pending = products;
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            Map<String, Long> stockByArticle = availabilityCalculator.findStock(pending);
+            List<Product> outdated = new ArrayList<>();
+            Map<String, Long> quantityById = new HashMap<>();
+            for (Product product : pending) {
+                long quantity = availabilityCalculator.findQuantity(product, stockByArticle);
+                if (Objects.equals(previousById.get(product.getId()), quantity)) {
+                    changed.remove(product.getId());
+                } else {
+                    changed.put(product.getId(), quantity);
+                }
+                if (!Objects.equals(product.getSellableQuantity(), quantity)) {
+                    outdated.add(product);
+                    quantityById.put(product.getId(), quantity);
+                }
+            }
+            if (outdated.isEmpty() || productRepository.updateSellableQuantities(outdated, quantityById) == outdated.size()) {
+                break;
+            }
+            conflictRetry.backOff("product.projection", attempt, new OptimisticLockingFailureException(
+                    "Products were written by a concurrent refresh"));
+            pending = productRepository.findAllById(quantityById.keySet());
+        }
+        logger.debug("Recalculated {} products, {} changed", products.size(), changed.size());
+        return changed;
+    }
+}
@@ -0,0 +1,213 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Inventory;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit of the stock decrements of concurrent sales.
+ * Sales are queued and a single thread takes them in windows of up to {@code warehouse.product.group-commit.max-batch-size}
+ * sales, waiting at most {@code warehouse.product.group-commit.max-wait} for a window to fill. The demand of a window is
+ * added up per article and applied with one conditional update per article, so a hot article is written once per window
+ * instead of once per sale.
+ * <p>
+ * If the combined write fails on an article, the fresh stock of that article is read and the sales needing it are admitted
+ * in arrival order as long as it covers them; the others are sold out. The admitted sales are then written together again.
+ * Every write is still conditional, so the stock can never go negative, and every sale gets its own result.
+ * When {@code warehouse.product.group-commit.enabled} is {@code false} no thread is started and decrements are not batched.
+ */
+@Component
+public class StockDecrementBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockDecrementBatcher.class);
+
+    /**
+     * Combined writes of a window before falling back to writing its remaining sales one by one,
+     * in case concurrent writers keep changing the stock between the reads and the writes.
+     */
+    private static final int MAX_ROUNDS = 8;
+
+    private final InventoryCache inventoryCache;
+    private final WarehouseProperties.GroupCommit groupCommit;
+    private final BlockingQueue<Sale> queue = new LinkedBlockingQueue<>();
+    private final DistributionSummary batchSize;
+    private final Thread dispatcher;
+    private volatile boolean running;
+
+    /**
+     * Constructs a StockDecrementBatcher and starts its thread if group commit is enabled.
+     *
+     * @param inventoryCache the cache in front of the inventory repository, used for the writes and stock reads.
+     * @param properties     the warehouse configuration properties.
+     * @param meterRegistry  the registry the batch size distribution is published to.
+     */
+    @Autowired
+    public StockDecrementBatcher(InventoryCache inventoryCache, WarehouseProperties properties, MeterRegistry meterRegistry) {
+        this.inventoryCache = inventoryCache;
+        this.groupCommit = properties.getProduct().getGroupCommit();
+        this.batchSize = DistributionSummary.builder("warehouse.product.sell.batch.size")
+                .description("Sales whose stock decrements were written together")
+                .register(meterRegistry);
+        if (groupCommit.isEnabled()) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("sell-batch-");
+            threadFactory.setDaemon(true);
+            running = true;
+            dispatcher = threadFactory.newThread(this::dispatch);
+            dispatcher.start();
+            logger.info("Group commit of sales enabled with batches of up to {} sales, waiting up to {}",
+                    groupCommit.getMaxBatchSize(), groupCommit.getMaxWait());
+        } else {
+            dispatcher = null;
+        }
+    }
+
+    /**
+     * Indicates whether sales are batched.
+     *
+     * @return true if group commit is enabled.
+     */
+    public boolean isEnabled() {
+        return groupCommit.isEnabled();
+    }
+
+    /**
+     * Stops the thread; sales still queued fail.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (dispatcher != null) {
+            running = false;
+            dispatcher.interrupt();
+        }
+    }
+
+    /**
+     * Queues the stock decrements of a sale and waits until the window it was added to has been written.
+     * The result has the same meaning as {@link InventoryCache#decrementStock(Map)}.
+     *
+     * @param amountByArticle the amount to be removed from the stock, keyed by article ID.
+     * @return an empty Optional if every article was decremented, otherwise the ID of an article
+     *         that does not exist or does not have enough stock for this sale; nothing is decremented then.
+     */
+    public Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        if (!running) {
+            return inventoryCache.decrementStock(amountByArticle);
+        }
+        Sale sale = new Sale(amountByArticle, new CompletableFuture<>());
+        queue.add(sale);
+        if (!running && queue.remove(sale)) {
+            // Stopped after the check above, so the thread may no longer take it
+            return inventoryCache.decrementStock(amountByArticle);
+        }
+        try {
+            return sale.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void dispatch() {
+        List<Sale> window = new ArrayList<>();
+        while (running) {
+            try {
+                window.add(queue.take());
+                long deadline = System.nanoTime() + groupCommit.getMaxWait().toNanos();
+                while (window.size() < groupCommit.getMaxBatchSize()) {
+                    Sale next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    window.add(next);
+                }
+                write(window);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.warn("Failed to write a batch of {} sales", window.size(), e);
+                window.forEach(sale -> sale.result().completeExceptionally(e));
+            }
+            window.clear();
+        }
+        IllegalStateException stopped = new IllegalStateException("Sales are no longer accepted, the application is stopping");
+        window.forEach(sale -> sale.result().completeExceptionally(stopped));
+        for (Sale sale = queue.poll(); sale != null; sale = queue.poll()) {
+            sale.result().completeExceptionally(stopped);
+        }
+    }
+
+    /**
+     * Writes the decrements of a window, completing every sale with its result.
+     */
+    void write(List<Sale> window) {
+        batchSize.record(window.size());
+        List<Sale> pending = window;
+        for (int round = 0; round < MAX_ROUNDS && !pending.isEmpty(); round++) {
+            // Sorted, so that concurrent writers decrement shared articles in the same order
+            Map<String, Long> demandByArticle = new TreeMap<>();
+            for (Sale sale : pending) {
+                // Saturated rather than overflowing: a demand beyond any stock sends the window to admit() like any shortage
+                sale.amountByArticle().forEach((articleId, amount) ->
+                        demandByArticle.merge(articleId, amount, (a, b) -> a > Long.MAX_VALUE - b ? Long.MAX_VALUE : a + b));
+            }
+            Optional<String> failedArticle = inventoryCache.decrementStock(demandByArticle);
+            if (failedArticle.isEmpty()) {
+                pending.forEach(sale -> sale.result().complete(Optional.empty()));
+                return;
+            }
+            pending = admit(pending, failedArticle.get());
+        }
+        logger.debug("Writing the remaining {} sales of a contended batch one by one", pending.size());
+        pending.forEach(sale -> sale.result().complete(inventoryCache.decrementStock(sale.amountByArticle())));
+    }
+
+    /**
+     * Completes the sales that the current stock of an article cannot cover as sold out, in arrival order.
+     *
+     * @return the sales that are still to be written.
+     */
+    private List<Sale> admit(List<Sale> sales, String articleId) {
+        long stock = inventoryCache.findById(articleId).map(Inventory::getStock).orElse(-1L);
+        List<Sale> admitted = new ArrayList<>(sales.size());
+        for (Sale sale : sales) {
+            Long amount = sale.amountByArticle().get(articleId);
+            if (amount == null) {
+                admitted.add(sale);
+            } else if (amount <= stock) {
+                stock -= amount;
+                admitted.add(sale);
+            } else {
+                sale.result().complete(Optional.of(articleId));
+            }
+        }
+        return admitted;
+    }
+
+    /**
+     * A sale waiting for its decrements to be written.
+     */
+    record Sale(Map<String, Long> amountByArticle, CompletableFuture<Optional<String>> result) {
+    }
+}
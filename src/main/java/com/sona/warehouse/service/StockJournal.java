@@ -0,0 +1,555 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.StockJournalFailedException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.StockJournalEntry;
+import com.sona.warehouse.repository.InventoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-ahead journal of stock changes, so that sales are acknowledged without waiting for MongoDB.
+ * <p>
+ * The journal keeps the stock of every article it has touched in memory. A sale is checked and deducted against it,
+ * appended to a memory-mapped {@link JournalSegment} and acknowledged once the next flush,
+ * every {@code warehouse.journal.flush-interval}, has forced it to disk. One flush covers all sales appended since the
+ * previous one. A background thread then applies the flushed entries to the {@code inventory} collection in order,
+ * and refreshes the cache, projection and availability engine from the result.
+ * <p>
+ * Every applied entry stores its sequence in the articles it changed, and entries are only applied to articles with a
+ * lower sequence. When the application starts, the entries left in the journal files by a crash are applied again
+ * before any sale is accepted; entries that were already applied, also partly, are skipped.
+ * <p>
+ * If a flush fails, the journal refuses every further change with a {@link StockJournalFailedException}.
+ * The changes appended but not forced are handed to the applier, and their callers are acknowledged once they are
+ * in MongoDB instead: a change is never reported as failed once it was appended.
+ * <p>
+ * The in-memory stock of an article is loaded from MongoDB the first time the journal touches it. From then on
+ * the journal must be the only writer of its stock, so the journal cannot be combined with
+ * {@code warehouse.multi-instance.enabled}, hot articles split into stripes or the reactive stack,
+ * and inventory uploads go through it as well.
+ * When {@code warehouse.journal.enabled} is {@code false} nothing is started and every call must go to MongoDB directly.
+ */
+@Component
+public class StockJournal implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockJournal.class);
+
+    private final InventoryRepository inventoryRepository;
+    private final InventoryCache inventoryCache;
+    private final SellableQuantityProjection projection;
+    private final AvailabilityEngine availabilityEngine;
+    private final CatalogVersion catalogVersion;
+    private final WarehouseProperties properties;
+    private final WarehouseProperties.Journal journal;
+
+    // Guards the stock, the segments, the next sequence and the unflushed entries
+    private final Object lock = new Object();
+    private final Map<String, Long> stock = new HashMap<>();
+    private final Deque<JournalSegment> segments = new ArrayDeque<>();
+    private long nextSequence;
+    private List<StockJournalEntry> unflushed = new ArrayList<>();
+
+    private final Object flushed = new Object();
+    private long flushedSequence;
+    private final BlockingQueue<StockJournalEntry> unapplied = new LinkedBlockingQueue<>();
+    private volatile long appliedSequence;
+
+    private Thread flusher;
+    private Thread applier;
+    private volatile boolean running;
+    private volatile boolean halted;
+    private volatile Throwable flushFailure;
+
+    /**
+     * Constructs a StockJournal. Nothing is read or started before {@link #start()}.
+     *
+     * @param inventoryRepository the repository the journal is applied to.
+     * @param inventoryCache      the cache whose entries are dropped when the journal was applied.
+     * @param projection          the materialized sellable quantity, refreshed when the journal was applied.
+     * @param availabilityEngine  the in-memory availability, refreshed when the journal was applied.
+     * @param catalogVersion      the version of the available products, increased when the journal was applied.
+     * @param properties          the warehouse configuration properties.
+     */
+    @Autowired
+    public StockJournal(InventoryRepository inventoryRepository, InventoryCache inventoryCache,
+                        SellableQuantityProjection projection, AvailabilityEngine availabilityEngine,
+                        CatalogVersion catalogVersion, WarehouseProperties properties) {
+        this.inventoryRepository = inventoryRepository;
+        this.inventoryCache = inventoryCache;
+        this.projection = projection;
+        this.availabilityEngine = availabilityEngine;
+        this.catalogVersion = catalogVersion;
+        this.properties = properties;
+        this.journal = properties.getJournal();
+    }
+
+    /**
+     * Indicates whether stock changes go through the journal.
+     *
+     * @return true if the journal is enabled.
+     */
+    public boolean isEnabled() {
+        return journal.isEnabled();
+    }
+
+    /**
+     * Applies the entries left by the previous run and starts the flush and apply threads.
+     * Runs before the web server starts, so no request sees the stock before the replay.
+     */
+    @Override
+    public void start() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (properties.getMultiInstance().isEnabled()) {
+            throw new IllegalStateException("The stock journal requires a single instance writing the inventory");
+        }
+        if (!properties.getInventory().getHotArticles().getStripes().isEmpty()) {
+            throw new IllegalStateException("The stock journal does not support hot articles split into stripes");
+        }
+        try {
+            Files.createDirectories(journal.getDirectory());
+            long lastSequence = replay();
+            nextSequence = Math.max(lastSequence, inventoryRepository.findMaxJournalSequence()) + 1;
+            segments.add(JournalSegment.create(journal.getDirectory(), nextSequence, segmentSize()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the stock journal in " + journal.getDirectory(), e);
+        }
+        flushedSequence = nextSequence - 1;
+        appliedSequence = nextSequence - 1;
+        halted = false;
+        running = true;
+
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("stock-journal-");
+        threadFactory.setDaemon(true);
+        flusher = threadFactory.newThread(this::flushContinuously);
+        applier = threadFactory.newThread(this::applyContinuously);
+        flusher.start();
+        applier.start();
+        logger.info("Stock journal started in {} at sequence {}, flushing every {}",
+                journal.getDirectory().toAbsolutePath(), nextSequence, journal.getFlushInterval());
+    }
+
+    /**
+     * Flushes the journal and waits until all its entries are applied, then deletes the journal files.
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            flusher.interrupt();
+            flusher.join();
+            applier.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            boolean drained = unapplied.isEmpty() && appliedSequence == nextSequence - 1;
+            for (JournalSegment segment : segments) {
+                closeSegment(segment, drained);
+            }
+            segments.clear();
+            stock.clear();
+            logger.info("Stock journal stopped at sequence {}, {}", appliedSequence,
+                    drained ? "all entries applied" : "unapplied entries are kept for the next start");
+        }
+    }
+
+    /**
+     * Stops immediately, as a crash would: entries that are not flushed or applied are left behind.
+     */
+    void halt() {
+        halted = true;
+        running = false;
+        flusher.interrupt();
+        applier.interrupt();
+        try {
+            flusher.join();
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            for (JournalSegment segment : segments) {
+                closeSegment(segment, false);
+            }
+            segments.clear();
+            stock.clear();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts before the web server, which is started in an earlier phase than the default.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    /**
+     * Decrements the stock of several articles, all or nothing, and returns once the change is on disk,
+     * or in MongoDB if the journal failed to force it.
+     * The result has the same meaning as {@link InventoryCache#decrementStock(Map)}.
+     *
+     * @param amountByArticle the amount to be removed from the stock, keyed by article ID.
+     * @return an empty Optional if every article was decremented, otherwise the ID of the first article
+     *         that does not exist or does not have enough stock.
+     * @throws StockJournalFailedException if a flush failed before; nothing is decremented.
+     */
+    public Optional<String> decrementStock(Map<String, Long> amountByArticle) {
+        load(amountByArticle.keySet());
+        StockJournalEntry entry;
+        synchronized (lock) {
+            checkRunning();
+            for (Map.Entry<String, Long> amount : amountByArticle.entrySet()) {
+                Long available = stock.get(amount.getKey());
+                if (available == null || available < amount.getValue()) {
+                    return Optional.of(amount.getKey());
+                }
+            }
+            List<StockJournalEntry.Delta> deltas = new ArrayList<>(amountByArticle.size());
+            amountByArticle.forEach((articleId, amount) -> deltas.add(new StockJournalEntry.Delta(articleId, null, -amount)));
+            entry = append(deltas);
+        }
+        awaitFlush(entry.getSequence());
+        return Optional.empty();
+    }
+
+    /**
+     * Adds stock to the given articles, creating the missing ones, and returns once the change is on disk,
+     * or in MongoDB if the journal failed to force it.
+     *
+     * @param articles the articles with the stock to be added.
+     * @return the number of articles that did not exist before.
+     * @throws StockJournalFailedException if a flush failed before; nothing is added.
+     */
+    public int addStock(List<Inventory> articles) {
+        Map<String, StockJournalEntry.Delta> deltas = new LinkedHashMap<>();
+        for (Inventory article : articles) {
+            deltas.merge(article.getArticleId(),
+                    new StockJournalEntry.Delta(article.getArticleId(), article.getName(), article.getStock()),
+                    (previous, added) -> new StockJournalEntry.Delta(previous.getArticleId(), previous.getName(),
+                            Math.addExact(previous.getAmount(), added.getAmount())));
+        }
+        load(deltas.keySet());
+        StockJournalEntry entry;
+        int created = 0;
+        synchronized (lock) {
+            checkRunning();
+            for (String articleId : deltas.keySet()) {
+                if (!stock.containsKey(articleId)) {
+                    created++;
+                }
+            }
+            entry = append(new ArrayList<>(deltas.values()));
+        }
+        awaitFlush(entry.getSequence());
+        return created;
+    }
+
+    /**
+     * Retrieves the stock of the given articles as the journal sees it, including the changes not applied yet.
+     *
+     * @param articleIds the IDs of the articles.
+     * @return the stock keyed by article ID; articles that do not exist are missing.
+     */
+    public Map<String, Long> findStock(Collection<String> articleIds) {
+        load(articleIds);
+        Map<String, Long> found = new HashMap<>();
+        synchronized (lock) {
+            for (String articleId : articleIds) {
+                Long available = stock.get(articleId);
+                if (available != null) {
+                    found.put(articleId, available);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Loads the articles the journal has not touched yet. Their stock in MongoDB is final,
+     * as no entry for them can have been appended before.
+     */
+    private void load(Collection<String> articleIds) {
+        List<String> missing;
+        synchronized (lock) {
+            missing = articleIds.stream().filter(articleId -> !stock.containsKey(articleId)).toList();
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Iterable<Inventory> loaded = inventoryRepository.findAllById(missing);
+        synchronized (lock) {
+            // Another thread may have loaded and changed an article in the meantime
+            loaded.forEach(inventory -> stock.putIfAbsent(inventory.getArticleId(), inventory.getStock()));
+        }
+    }
+
+    /**
+     * Appends an entry and applies it to the in-memory stock. Must hold the lock.
+     */
+    private StockJournalEntry append(List<StockJournalEntry.Delta> deltas) {
+        StockJournalEntry entry = new StockJournalEntry(nextSequence, deltas);
+        JournalSegment segment = segments.getLast();
+        if (!segment.append(entry)) {
+            segment.force();
+            try {
+                segment = JournalSegment.create(journal.getDirectory(), nextSequence, segmentSize());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not start a new stock journal file", e);
+            }
+            segments.add(segment);
+            if (!segment.append(entry)) {
+                throw new IllegalArgumentException("Stock change of " + deltas.size() + " articles does not fit in a journal file");
+            }
+        }
+        nextSequence++;
+        for (StockJournalEntry.Delta delta : deltas) {
+            stock.merge(delta.getArticleId(), delta.getAmount(), Long::sum);
+        }
+        unflushed.add(entry);
+        return entry;
+    }
+
+    /**
+     * Waits until the entry is on disk, or, after a failed flush, until it is applied to MongoDB.
+     * The entry is already appended, so an interrupt is only passed on once it is acknowledged.
+     */
+    private void awaitFlush(long sequence) {
+        boolean interrupted = false;
+        try {
+            synchronized (flushed) {
+                while (flushedSequence < sequence && (flushFailure == null || appliedSequence < sequence)) {
+                    if (halted) {
+                        throw new IllegalStateException("The stock journal stopped before the change was flushed");
+                    }
+                    try {
+                        flushed.wait(journal.getFlushInterval().toMillis() + 1);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void flushContinuously() {
+        try {
+            while (running) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(journal.getFlushInterval().toNanos());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                flush();
+            }
+            if (!halted) {
+                flush();
+            }
+        } catch (RuntimeException | Error e) {
+            flushFailed(e);
+        }
+    }
+
+    /**
+     * Refuses further changes after a failed flush and hands the entries appended since to the applier,
+     * whose progress then acknowledges their callers.
+     */
+    void flushFailed(Throwable failure) {
+        logger.error("Flushing the stock journal failed, stock changes are refused until the application is restarted", failure);
+        flushFailure = failure;
+        synchronized (lock) {
+            unapplied.addAll(unflushed);
+            unflushed = new ArrayList<>();
+        }
+        synchronized (flushed) {
+            flushed.notifyAll();
+        }
+    }
+
+    /**
+     * Forces the appended entries to disk, acknowledges them and hands them to the applier.
+     */
+    private void flush() {
+        List<StockJournalEntry> entries;
+        JournalSegment segment;
+        synchronized (lock) {
+            if (unflushed.isEmpty()) {
+                return;
+            }
+            entries = unflushed;
+            unflushed = new ArrayList<>();
+            // Earlier segments were forced when the next one was started
+            segment = segments.getLast();
+        }
+        try {
+            segment.force();
+        } finally {
+            // Applied even if the force failed, as MongoDB is then the only way to make them durable
+            unapplied.addAll(entries);
+        }
+        synchronized (flushed) {
+            flushedSequence = entries.get(entries.size() - 1).getSequence();
+            flushed.notifyAll();
+        }
+    }
+
+    private void applyContinuously() {
+        List<StockJournalEntry> batch = new ArrayList<>(journal.getApplyBatchSize());
+        while (!halted) {
+            try {
+                StockJournalEntry first = unapplied.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (!running && !flusher.isAlive()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                unapplied.drainTo(batch, journal.getApplyBatchSize() - 1);
+                applyWithRetry(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Applies a batch until it succeeds. Applying entries again is harmless, so a failed batch is simply repeated.
+     */
+    private void applyWithRetry(List<StockJournalEntry> batch) throws InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                inventoryRepository.applyJournal(batch);
+                break;
+            } catch (RuntimeException e) {
+                if (halted) {
+                    throw new InterruptedException("Halted");
+                }
+                long backoff = Math.min(100L << Math.min(attempt - 1, 6), 5_000L);
+                logger.warn("Applying {} stock journal entries failed, retrying in {} ms", batch.size(), backoff, e);
+                TimeUnit.MILLISECONDS.sleep(backoff);
+            }
+        }
+        appliedSequence = batch.get(batch.size() - 1).getSequence();
+        if (flushFailure != null) {
+            synchronized (flushed) {
+                flushed.notifyAll();
+            }
+        }
+        Set<String> articleIds = new LinkedHashSet<>();
+        batch.forEach(entry -> entry.getDeltas().forEach(delta -> articleIds.add(delta.getArticleId())));
+        try {
+            articleIds.forEach(inventoryCache::evict);
+            projection.articlesChanged(articleIds);
+            availabilityEngine.articlesChanged(articleIds);
+        } catch (RuntimeException e) {
+            // The entries are applied; the readers catch up with the next change, and the applier must keep running
+            logger.warn("Could not refresh {} articles after applying the stock journal", articleIds.size(), e);
+        }
+        catalogVersion.increment();
+        deleteAppliedSegments();
+    }
+
+    private void deleteAppliedSegments() {
+        synchronized (lock) {
+            while (segments.size() > 1 && segments.getFirst().getLastSequence() <= appliedSequence) {
+                closeSegment(segments.removeFirst(), true);
+            }
+        }
+    }
+
+    /**
+     * Applies the entries of the journal files left by the previous run and deletes the files.
+     *
+     * @return the sequence of the last entry in the files, or 0 if there were none.
+     */
+    private long replay() throws IOException {
+        long lastSequence = 0;
+        int entries = 0;
+        List<Path> files = JournalSegment.list(journal.getDirectory());
+        for (Path file : files) {
+            List<StockJournalEntry> replayed = JournalSegment.read(file);
+            for (int start = 0; start < replayed.size(); start += journal.getApplyBatchSize()) {
+                inventoryRepository.applyJournal(replayed.subList(start, Math.min(start + journal.getApplyBatchSize(), replayed.size())));
+            }
+            if (!replayed.isEmpty()) {
+                lastSequence = replayed.get(replayed.size() - 1).getSequence();
+            }
+            entries += replayed.size();
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        if (!files.isEmpty()) {
+            inventoryCache.evictAll();
+            logger.info("Replayed {} stock journal entries from {} files up to sequence {}", entries, files.size(), lastSequence);
+        }
+        return lastSequence;
+    }
+
+    private void checkRunning() {
+        if (flushFailure != null) {
+            throw new StockJournalFailedException(flushFailure);
+        }
+        if (!running) {
+            throw new IllegalStateException("The stock journal is not running");
+        }
+    }
+
+    private int segmentSize() {
+        return (int) Math.min(journal.getSegmentSize().toBytes(), Integer.MAX_VALUE);
+    }
+
+    private static void closeSegment(JournalSegment segment, boolean delete) {
+        try {
+            if (delete) {
+                segment.delete();
+            } else {
+                segment.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Could not close the stock journal file {}", segment.getPath(), e);
+        }
+    }
+}
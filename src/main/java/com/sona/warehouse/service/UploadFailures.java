@@ -0,0 +1,38 @@
+package com.sona.warehouse.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Counts failed uploads by the exception that stopped them.
+ * Replaces {@link io.micrometer.core.annotation.Counted @Counted} on the upload methods, whose counters are tagged with the
+ * exception thrown: an upload reports a parse failure as an {@link UncheckedIOException} and a failure after saved batches
+ * as a {@link com.sona.warehouse.exceptions.PartialUploadException}, and both would hide the actual failure.
+ * The counters carry the same tags as those of {@code @Counted}.
+ */
+final class UploadFailures {
+
+    private UploadFailures() {
+    }
+
+    /**
+     * Counts a failed upload.
+     *
+     * @param meterRegistry the registry the counter is published to.
+     * @param name          the name of the counter.
+     * @param service       the class of the upload method.
+     * @param failure       the exception that stopped the upload, before it is wrapped for a partial upload.
+     */
+    static void count(MeterRegistry meterRegistry, String name, Class<?> service, RuntimeException failure) {
+        Throwable cause = failure instanceof UncheckedIOException && failure.getCause() != null ? failure.getCause() : failure;
+        Counter.builder(name)
+                .tag("class", service.getName())
+                .tag("method", "saveAll")
+                .tag("result", "failure")
+                .tag("exception", cause.getClass().getSimpleName())
+                .register(meterRegistry)
+                .increment();
+    }
+}
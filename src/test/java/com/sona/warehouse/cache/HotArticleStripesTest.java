@@ -0,0 +1,174 @@
+package com.sona.warehouse.cache;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.repository.InventoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HotArticleStripesTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private WarehouseProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getInventory().getHotArticles().getStripes().put("screw", 4);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void decrementStock_ShouldMoveTheStockIntoTheStripesWhenNoStripeHasEnough() {
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        AtomicBoolean rebalanced = new AtomicBoolean();
+        when(inventoryRepository.decrementStripe(eq("screw"), anyInt(), eq(2L))).thenAnswer(invocation -> rebalanced.get());
+        when(inventoryRepository.rebalanceStripes("screw", 4, 2L)).thenAnswer(invocation -> {
+            rebalanced.set(true);
+            return 100L;
+        });
+
+        assertEquals(Optional.empty(), cache.decrementStock(Map.of("screw", 2L)));
+        assertEquals(Optional.empty(), cache.decrementStock(Map.of("screw", 2L)));
+
+        // Every stripe was tried twice before the stock was moved, once by the first sale
+        verify(inventoryRepository, times(10)).decrementStripe(eq("screw"), anyInt(), eq(2L));
+        verify(inventoryRepository, times(1)).rebalanceStripes("screw", 4, 2L);
+        verify(inventoryRepository, never()).decrementStock(anyMap());
+        assertEquals(1.0, meterRegistry.get("warehouse.inventory.stripes.rebalances").counter().count());
+    }
+
+    @Test
+    void decrementStock_ShouldGiveBackTheOtherArticlesWhenAHotArticleIsSoldOut() {
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.decrementStock(Map.of("leg", 1L))).thenReturn(Optional.empty());
+        when(inventoryRepository.decrementStripe(eq("screw"), anyInt(), eq(5L))).thenReturn(false);
+        when(inventoryRepository.rebalanceStripes("screw", 4, 5L)).thenReturn(3L);
+
+        Optional<String> failedArticle = cache.decrementStock(new TreeMap<>(Map.of("leg", 1L, "screw", 5L)));
+
+        assertEquals(Optional.of("screw"), failedArticle);
+        verify(inventoryRepository, times(1)).incrementStock("leg", 1L);
+        verify(inventoryRepository, never()).incrementStock(eq("screw"), anyLong());
+    }
+
+    @Test
+    void decrementStock_ShouldGiveBackTheOtherArticlesWhenAHotArticleFails() {
+        properties.getInventory().getHotArticles().getStripes().put("bolt", 4);
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.decrementStock(Map.of("leg", 1L))).thenReturn(Optional.empty());
+        when(inventoryRepository.decrementStripe(eq("bolt"), anyInt(), eq(2L))).thenReturn(true);
+        RuntimeException failure = new DataAccessResourceFailureException("Connection lost");
+        when(inventoryRepository.decrementStripe(eq("screw"), anyInt(), eq(5L))).thenThrow(failure);
+        RuntimeException restoreFailure = new DataAccessResourceFailureException("Connection still lost");
+        when(inventoryRepository.incrementStock("leg", 1L)).thenThrow(restoreFailure);
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> cache.decrementStock(new TreeMap<>(Map.of("leg", 1L, "bolt", 2L, "screw", 5L))));
+
+        assertSame(failure, thrown);
+        assertArrayEquals(new Throwable[]{restoreFailure}, thrown.getSuppressed());
+        // The failed write of the leg does not keep the bolts from being given back
+        verify(inventoryRepository, times(1)).incrementStock("bolt", 2L);
+        verify(inventoryRepository, never()).incrementStock(eq("screw"), anyLong());
+    }
+
+    @Test
+    void findAllById_ShouldAddTheStripesToTheStockOfHotArticles() {
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.findAllById(List.of("screw"))).thenReturn(List.of(new Inventory("screw", "Screw", 2L)));
+        when(inventoryRepository.findStripedStock(List.of("screw"))).thenReturn(Map.of("screw", 40L));
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of(new Inventory("leg", "Leg", 10L)));
+
+        Map<String, Inventory> found = cache.findAllById(List.of("leg", "screw"));
+
+        assertEquals(42L, found.get("screw").getStock());
+        assertEquals(10L, found.get("leg").getStock());
+    }
+
+    @Test
+    void decrementStock_ShouldNeverOversellAHotArticleSoldConcurrently() throws Exception {
+        // 100 screws, all in the inventory document until the first sale moves them
+        long[] document = {100};
+        long[] stripes = new long[4];
+        when(inventoryRepository.decrementStripe(eq("screw"), anyInt(), eq(1L))).thenAnswer(invocation -> {
+            synchronized (stripes) {
+                int stripe = invocation.getArgument(1);
+                if (stripes[stripe] < 1) {
+                    return false;
+                }
+                stripes[stripe]--;
+                return true;
+            }
+        });
+        when(inventoryRepository.rebalanceStripes("screw", 4, 1L)).thenAnswer(invocation -> {
+            synchronized (stripes) {
+                long total = document[0];
+                document[0] = 0;
+                for (int stripe = 0; stripe < stripes.length; stripe++) {
+                    total += stripes[stripe];
+                }
+                for (int stripe = 0; stripe < stripes.length; stripe++) {
+                    stripes[stripe] = total / 4 + (stripe < total % 4 ? 1 : 0);
+                }
+                return total;
+            }
+        });
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+
+        // 16 threads each trying to sell 10 screws
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger sold = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 16; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 10; i++) {
+                    if (cache.decrementStock(Map.of("screw", 1L)).isEmpty()) {
+                        sold.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(100, sold.get());
+    }
+}
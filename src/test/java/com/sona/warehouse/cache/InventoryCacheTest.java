@@ -0,0 +1,86 @@
+package com.sona.warehouse.cache;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.repository.InventoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class InventoryCacheTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private WarehouseProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void findById_ShouldLoadArticleOnlyOnce() {
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.findById("1")).thenReturn(Optional.of(new Inventory("1", "Leg", 10L)));
+
+        cache.findById("1");
+        Optional<Inventory> cached = cache.findById("1");
+
+        assertTrue(cached.isPresent());
+        assertEquals(10L, cached.get().getStock());
+        verify(inventoryRepository, times(1)).findById("1");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void findById_ShouldReturnCopiesOfCachedArticles() {
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.findById("1")).thenReturn(Optional.of(new Inventory("1", "Leg", 10L)));
+
+        cache.findById("1").orElseThrow().setStock(0L);
+
+        assertEquals(10L, cache.findById("1").orElseThrow().getStock());
+    }
+
+    @Test
+    void findAllById_ShouldOnlyLoadMissingArticles() {
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.findById("1")).thenReturn(Optional.of(new Inventory("1", "Leg", 10L)));
+        when(inventoryRepository.findAllById(List.of("2"))).thenReturn(List.of(new Inventory("2", "Screw", 5L)));
+        cache.findById("1");
+
+        Map<String, Inventory> articles = cache.findAllById(List.of("1", "2"));
+
+        assertEquals(2, articles.size());
+        assertEquals(5L, articles.get("2").getStock());
+        verify(inventoryRepository, times(1)).findAllById(any());
+    }
+
+    @Test
+    void disabledCache_ShouldPassThroughToRepository() {
+        properties.getInventory().getCache().setEnabled(false);
+        InventoryCache cache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        when(inventoryRepository.findById("1")).thenReturn(Optional.of(new Inventory("1", "Leg", 10L)));
+
+        cache.findById("1");
+        cache.findById("1");
+
+        assertFalse(cache.isEnabled());
+        verify(inventoryRepository, times(2)).findById("1");
+    }
+}
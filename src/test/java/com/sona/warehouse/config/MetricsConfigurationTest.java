@@ -0,0 +1,144 @@
+package com.sona.warehouse.config;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.dto.ProductArticleDTO;
+import com.sona.warehouse.dto.ProductDTO;
+import com.sona.warehouse.exceptions.PartialUploadException;
+import com.sona.warehouse.exceptions.ProductSoldOutException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import com.sona.warehouse.service.AvailabilityCalculator;
+import com.sona.warehouse.service.AvailabilityEngine;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ConflictRetry;
+import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.SellableQuantityProjection;
+import com.sona.warehouse.service.StockDecrementBatcher;
+import com.sona.warehouse.service.StockJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MetricsConfigurationTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private WarehouseProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private ProductService productService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getInventory().getCache().setEnabled(false);
+        properties.getProduct().getProjection().setEnabled(false);
+        meterRegistry = new SimpleMeterRegistry();
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, meterRegistry);
+        AvailabilityCalculator availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+        CatalogVersion catalogVersion = new CatalogVersion(properties);
+        SellableQuantityProjection projection = new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion,
+                new ConflictRetry(properties, meterRegistry), properties);
+
+        // Proxy the service with the aspects, as the application context does
+        MetricsConfiguration configuration = new MetricsConfiguration();
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(
+                new ProductService(productRepository, inventoryCache, availabilityCalculator, projection,
+                new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties),
+                new StockDecrementBatcher(inventoryCache, properties, meterRegistry),
+                new StockJournal(inventoryRepository, inventoryCache, projection,
+                        new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties), catalogVersion, properties),
+                catalogVersion, new ConflictRetry(properties, meterRegistry), properties, meterRegistry));
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAspect(configuration.timedAspect(meterRegistry));
+        proxyFactory.addAspect(configuration.countedAspect(meterRegistry));
+        productService = proxyFactory.getProxy();
+    }
+
+    @Test
+    void sell_ShouldRecordTimerAndCountRejectionsByException() {
+        Product chair = Product.builder()
+                .id("1")
+                .name("Chair")
+                .price(10.0)
+                .containArticles(List.of(new Product.ArticleQuantity("leg", 4L)))
+                .build();
+        when(productRepository.findById("1")).thenReturn(Optional.of(chair));
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of(new Inventory("leg", "Leg", 3L)));
+
+        assertThrows(ProductSoldOutException.class, () -> productService.sell("1"));
+
+        assertEquals(1L, meterRegistry.get("warehouse.product.sell")
+                .tag("exception", "ProductSoldOutException").timer().count());
+        assertEquals(1.0, meterRegistry.get("warehouse.product.sell.failures")
+                .tag("exception", "ProductSoldOutException").counter().count());
+    }
+
+    @Test
+    void saveAll_ShouldCountAPartialUploadByTheFailureThatStoppedIt() {
+        properties.getProduct().getUpload().setBatchSize(1);
+        when(productRepository.upsertByName(anyList(), anyBoolean()))
+                .thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()));
+        ProductDTO chair = new ProductDTO("Chair", 10.0, List.of(new ProductArticleDTO("leg", "4")));
+        ProductDTO table = new ProductDTO("Table", 40.0, List.of(new ProductArticleDTO("leg", "four")));
+
+        assertThrows(PartialUploadException.class, () -> productService.saveAll(List.of(chair, table)));
+
+        assertEquals(1.0, meterRegistry.get("warehouse.product.upload.failures")
+                .tag("exception", "CustomNumberFormatException").counter().count());
+    }
+
+    @Test
+    void saveAll_ShouldCountAMalformedDocumentByItsParseError() {
+        Iterator<ProductDTO> products = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                throw new UncheckedIOException(new JsonParseException(null, "Unexpected character"));
+            }
+
+            @Override
+            public ProductDTO next() {
+                throw new UnsupportedOperationException();
+            }
+        };
+
+        assertThrows(UncheckedIOException.class, () -> productService.saveAll(products));
+
+        assertEquals(1.0, meterRegistry.get("warehouse.product.upload.failures")
+                .tag("exception", "JsonParseException").counter().count());
+    }
+
+    @Test
+    void findAll_ShouldRecordTimerWithoutFailures() {
+        when(productRepository.findAll()).thenReturn(List.of());
+
+        productService.findAll();
+        productService.findAll();
+
+        assertEquals(2L, meterRegistry.get("warehouse.product.find.all").tag("exception", "none").timer().count());
+        assertEquals(0, meterRegistry.find("warehouse.product.sell.failures").counters().size());
+    }
+}
@@ -0,0 +1,170 @@
+package com.sona.warehouse.controller;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonArrayIteratorTest {
+
+    private static final long LARGE_UPLOAD_ARTICLES = 4_000_000L; // ~300 MB of JSON
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void shouldReadArrayElementsAndSkipOtherFields() throws IOException {
+        String json = "{\"meta\":{\"source\":[1,2]},\"inventory\":[" +
+                "{\"art_id\":\"1\",\"name\":\"leg\",\"stock\":\"12\"}," +
+                "{\"art_id\":\"2\",\"name\":\"screw\",\"stock\":\"17\"}],\"ignored\":true}";
+
+        List<InventoryArticleDTO> articles = readAll(json);
+
+        assertEquals(2, articles.size());
+        assertEquals("1", articles.get(0).getArticleId());
+        assertEquals("17", articles.get(1).getStock());
+    }
+
+    @Test
+    void shouldReturnNoElementsForEmptyOrMissingArray() throws IOException {
+        assertTrue(readAll("{\"inventory\":[]}").isEmpty());
+        assertTrue(readAll("{\"inventory\":null}").isEmpty());
+        assertTrue(readAll("{\"products\":[{}]}").isEmpty());
+    }
+
+    @Test
+    void shouldFailOnMalformedElement() throws IOException {
+        String json = "{\"inventory\":[{\"art_id\":\"1\",\"stock\":\"12\"},{\"art_id\":}]}";
+
+        try (JsonArrayIterator<InventoryArticleDTO> articles = open(json)) {
+            assertEquals("1", articles.next().getArticleId());
+            assertThrows(UncheckedIOException.class, articles::next);
+        }
+    }
+
+    @Test
+    void shouldFailWhenDocumentIsNotAnObject() throws IOException {
+        try (JsonArrayIterator<InventoryArticleDTO> iterator = open("[{\"art_id\":\"1\"}]")) {
+            UncheckedIOException exception = assertThrows(UncheckedIOException.class, iterator::hasNext);
+            assertInstanceOf(JsonParseException.class, exception.getCause());
+        }
+    }
+
+    @Test
+    void shouldStreamLargeUploadInSmallHeap() throws Exception {
+        // Runs the upload in a separate JVM whose heap is far smaller than the generated document
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-Xmx32m", "-cp", System.getProperty("java.class.path"),
+                LargeUpload.class.getName(), Long.toString(LARGE_UPLOAD_ARTICLES))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+
+        assertTrue(process.waitFor(5, TimeUnit.MINUTES), "Large upload did not finish in time");
+        assertEquals(0, process.exitValue(), output);
+        assertTrue(output.contains("articles=" + LARGE_UPLOAD_ARTICLES), output);
+    }
+
+    private JsonArrayIterator<InventoryArticleDTO> open(String json) throws IOException {
+        return new JsonArrayIterator<>(objectMapper, new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+                "inventory", InventoryArticleDTO.class);
+    }
+
+    private List<InventoryArticleDTO> readAll(String json) throws IOException {
+        List<InventoryArticleDTO> result = new ArrayList<>();
+        try (JsonArrayIterator<InventoryArticleDTO> articles = open(json)) {
+            articles.forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    /**
+     * Streams a generated inventory document through a {@link JsonArrayIterator} and prints what it read.
+     */
+    static class LargeUpload {
+
+        public static void main(String[] args) throws IOException {
+            long count = Long.parseLong(args[0]);
+            GeneratedInventory input = new GeneratedInventory(count);
+            long articles = 0;
+            long stock = 0;
+            try (JsonArrayIterator<InventoryArticleDTO> iterator =
+                         new JsonArrayIterator<>(new ObjectMapper(), input, "inventory", InventoryArticleDTO.class)) {
+                while (iterator.hasNext()) {
+                    stock += Long.parseLong(iterator.next().getStock());
+                    articles++;
+                }
+            }
+            System.out.println("articles=" + articles + " stock=" + stock + " bytes=" + input.bytesRead
+                    + " maxHeap=" + Runtime.getRuntime().maxMemory());
+        }
+    }
+
+    /**
+     * An inventory JSON document generated on the fly, so that it never exists in memory as a whole.
+     */
+    static class GeneratedInventory extends InputStream {
+
+        private final long count;
+        private long next;
+        private byte[] buffer = "{\"inventory\":[".getBytes(StandardCharsets.UTF_8);
+        private int position;
+        private long bytesRead;
+
+        GeneratedInventory(long count) {
+            this.count = count;
+        }
+
+        @Override
+        public int read() {
+            if (position == buffer.length && !refill()) {
+                return -1;
+            }
+            bytesRead++;
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position == buffer.length && !refill()) {
+                return -1;
+            }
+            int read = Math.min(length, buffer.length - position);
+            System.arraycopy(buffer, position, target, offset, read);
+            position += read;
+            bytesRead += read;
+            return read;
+        }
+
+        private boolean refill() {
+            if (next > count) {
+                return false;
+            }
+            String chunk;
+            if (next == count) {
+                chunk = "]}";
+            } else {
+                chunk = (next == 0 ? "" : ",") + "{\"art_id\":\"" + next + "\",\"name\":\"generated article number "
+                        + next + "\",\"stock\":\"1\"}";
+            }
+            next++;
+            buffer = chunk.getBytes(StandardCharsets.UTF_8);
+            position = 0;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.sona.warehouse.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.dto.SellableProductDTO;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ProductService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ProductControllerTest {
+
+    @Mock
+    private ProductService productService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private WarehouseProperties properties;
+    private CatalogVersion catalogVersion;
+    private ProductController controller;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getProduct().setVersionMaxAge(Duration.ZERO);
+        catalogVersion = new CatalogVersion(properties);
+        controller = createController(catalogVersion);
+    }
+
+    @Test
+    void getAllProducts_ShouldAnswerNotModifiedWithoutReadingTheProducts() throws IOException {
+        List<SellableProductDTO> products = List.of(new SellableProductDTO("123", "Dining Chair", 20.0, List.of(), 2L));
+        when(productService.findAll()).thenReturn(products);
+        byte[] json = objectMapper.writeValueAsBytes(products);
+
+        ResponseEntity<?> first = controller.getAllProducts(request(null, new MockHttpServletResponse()));
+        String eTag = first.getHeaders().getETag();
+        assertArrayEquals(json, (byte[]) first.getBody());
+        assertEquals(catalogVersion.getETag(), eTag);
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        assertNull(controller.getAllProducts(request(eTag, response)));
+        assertEquals(304, response.getStatus());
+        verify(productService, times(1)).findAll();
+
+        // A sale makes the tag outdated
+        catalogVersion.increment();
+        ResponseEntity<?> changed = controller.getAllProducts(request(eTag, new MockHttpServletResponse()));
+        assertArrayEquals(json, (byte[]) changed.getBody());
+        assertEquals(catalogVersion.getETag(), changed.getHeaders().getETag());
+        verify(productService, times(2)).findAll();
+    }
+
+    @Test
+    void getAllProducts_ShouldNotTagProductsWrittenByOtherInstancesUnseen() {
+        properties.getMultiInstance().setEnabled(true);
+        controller = createController(new CatalogVersion(properties));
+        when(productService.findAll()).thenReturn(List.of());
+
+        ResponseEntity<?> response = controller.getAllProducts(request(null, new MockHttpServletResponse()));
+
+        assertEquals(List.of(), response.getBody());
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    void getAllProducts_ShouldEncodeTheProductsOncePerVersion() throws IOException {
+        List<SellableProductDTO> products = List.of(new SellableProductDTO("123", "Dining Chair", 20.0, List.of(), 2L));
+        when(productService.findAll()).thenReturn(products);
+        byte[] json = objectMapper.writeValueAsBytes(products);
+
+        ResponseEntity<?> plain = controller.getAllProducts(request(null, new MockHttpServletResponse()));
+        MockHttpServletRequest gzipRequest = new MockHttpServletRequest("GET", "/api/products");
+        gzipRequest.addHeader(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8");
+        ResponseEntity<?> gzip = controller.getAllProducts(new ServletWebRequest(gzipRequest, new MockHttpServletResponse()));
+
+        assertArrayEquals(json, (byte[]) plain.getBody());
+        assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("gzip", gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertArrayEquals(json, new GZIPInputStream(new ByteArrayInputStream((byte[]) gzip.getBody())).readAllBytes());
+        assertNotEquals(plain.getHeaders().getETag(), gzip.getHeaders().getETag());
+        verify(productService, times(1)).findAll();
+    }
+
+    @Test
+    void getAllProducts_ShouldNotTrustAVersionLongerThanItsMaxAge() throws InterruptedException {
+        // A change made directly in MongoDB is not seen without change streams
+        properties.getProduct().setVersionMaxAge(Duration.ofMillis(20));
+        controller = createController(new CatalogVersion(properties));
+        when(productService.findAll()).thenReturn(List.of());
+        String eTag = controller.getAllProducts(request(null, new MockHttpServletResponse())).getHeaders().getETag();
+
+        Thread.sleep(25);
+        ResponseEntity<?> response = controller.getAllProducts(request(eTag, new MockHttpServletResponse()));
+
+        assertNotNull(response);
+        assertNotEquals(eTag, response.getHeaders().getETag());
+        verify(productService, times(2)).findAll();
+    }
+
+    @Test
+    void get_ShouldServeThePreviousListingWhileAnotherRequestEncodes() throws Exception {
+        ProductListingCache listingCache =
+                new ProductListingCache(productService, catalogVersion, objectMapper, properties, new SimpleMeterRegistry());
+        CountDownLatch encoding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(productService.findAll()).thenReturn(List.of()).thenAnswer(invocation -> {
+            encoding.countDown();
+            release.await();
+            return List.of(new SellableProductDTO("123", "Dining Chair", 20.0, List.of(), 2L));
+        });
+        ProductListingCache.Listing previous = listingCache.get();
+
+        catalogVersion.increment();
+        CompletableFuture<ProductListingCache.Listing> encoder = CompletableFuture.supplyAsync(listingCache::get);
+        assertTrue(encoding.await(5, TimeUnit.SECONDS));
+        ProductListingCache.Listing served = listingCache.get();
+        release.countDown();
+
+        assertSame(previous, served);
+        assertEquals(catalogVersion.getETag(), encoder.get(5, TimeUnit.SECONDS).getETag(false));
+        assertSame(encoder.get(), listingCache.get());
+    }
+
+    @Test
+    void acceptsGzip_ShouldHonorAZeroQuality() {
+        assertTrue(ProductController.acceptsGzip("gzip, deflate"));
+        assertTrue(ProductController.acceptsGzip("deflate;q=1, GZIP ; q=0.5"));
+        assertFalse(ProductController.acceptsGzip("gzip;q=0"));
+        assertFalse(ProductController.acceptsGzip("identity"));
+        assertFalse(ProductController.acceptsGzip(null));
+    }
+
+    private ProductController createController(CatalogVersion catalogVersion) {
+        ProductListingCache listingCache =
+                new ProductListingCache(productService, catalogVersion, objectMapper, properties, new SimpleMeterRegistry());
+        return new ProductController(productService, catalogVersion, listingCache, objectMapper);
+    }
+
+    private static ServletWebRequest request(String ifNoneMatch, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/products");
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, response);
+    }
+}
@@ -0,0 +1,194 @@
+package com.sona.warehouse.integration;
+
+import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.PortBinding;
+import com.github.dockerjava.api.model.Ports;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.event.ArticleStockChangedEvent;
+import com.sona.warehouse.event.ProductDefinitionChangedEvent;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Writes the collections directly with the {@link MongoTemplate}, as another instance or an operator script would,
+ * and checks that the change streams keep the inventory cache and the sellable quantity projection up to date.
+ */
+@Testcontainers
+@SpringBootTest(properties = "warehouse.change-stream.enabled=true")
+@ExtendWith(SpringExtension.class)
+class ChangeStreamIntegrationTest {
+
+    protected static final int OUTPUT_MONGODB_PORT = 27018;
+    private static final int MONGODB_PORT = 27017;
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Container
+    private static final MongoDBContainer mongoDBContainer = createMongoDBContainer();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryCache inventoryCache;
+
+    @Autowired
+    private RecordedEvents recordedEvents;
+
+    private static MongoDBContainer createMongoDBContainer() {
+        return new MongoDBContainer(DockerImageName.parse("mongo:latest"))
+                .withExposedPorts(MONGODB_PORT)
+                .withCreateContainerCmdModifier(cmd -> cmd.withPortBindings(
+                        new PortBinding(Ports.Binding.bindPort(OUTPUT_MONGODB_PORT), new ExposedPort(MONGODB_PORT))
+                ));
+    }
+
+    @TestConfiguration
+    static class RecordedEventsConfiguration {
+
+        @Bean
+        RecordedEvents recordedEvents() {
+            return new RecordedEvents();
+        }
+    }
+
+    static class RecordedEvents {
+
+        final BlockingQueue<ArticleStockChangedEvent> articles = new LinkedBlockingQueue<>();
+        final BlockingQueue<ProductDefinitionChangedEvent> products = new LinkedBlockingQueue<>();
+
+        @EventListener
+        void articleStockChanged(ArticleStockChangedEvent event) {
+            articles.add(event);
+        }
+
+        @EventListener
+        void productDefinitionChanged(ProductDefinitionChangedEvent event) {
+            products.add(event);
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws InterruptedException {
+        productRepository.deleteAll();
+        inventoryRepository.deleteAll();
+        inventoryCache.evictAll();
+        // Let the deletions of the previous test drain before recording
+        Thread.sleep(500);
+        recordedEvents.articles.clear();
+        recordedEvents.products.clear();
+    }
+
+    @Test
+    void directStockUpdate_ShouldPublishEventAndRefreshCache() throws InterruptedException {
+        inventoryRepository.save(new Inventory("leg", "Leg", 10L));
+        assertEquals(new ArticleStockChangedEvent("leg", 10L), nextArticleEvent());
+        assertEquals(10L, inventoryCache.findById("leg").orElseThrow().getStock());
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is("leg")), new Update().inc("stock", -4), Inventory.class);
+
+        assertEquals(new ArticleStockChangedEvent("leg", 6L), nextArticleEvent());
+        assertEquals(6L, inventoryCache.findById("leg").orElseThrow().getStock());
+    }
+
+    @Test
+    void directArticleDeletion_ShouldPublishEventWithoutStock() throws InterruptedException {
+        inventoryRepository.save(new Inventory("leg", "Leg", 10L));
+        nextArticleEvent();
+
+        inventoryRepository.deleteById("leg");
+
+        assertEquals(new ArticleStockChangedEvent("leg", null), nextArticleEvent());
+    }
+
+    @Test
+    void directProductInsert_ShouldBeMaterializedByProjection() throws InterruptedException {
+        inventoryRepository.save(new Inventory("leg", "Leg", 10L));
+        nextArticleEvent();
+
+        Product chair = mongoTemplate.insert(Product.builder()
+                .name("Chair")
+                .price(20.0)
+                .containArticles(List.of(new Product.ArticleQuantity("leg", 4L)))
+                .build());
+
+        ProductDefinitionChangedEvent event = recordedEvents.products.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals(chair.getId(), event.getProductId());
+        assertEquals("Chair", event.getName());
+        assertEquals(2L, awaitValue(() -> productRepository.findById(chair.getId()).orElseThrow().getSellableQuantity(), 2L));
+
+        // The projection's own update of the sellable quantity is not a definition change
+        assertNull(recordedEvents.products.poll(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void directStockUpdate_ShouldRecalculateProductsContainingArticle() throws InterruptedException {
+        inventoryRepository.save(new Inventory("leg", "Leg", 10L));
+        Product chair = mongoTemplate.insert(Product.builder()
+                .name("Chair")
+                .price(20.0)
+                .containArticles(List.of(new Product.ArticleQuantity("leg", 4L)))
+                .build());
+        awaitValue(() -> productRepository.findById(chair.getId()).orElseThrow().getSellableQuantity(), 2L);
+
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is("leg")), new Update().set("stock", 40L), Inventory.class);
+
+        assertEquals(10L, awaitValue(() -> productRepository.findById(chair.getId()).orElseThrow().getSellableQuantity(), 10L));
+    }
+
+    private ArticleStockChangedEvent nextArticleEvent() throws InterruptedException {
+        ArticleStockChangedEvent event = recordedEvents.articles.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull(event, "No article event within " + TIMEOUT_SECONDS + " seconds");
+        return event;
+    }
+
+    private static <T> T awaitValue(Supplier<T> supplier, T expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        T value = supplier.get();
+        while (!Objects.equals(value, expected)) {
+            if (System.nanoTime() > deadline) {
+                fail("Expected " + expected + " within " + TIMEOUT_SECONDS + " seconds but was " + value);
+            }
+            Thread.sleep(50);
+            value = supplier.get();
+        }
+        return value;
+    }
+}
@@ -3,6 +3,10 @@ package com.sona.warehouse.integration;
 import com.github.dockerjava.api.model.ExposedPort;
 import com.github.dockerjava.api.model.PortBinding;
 import com.github.dockerjava.api.model.Ports;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.InventoryUploadResultDTO;
 import com.sona.warehouse.dto.ProductArticleDTO;
 import com.sona.warehouse.dto.ProductDTO;
 import com.sona.warehouse.dto.SellableProductDTO;
@@ -12,7 +16,9 @@ import com.sona.warehouse.model.Inventory;
 import com.sona.warehouse.model.Product;
 import com.sona.warehouse.repository.InventoryRepository;
 import com.sona.warehouse.repository.ProductRepository;
+import com.sona.warehouse.service.InventoryService;
 import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.SellableQuantityProjection;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -43,12 +49,21 @@ class IntegrationTest {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private InventoryService inventoryService;
+
     @Autowired
     private ProductRepository productRepository;
 
     @Autowired
     private InventoryRepository inventoryRepository;
 
+    @Autowired
+    private InventoryCache inventoryCache;
+
+    @Autowired
+    private SellableQuantityProjection projection;
+
     private static MongoDBContainer createMongoDBContainer() {
         return new MongoDBContainer(DockerImageName.parse("mongo:latest"))
                 .withExposedPorts(MONGODB_PORT)
@@ -61,6 +76,7 @@ class IntegrationTest {
     void setUp() {
         productRepository.deleteAll();
         inventoryRepository.deleteAll();
+        inventoryCache.evictAll(); // the tests write the inventory behind the cache's back
     }
 
     @Test
@@ -81,6 +97,55 @@ class IntegrationTest {
         assertEquals(20, products.get(0).getPrice());
     }
 
+    @Test
+    void saveAll_ShouldUpdateExistingProductByName() {
+        // Given
+        Product existing = productRepository.save(Product.builder()
+                .name("Dining Chair")
+                .price(10.0)
+                .containArticles(List.of(new Product.ArticleQuantity("1", 1L)))
+                .build());
+        ProductDTO productDTO = new ProductDTO("Dining Chair", 25.0, List.of(
+                new ProductArticleDTO("1", "4"),
+                new ProductArticleDTO("3", "1")
+        ));
+
+        // When
+        productService.saveAll(List.of(productDTO));
+
+        // Then
+        List<Product> products = productRepository.findAll();
+        assertEquals(1, products.size());
+        assertEquals(existing.getId(), products.get(0).getId());
+        assertEquals(25, products.get(0).getPrice());
+        assertEquals(2, products.get(0).getContainArticles().size());
+        assertEquals(4L, products.get(0).getContainArticles().get(0).getQuantity());
+    }
+
+    @Test
+    void saveAll_ShouldAddStockAndCreateMissingArticles() {
+        // Given
+        inventoryRepository.save(new Inventory("1", "Wood", 10L));
+        InventoryDTO inventoryDTO = new InventoryDTO();
+        inventoryDTO.setInventory(List.of(
+                createInventoryArticle("1", "Renamed wood", "5"),
+                createInventoryArticle("2", "Screws", "7"),
+                createInventoryArticle("3", "Legs", "4")
+        ));
+
+        // When
+        InventoryUploadResultDTO result = inventoryService.saveAll(inventoryDTO);
+
+        // Then
+        assertEquals(3, result.getArticles());
+        assertEquals(2, result.getInserted());
+        assertEquals(1, result.getUpdated());
+        Inventory wood = inventoryRepository.findById("1").orElseThrow();
+        assertEquals(15, wood.getStock()); // 10 + 5
+        assertEquals("Wood", wood.getName()); // name is only set on insert
+        assertEquals(7, inventoryRepository.findById("2").orElseThrow().getStock());
+    }
+
     @Test
     void findAll_ShouldReturnOnlyAvailableProducts() {
         // Given
@@ -95,6 +160,7 @@ class IntegrationTest {
 
         inventoryRepository.save(new Inventory("1", "Wood", 10L));
         inventoryRepository.save(new Inventory("2", "Screws", 2L)); // Not enough stock
+        projection.rebuild(); // the data was written behind the services' back
 
         // When
         List<SellableProductDTO> availableProducts = productService.findAll();
@@ -103,6 +169,31 @@ class IntegrationTest {
         assertEquals(0, availableProducts.size()); // Should be empty due to insufficient stock
     }
 
+    @Test
+    void findAll_ShouldFollowStockChangesOfUploadsAndSales() {
+        // Given
+        productService.saveAll(List.of(new ProductDTO("Table", 50.0, List.of(
+                new ProductArticleDTO("1", "5"),
+                new ProductArticleDTO("2", "3")
+        ))));
+        InventoryDTO inventoryDTO = new InventoryDTO();
+        inventoryDTO.setInventory(List.of(
+                createInventoryArticle("1", "Wood", "10"),
+                createInventoryArticle("2", "Screws", "9")
+        ));
+        inventoryService.saveAll(inventoryDTO);
+        assertEquals(2L, productService.findAll().get(0).getQuantity()); // min(10 / 5, 9 / 3)
+
+        // When
+        productService.sell(productService.findAll().get(0).getId());
+
+        // Then
+        List<SellableProductDTO> availableProducts = productService.findAll();
+        assertEquals(1, availableProducts.size());
+        assertEquals(1L, availableProducts.get(0).getQuantity()); // min(5 / 5, 6 / 3)
+        assertEquals(1L, productRepository.findAll().get(0).getSellableQuantity());
+    }
+
     @Test
     void sell_ShouldReduceInventory() {
         // Given
@@ -155,4 +246,12 @@ class IntegrationTest {
         // Then
         assertThrows(ProductSoldOutException.class, () -> productService.sell("123"));
     }
+
+    private InventoryArticleDTO createInventoryArticle(String articleId, String name, String stock) {
+        InventoryArticleDTO article = new InventoryArticleDTO();
+        article.setArticleId(articleId);
+        article.setName(name);
+        article.setStock(stock);
+        return article;
+    }
 }
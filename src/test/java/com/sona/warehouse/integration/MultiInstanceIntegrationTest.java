@@ -0,0 +1,186 @@
+package com.sona.warehouse.integration;
+
+import com.sona.warehouse.WarehouseApplication;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.OrderLineDTO;
+import com.sona.warehouse.exceptions.ProductSoldOutException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Starts several application contexts in multi-instance mode against the same MongoDB container,
+ * each with its own inventory cache, and sells and restocks the same articles through all of them at once.
+ */
+class MultiInstanceIntegrationTest {
+
+    private static final int INSTANCES = 3;
+    private static final int THREADS_PER_INSTANCE = 8;
+    private static final int ATTEMPTS_PER_THREAD = 50;
+
+    private static MongoDBContainer mongoDBContainer;
+    private static final List<ConfigurableApplicationContext> instances = new ArrayList<>();
+
+    private ProductRepository productRepository;
+    private InventoryRepository inventoryRepository;
+
+    @BeforeAll
+    static void startInstances() {
+        mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:latest"));
+        mongoDBContainer.start();
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(new SpringApplicationBuilder(WarehouseApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .run("--spring.data.mongodb.uri=" + mongoDBContainer.getReplicaSetUrl("warehouse"),
+                            "--warehouse.multi-instance.enabled=true",
+                            "--warehouse.change-stream.enabled=true"));
+        }
+    }
+
+    @AfterAll
+    static void stopInstances() {
+        instances.forEach(ConfigurableApplicationContext::close);
+        mongoDBContainer.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        productRepository = instances.get(0).getBean(ProductRepository.class);
+        inventoryRepository = instances.get(0).getBean(InventoryRepository.class);
+        productRepository.deleteAll();
+        inventoryRepository.deleteAll();
+    }
+
+    @Test
+    void sell_ShouldNeverOversellSharedArticlesAcrossInstances() throws Exception {
+        // Given 2 chairs and 3 tables worth of legs, shared by both products
+        inventoryRepository.save(new Inventory("leg", "Leg", 20L));
+        inventoryRepository.save(new Inventory("top", "Top", 100L));
+        Product chair = productRepository.save(createProduct("Chair", new Product.ArticleQuantity("leg", 4L)));
+        Product table = productRepository.save(createProduct("Table",
+                new Product.ArticleQuantity("leg", 4L), new Product.ArticleQuantity("top", 1L)));
+
+        // When every instance sells both products concurrently
+        AtomicInteger attempt = new AtomicInteger();
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger soldOut = new AtomicInteger();
+        hammer(instance -> {
+            try {
+                instance.productService().sell(attempt.incrementAndGet() % 2 == 0 ? chair.getId() : table.getId());
+                sold.incrementAndGet();
+            } catch (ProductSoldOutException e) {
+                soldOut.incrementAndGet();
+            }
+        });
+
+        // Then exactly 5 units were sold, whichever instance sold them
+        assertEquals(5, sold.get()); // 20 / 4
+        assertEquals(INSTANCES * THREADS_PER_INSTANCE * ATTEMPTS_PER_THREAD - 5, soldOut.get());
+        assertEquals(0L, inventoryRepository.findById("leg").orElseThrow().getStock());
+        Inventory top = inventoryRepository.findById("top").orElseThrow();
+        assertTrue(top.getStock() >= 95L && top.getStock() <= 100L);
+    }
+
+    @Test
+    void sellAndRestock_ShouldKeepEveryUnitAccountedFor() throws Exception {
+        // Given a single article sold in whole orders while other instances restock it
+        inventoryRepository.save(new Inventory("leg", "Leg", 0L));
+        Product chair = productRepository.save(createProduct("Chair", new Product.ArticleQuantity("leg", 1L)));
+
+        AtomicInteger sold = new AtomicInteger();
+        AtomicInteger restocked = new AtomicInteger();
+        AtomicInteger attempt = new AtomicInteger();
+        hammer(instance -> {
+            if (attempt.incrementAndGet() % 2 == 0) {
+                InventoryArticleDTO article = new InventoryArticleDTO();
+                article.setArticleId("leg");
+                article.setName("Leg");
+                article.setStock("1");
+                InventoryDTO inventory = new InventoryDTO();
+                inventory.setInventory(List.of(article));
+                instance.inventoryService().saveAll(inventory);
+                restocked.incrementAndGet();
+            } else {
+                try {
+                    instance.productService().sellOrder(List.of(new OrderLineDTO(chair.getId(), 1L)));
+                    sold.incrementAndGet();
+                } catch (ProductSoldOutException e) {
+                    // sold out until the next restock
+                }
+            }
+        });
+
+        // Then the stock is exactly what was added minus what was sold
+        long stock = inventoryRepository.findById("leg").orElseThrow().getStock();
+        assertTrue(stock >= 0);
+        assertEquals(restocked.get() - sold.get(), stock);
+    }
+
+    /**
+     * Runs the action concurrently on {@link #THREADS_PER_INSTANCE} threads per instance, all released at once.
+     */
+    private void hammer(InstanceAction action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(INSTANCES * THREADS_PER_INSTANCE);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (ConfigurableApplicationContext context : instances) {
+            Instance instance = new Instance(context.getBean(ProductService.class), context.getBean(InventoryService.class));
+            for (int thread = 0; thread < THREADS_PER_INSTANCE; thread++) {
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                        action.run(instance);
+                    }
+                    return null;
+                }));
+            }
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+    }
+
+    private static Product createProduct(String name, Product.ArticleQuantity... articles) {
+        return Product.builder()
+                .name(name)
+                .price(10.0)
+                .containArticles(List.of(articles))
+                .build();
+    }
+
+    private record Instance(ProductService productService, InventoryService inventoryService) {
+    }
+
+    @FunctionalInterface
+    private interface InstanceAction {
+        void run(Instance instance);
+    }
+}
@@ -0,0 +1,136 @@
+package com.sona.warehouse.integration;
+
+import com.sona.warehouse.WarehouseApplication;
+import com.sona.warehouse.dto.InventoryArticleDTO;
+import com.sona.warehouse.dto.InventoryDTO;
+import com.sona.warehouse.dto.ProductArticleDTO;
+import com.sona.warehouse.dto.ProductDTO;
+import com.sona.warehouse.service.InventoryService;
+import com.sona.warehouse.service.ProductService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.utility.DockerImageName;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the throughput of {@code GET /api/products} between the servlet stack and the {@code reactive} profile,
+ * with 1000 concurrent clients against the same MongoDB container.
+ * It is a measurement rather than a check and takes a while, so it only runs when asked for:
+ * {@code ./mvnw test -Dtest=ReactiveLoadTest -Dloadtest=true}
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+class ReactiveLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveLoadTest.class);
+
+    private static final int CLIENTS = 1000;
+    private static final int REQUESTS_PER_CLIENT = 5;
+    private static final int CATALOG_SIZE = 200;
+
+    private static MongoDBContainer mongoDBContainer;
+
+    @BeforeAll
+    static void startMongo() {
+        mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:latest"));
+        mongoDBContainer.start();
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        mongoDBContainer.stop();
+    }
+
+    @Test
+    void compareThroughputOfServletAndReactiveStacks() {
+        double servlet = measure("default", true);
+        double reactive = measure("reactive", false);
+
+        logger.info("GET /api/products with {} concurrent clients: servlet {} requests/s, reactive {} requests/s",
+                CLIENTS, String.format("%.0f", servlet), String.format("%.0f", reactive));
+    }
+
+    private double measure(String profile, boolean seed) {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(WarehouseApplication.class)
+                .profiles(profile)
+                .run("--server.port=0", "--spring.data.mongodb.uri=" + mongoDBContainer.getReplicaSetUrl("warehouse"))) {
+            if (seed) {
+                seed(context);
+            }
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            ConnectionProvider connections = ConnectionProvider.builder("load-test")
+                    .maxConnections(CLIENTS)
+                    .pendingAcquireMaxCount(-1)
+                    .build();
+            WebClient client = WebClient.builder()
+                    .baseUrl("http://localhost:" + port)
+                    .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                    .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 * 1024 * 1024))
+                    .build();
+
+            // Warm up both the server and the client before measuring
+            run(client, CLIENTS);
+
+            long start = System.nanoTime();
+            int requests = CLIENTS * REQUESTS_PER_CLIENT;
+            int failures = run(client, requests);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            connections.dispose();
+
+            assertEquals(0, failures, "Failed requests with profile " + profile);
+            return requests / seconds;
+        }
+    }
+
+    /**
+     * Sends the requests with {@link #CLIENTS} of them in flight at any time and returns how many failed.
+     */
+    private int run(WebClient client, int requests) {
+        AtomicInteger failures = new AtomicInteger();
+        Flux.range(0, requests)
+                .flatMap(i -> client.get().uri("/api/products")
+                        .retrieve()
+                        .toBodilessEntity()
+                        .doOnError(e -> failures.incrementAndGet())
+                        .onErrorResume(e -> Mono.empty()), CLIENTS)
+                .blockLast(Duration.ofMinutes(10));
+        return failures.get();
+    }
+
+    private void seed(ConfigurableApplicationContext context) {
+        List<InventoryArticleDTO> articles = new ArrayList<>();
+        List<ProductDTO> products = new ArrayList<>();
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            InventoryArticleDTO article = new InventoryArticleDTO();
+            article.setArticleId(Integer.toString(i));
+            article.setName("article " + i);
+            article.setStock("1000");
+            articles.add(article);
+            products.add(new ProductDTO("product " + i, 10.0, List.of(
+                    new ProductArticleDTO(Integer.toString(i), "2"),
+                    new ProductArticleDTO(Integer.toString((i + 1) % CATALOG_SIZE), "3"))));
+        }
+        InventoryDTO inventory = new InventoryDTO();
+        inventory.setInventory(articles);
+        context.getBean(InventoryService.class).saveAll(inventory);
+        context.getBean(ProductService.class).saveAll(products);
+    }
+}
@@ -0,0 +1,187 @@
+package com.sona.warehouse.repository;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.ProductSoldOutException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.service.AvailabilityCalculator;
+import com.sona.warehouse.service.AvailabilityEngine;
+import com.sona.warehouse.service.CatalogVersion;
+import com.sona.warehouse.service.ConflictRetry;
+import com.sona.warehouse.service.ProductService;
+import com.sona.warehouse.service.SellableQuantityProjection;
+import com.sona.warehouse.service.StockDecrementBatcher;
+import com.sona.warehouse.service.StockJournal;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@DataMongoTest
+@ExtendWith(SpringExtension.class)
+class InventoryRepositoryConcurrencyTest extends BaseRepositoryTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(InventoryRepositoryConcurrencyTest.class);
+
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS_PER_THREAD = 200;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    private ProductService productService;
+
+    @Override
+    protected void clearDatabase() {
+        inventoryRepository.deleteAll();
+        productRepository.deleteAll();
+    }
+
+    @BeforeEach
+    void createService() {
+        WarehouseProperties properties = new WarehouseProperties();
+        properties.getProduct().getProjection().setEnabled(false);
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+        AvailabilityCalculator availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+        CatalogVersion catalogVersion = new CatalogVersion(properties);
+        SellableQuantityProjection projection = new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion,
+                new ConflictRetry(properties, new SimpleMeterRegistry()), properties);
+        productService = new ProductService(productRepository, inventoryCache, availabilityCalculator, projection,
+                new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties),
+                new StockDecrementBatcher(inventoryCache, properties, new SimpleMeterRegistry()),
+                new StockJournal(inventoryRepository, inventoryCache, projection,
+                        new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties), catalogVersion, properties),
+                catalogVersion, new ConflictRetry(properties, new SimpleMeterRegistry()), properties, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void decrementStock_ShouldOnlySucceedWithEnoughStock() {
+        // Given an article with 5 units in stock
+        inventoryRepository.save(new Inventory("1", "Leg", 5L));
+
+        // When decrementing more than the stock and then exactly the stock
+        boolean tooMuch = inventoryRepository.decrementStock("1", 6L).isPresent();
+        Inventory updated = inventoryRepository.decrementStock("1", 5L).orElse(null);
+
+        // Then only the second update is applied
+        assertFalse(tooMuch);
+        assertNotNull(updated);
+        assertEquals(0L, updated.getStock());
+        assertFalse(inventoryRepository.decrementStock("missing", 1L).isPresent());
+    }
+
+    @Test
+    void decrementStockOfOrder_ShouldApplyAllOrNothing() {
+        // Given three articles, the last with too little stock
+        inventoryRepository.save(new Inventory("a", "Leg", 10L));
+        inventoryRepository.save(new Inventory("b", "Seat", 10L));
+        inventoryRepository.save(new Inventory("c", "Screw", 1L));
+        Map<String, Long> order = new LinkedHashMap<>();
+        order.put("a", 4L);
+        order.put("b", 2L);
+
+        // When decrementing an order that fits, one that does not, and one with a missing article
+        Optional<String> fits = inventoryRepository.decrementStock(order);
+        order.put("c", 2L);
+        Optional<String> tooMuch = inventoryRepository.decrementStock(order);
+        Optional<String> missing = inventoryRepository.decrementStock(Map.of("a", 1L, "missing", 1L));
+
+        // Then only the first order is applied and nothing is left behind by the others
+        assertTrue(fits.isEmpty());
+        assertEquals(Optional.of("c"), tooMuch);
+        assertEquals(Optional.of("missing"), missing);
+        assertEquals(6L, inventoryRepository.findById("a").orElseThrow().getStock());
+        assertEquals(8L, inventoryRepository.findById("b").orElseThrow().getStock());
+        assertEquals(1L, inventoryRepository.findById("c").orElseThrow().getStock());
+        assertFalse(inventoryRepository.existsById("missing"));
+    }
+
+    @Test
+    void concurrentSales_ShouldNeverDriveStockNegative() throws Exception {
+        // Given two products sharing the screw article
+        inventoryRepository.save(new Inventory("leg", "Leg", 400L));
+        inventoryRepository.save(new Inventory("top", "Table top", 50L));
+        inventoryRepository.save(new Inventory("screw", "Screw", 1000L));
+        Product chair = productRepository.save(createProduct("Chair",
+                new Product.ArticleQuantity("leg", 4L), new Product.ArticleQuantity("screw", 8L)));
+        Product table = productRepository.save(createProduct("Table",
+                new Product.ArticleQuantity("top", 1L), new Product.ArticleQuantity("leg", 4L), new Product.ArticleQuantity("screw", 12L)));
+
+        // When many threads sell both products at the same time
+        AtomicInteger chairsSold = new AtomicInteger();
+        AtomicInteger tablesSold = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            boolean sellChairs = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < ATTEMPTS_PER_THREAD; i++) {
+                    try {
+                        productService.sell(sellChairs ? chair.getId() : table.getId());
+                        (sellChairs ? chairsSold : tablesSold).incrementAndGet();
+                    } catch (ProductSoldOutException e) {
+                        // expected once the shared articles run out
+                    }
+                }
+                return null;
+            }));
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Then the stock never goes negative and matches exactly what was sold
+        long legs = inventoryRepository.findById("leg").orElseThrow().getStock();
+        long tops = inventoryRepository.findById("top").orElseThrow().getStock();
+        long screws = inventoryRepository.findById("screw").orElseThrow().getStock();
+        assertTrue(legs >= 0 && tops >= 0 && screws >= 0);
+        assertEquals(400L - 4L * chairsSold.get() - 4L * tablesSold.get(), legs);
+        assertEquals(50L - tablesSold.get(), tops);
+        assertEquals(1000L - 8L * chairsSold.get() - 12L * tablesSold.get(), screws);
+
+        int attempts = THREADS * ATTEMPTS_PER_THREAD;
+        logger.info("Sold {} chairs and {} tables in {} attempts over {} s ({} sell calls/s)",
+                chairsSold.get(), tablesSold.get(), attempts, String.format("%.2f", seconds),
+                String.format("%.0f", attempts / seconds));
+    }
+
+    private Product createProduct(String name, Product.ArticleQuantity... articles) {
+        return Product.builder()
+                .name(name)
+                .price(10.0)
+                .containArticles(List.of(articles))
+                .build();
+    }
+}
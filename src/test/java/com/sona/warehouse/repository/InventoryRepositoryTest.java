@@ -1,14 +1,17 @@
 package com.sona.warehouse.repository;
 
 import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.StockJournalEntry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -53,6 +56,20 @@ class InventoryRepositoryTest extends BaseRepositoryTest {
         assertEquals(20, updatedArticle.getStock());
     }
 
+    @Test
+    void saveStaleInventoryItem_ShouldNotOverwriteConcurrentStockUpdate() {
+        // Given an inventory item read before a concurrent sale
+        Inventory article = inventoryRepository.save(new Inventory("leg", "Leg", 10L));
+        inventoryRepository.decrementStock("leg", 4L);
+
+        // When saving the stale copy
+        article.setStock(20L);
+
+        // Then the version check rejects it and the sale is kept
+        assertThrows(OptimisticLockingFailureException.class, () -> inventoryRepository.save(article));
+        assertEquals(6L, inventoryRepository.findById("leg").orElseThrow().getStock());
+    }
+
     @Test
     void deleteInventoryItem() {
         // Given an inventory item
@@ -90,6 +107,48 @@ class InventoryRepositoryTest extends BaseRepositoryTest {
         assertNull(foundArticle);
     }
 
+    @Test
+    void applyJournal_ShouldSkipEntriesAppliedBefore() {
+        // Given an article and a journal selling from it and creating another one
+        inventoryRepository.save(new Inventory("1", "Leg", 10L));
+        List<StockJournalEntry> entries = List.of(
+                new StockJournalEntry(1, List.of(new StockJournalEntry.Delta("1", null, -4L))),
+                new StockJournalEntry(2, List.of(new StockJournalEntry.Delta("1", null, -1L),
+                        new StockJournalEntry.Delta("2", "Seat", 3L))));
+
+        // When the journal is applied, and once more as after a crash
+        int applied = inventoryRepository.applyJournal(entries);
+        int reapplied = inventoryRepository.applyJournal(entries);
+
+        // Then every delta is applied exactly once
+        assertEquals(3, applied);
+        assertEquals(0, reapplied);
+        assertEquals(5L, inventoryRepository.findById("1").orElseThrow().getStock());
+        assertEquals(3L, inventoryRepository.findById("2").orElseThrow().getStock());
+        assertEquals(2L, inventoryRepository.findMaxJournalSequence());
+    }
+
+    @Test
+    void rebalanceStripes_ShouldMoveTheWholeStockIntoTheStripes() {
+        // Given a hot article with stock in its document and in a stripe beyond the current count
+        inventoryRepository.save(new Inventory("screw", "Screw", 10L));
+        inventoryRepository.rebalanceStripes("screw", 5, 1L);
+        inventoryRepository.incrementStock("screw", 3L);
+
+        // When the stock is moved into 4 stripes, and a sale needs more than an even share
+        long total = inventoryRepository.rebalanceStripes("screw", 4, 1L);
+        boolean decremented = inventoryRepository.decrementStripe("screw", 3, 3L);
+        long concentrated = inventoryRepository.rebalanceStripes("screw", 4, 10L);
+
+        // Then no stock is lost, and the stock is moved to the first stripe when an even share is too small
+        assertEquals(13L, total);
+        assertTrue(decremented);
+        assertEquals(10L, concentrated);
+        assertEquals(Map.of("screw", 10L), inventoryRepository.findStripedStock(List.of("screw")));
+        assertTrue(inventoryRepository.decrementStripe("screw", 0, 10L));
+        assertEquals(0L, inventoryRepository.findById("screw").orElseThrow().getStock());
+    }
+
     private Inventory createInventoryItem(String name, Long stock) {
         return Inventory.builder()
                 .name(name)
@@ -1,23 +1,31 @@
 package com.sona.warehouse.repository;
 
+import com.mongodb.bulk.BulkWriteResult;
 import com.sona.warehouse.model.Product;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @Testcontainers
-@DataMongoTest
+@DataMongoTest(properties = "spring.data.mongodb.auto-index-creation=true")
 @ExtendWith(SpringExtension.class)
 class ProductRepositoryTest extends BaseRepositoryTest {
 
+    private static final Logger logger = LoggerFactory.getLogger(ProductRepositoryTest.class);
+
     @Autowired
     ProductRepository productRepository;
 
@@ -135,4 +143,70 @@ class ProductRepositoryTest extends BaseRepositoryTest {
                 ))
                 .build();
     }
+
+    @Test
+    void saveDuplicateName_ShouldBeRejectedByUniqueIndex() {
+        // Given a product
+        productRepository.save(createProduct("Sofa", 300));
+
+        // When saving another product with the same name
+        // Then the unique index on name rejects it
+        assertThrows(DuplicateKeyException.class, () -> productRepository.save(createProduct("Sofa", 250)));
+    }
+
+    @Test
+    void upsertByName_ShouldUpsertLargeCatalogInBulk() {
+        // Given an existing catalog of 50k products
+        int catalogSize = 50_000;
+        productRepository.upsertByName(createCatalog(0, catalogSize), false);
+
+        // When uploading 50k products, half of which already exist
+        long start = System.nanoTime();
+        List<Product> upload = createCatalog(catalogSize / 2, catalogSize);
+        long updated = 0;
+        long inserted = 0;
+        for (int from = 0; from < upload.size(); from += 1000) {
+            BulkWriteResult batch = productRepository.upsertByName(upload.subList(from, from + 1000), true);
+            updated += batch.getMatchedCount();
+            inserted += batch.getUpserts().size();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Then existing products are updated and new ones created
+        assertEquals(catalogSize / 2, updated);
+        assertEquals(catalogSize / 2, inserted);
+        assertEquals(catalogSize + catalogSize / 2, productRepository.count());
+        logger.info("Upserted {} products on top of a {} product catalog in {} ms", upload.size(), catalogSize, elapsedMillis);
+    }
+
+    @Test
+    void updateSellableQuantities_ShouldSkipProductsWrittenSinceTheyWereRead() {
+        // Given a product read by two refreshes
+        productRepository.save(createProduct("Stool", 40));
+        Product older = productRepository.findByName("Stool").orElseThrow();
+        Product newer = productRepository.findByName("Stool").orElseThrow();
+
+        // When the refresh that read later stock writes first
+        int newerWritten = productRepository.updateSellableQuantities(List.of(newer), Map.of(newer.getId(), 1L));
+        int olderWritten = productRepository.updateSellableQuantities(List.of(older), Map.of(older.getId(), 2L));
+
+        // Then the other one can no longer overwrite its quantity
+        assertEquals(1, newerWritten);
+        assertEquals(0, olderWritten);
+        assertEquals(1L, productRepository.findByName("Stool").orElseThrow().getSellableQuantity());
+    }
+
+    private List<Product> createCatalog(int firstIndex, int size) {
+        List<Product> catalog = new ArrayList<>(size);
+        for (int i = firstIndex; i < firstIndex + size; i++) {
+            catalog.add(Product.builder()
+                    .name("Product " + i)
+                    .price((double) i)
+                    .containArticles(List.of(
+                            new Product.ArticleQuantity(Integer.toString(i % 100), 4L),
+                            new Product.ArticleQuantity(Integer.toString(i % 7), 1L)))
+                    .build());
+        }
+        return catalog;
+    }
 }
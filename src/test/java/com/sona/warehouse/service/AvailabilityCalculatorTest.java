@@ -0,0 +1,146 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.InventoryLookupTimeoutException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityCalculatorTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private WarehouseProperties properties;
+    private AvailabilityCalculator availabilityCalculator;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getInventory().getCache().setEnabled(false);
+        properties.getInventory().setLookupConcurrency(2);
+        properties.getInventory().getParallelLookup().setEnabled(true);
+        properties.getInventory().getParallelLookup().setTimeout(Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        availabilityCalculator.shutdown();
+    }
+
+    private void createCalculator() {
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+        availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+    }
+
+    @Test
+    void findQuantity_ShouldResolveArticleGroupsConcurrently() {
+        // Each group waits for the other one, so the lookups only complete if they run at the same time
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        Map<String, Long> stock = Map.of("leg", 10L, "seat", 3L, "back", 6L, "screw", 100L);
+        when(inventoryRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            bothStarted.await();
+            Collection<String> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> new Inventory(id, id, stock.get(id))).toList();
+        });
+        createCalculator();
+
+        long quantity = availabilityCalculator.findQuantity(createChair());
+
+        assertEquals(2L, quantity); // min(10 / 4, 3 / 1, 6 / 1, 100 / 8)
+        verify(inventoryRepository, times(2)).findAllById(anyCollection());
+    }
+
+    @Test
+    void findQuantity_ShouldReturnZeroForAProductWithoutArticles() {
+        createCalculator();
+        Product empty = Product.builder().id("1").name("Nothing").containArticles(List.of()).build();
+
+        // As with the availability engine, a product that contains nothing cannot be made
+        assertEquals(0L, availabilityCalculator.findQuantity(empty));
+        assertEquals(0L, availabilityCalculator.findQuantity(empty, Map.of()));
+    }
+
+    @Test
+    void findQuantity_ShouldReturnZeroAsSoonAsAnArticleIsExhausted() {
+        // The group with the seat never completes, the exhausted leg alone decides the result
+        CountDownLatch released = new CountDownLatch(1);
+        when(inventoryRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            if (ids.contains("leg")) {
+                return List.of(new Inventory("leg", "Leg", 3L), new Inventory("seat", "Seat", 3L));
+            }
+            released.await();
+            return List.of();
+        });
+        createCalculator();
+
+        try {
+            assertEquals(0L, availabilityCalculator.findQuantity(createChair()));
+        } finally {
+            released.countDown();
+        }
+    }
+
+    @Test
+    void findQuantity_ShouldFailWhenTheLookupsTimeOut() {
+        properties.getInventory().getParallelLookup().setTimeout(Duration.ofMillis(50));
+        CountDownLatch released = new CountDownLatch(1);
+        when(inventoryRepository.findAllById(anyCollection())).thenAnswer(invocation -> {
+            released.await();
+            return List.of();
+        });
+        createCalculator();
+
+        try {
+            assertThrows(InventoryLookupTimeoutException.class, () -> availabilityCalculator.findQuantity(createChair()));
+        } finally {
+            released.countDown();
+        }
+    }
+
+    @Test
+    void findQuantity_ShouldUseASingleQueryWhenParallelLookupIsDisabled() {
+        properties.getInventory().getParallelLookup().setEnabled(false);
+        when(inventoryRepository.findAllById(anyCollection())).thenReturn(List.of(
+                new Inventory("leg", "Leg", 10L), new Inventory("seat", "Seat", 3L),
+                new Inventory("back", "Back", 6L), new Inventory("screw", "Screw", 100L)));
+        createCalculator();
+
+        assertEquals(2L, availabilityCalculator.findQuantity(createChair()));
+        verify(inventoryRepository, times(1)).findAllById(anyCollection());
+    }
+
+    private Product createChair() {
+        return Product.builder()
+                .id("1")
+                .name("Chair")
+                .price(20.0)
+                .containArticles(List.of(
+                        new Product.ArticleQuantity("leg", 4L),
+                        new Product.ArticleQuantity("seat", 1L),
+                        new Product.ArticleQuantity("back", 1L),
+                        new Product.ArticleQuantity("screw", 8L)))
+                .build();
+    }
+}
@@ -0,0 +1,142 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.event.ArticleStockChangedEvent;
+import com.sona.warehouse.event.ProductDefinitionChangedEvent;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilityEngineTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private WarehouseProperties properties;
+    private CatalogVersion catalogVersion;
+    private AvailabilityEngine availabilityEngine;
+
+    private final Product chair = createProduct("1", "Chair", new Product.ArticleQuantity("leg", 4L));
+    private final Product table = createProduct("2", "Table",
+            new Product.ArticleQuantity("leg", 4L), new Product.ArticleQuantity("top", 1L));
+    private final Product stool = createProduct("3", "Stool", new Product.ArticleQuantity("seat", 1L));
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getProduct().getEngine().setEnabled(true);
+        catalogVersion = new CatalogVersion(properties);
+        availabilityEngine = new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties);
+        when(productRepository.findAll()).thenReturn(List.of(chair, table, stool));
+        when(inventoryRepository.findAll()).thenReturn(List.of(
+                new Inventory("leg", "Leg", 12L), new Inventory("top", "Top", 2L), new Inventory("screw", "Screw", 100L)));
+    }
+
+    @Test
+    void forEachSellable_ShouldSkipProductsWithMissingOrInsufficientArticles() {
+        // Stool needs a seat, which is not in the inventory
+        assertEquals(Map.of(chair, 3L, table, 2L), sellable());
+    }
+
+    @Test
+    void forEachSellable_ShouldCalculateTheSameQuantitiesInParallel() {
+        properties.getProduct().getEngine().setParallelThreshold(1);
+
+        assertEquals(Map.of(chair, 3L, table, 2L), sellable());
+        // The second calculation reuses the buffer of the first
+        assertEquals(Map.of(chair, 3L, table, 2L), sellable());
+    }
+
+    @Test
+    void articlesChanged_ShouldPatchTheStockWithoutRebuilding() {
+        sellable();
+        when(inventoryRepository.findAllById(List.of("leg", "seat"))).thenReturn(List.of(
+                new Inventory("leg", "Leg", 4L), new Inventory("seat", "Seat", 1L)));
+
+        availabilityEngine.articlesChanged(List.of("leg", "seat"));
+
+        assertEquals(Map.of(chair, 1L, table, 1L, stool, 1L), sellable());
+        verify(productRepository, times(1)).findAll();
+    }
+
+    @Test
+    void rebuild_ShouldReplayTheArticlesPatchedWhileItReadTheStock() {
+        sellable();
+        availabilityEngine.productsChanged();
+        when(inventoryRepository.findAllById(anyIterable())).thenReturn(List.of(new Inventory("leg", "Leg", 4L)));
+        // A sale writes and patches the leg after the rebuild read its previous stock
+        when(inventoryRepository.findAll()).thenAnswer(invocation -> {
+            List<Inventory> previous = List.of(new Inventory("leg", "Leg", 12L), new Inventory("top", "Top", 2L));
+            availabilityEngine.articlesChanged(List.of("leg"));
+            return previous;
+        });
+
+        assertEquals(Map.of(chair, 1L, table, 1L), sellable());
+        assertEquals(2L, catalogVersion.get());
+    }
+
+    @Test
+    void articleStockChanged_ShouldTreatDeletedArticlesAsOutOfStock() {
+        sellable();
+
+        availabilityEngine.articleStockChanged(new ArticleStockChangedEvent("top", null));
+
+        assertEquals(Map.of(chair, 3L), sellable());
+    }
+
+    @Test
+    void articleStockChanged_ShouldAddTheStripesOfHotArticles() {
+        properties.getInventory().getHotArticles().getStripes().put("leg", 4);
+        sellable();
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of(new Inventory("leg", "Leg", 0L)));
+        when(inventoryRepository.findStripedStock(List.of("leg"))).thenReturn(Map.of("leg", 8L));
+
+        // The stock of the document was moved to the stripes
+        availabilityEngine.articleStockChanged(new ArticleStockChangedEvent("leg", 0L));
+
+        assertEquals(Map.of(chair, 2L, table, 2L), sellable());
+    }
+
+    @Test
+    void productDefinitionChanged_ShouldRebuildOnTheNextRead() {
+        sellable();
+
+        availabilityEngine.productDefinitionChanged(new ProductDefinitionChangedEvent("4", "Bench"));
+        sellable();
+
+        verify(productRepository, times(2)).findAll();
+        verify(inventoryRepository, times(2)).findAll();
+    }
+
+    private Map<Product, Long> sellable() {
+        Map<Product, Long> sellable = new LinkedHashMap<>();
+        availabilityEngine.forEachSellable(sellable::put);
+        return sellable;
+    }
+
+    private static Product createProduct(String id, String name, Product.ArticleQuantity... articles) {
+        return Product.builder()
+                .id(id)
+                .name(name)
+                .price(10.0)
+                .containArticles(List.of(articles))
+                .build();
+    }
+}
@@ -0,0 +1,180 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AvailabilitySnapshotTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(AvailabilitySnapshotTest.class);
+    private static final int CATALOG_SIZE = 10_000;
+    private static final long REPOSITORY_LATENCY_MILLIS = 500;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    @TempDir
+    Path directory;
+
+    private WarehouseProperties properties;
+    private final List<AvailabilityEngine> engines = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getProduct().getEngine().setEnabled(true);
+        properties.getProduct().getEngine().getSnapshot().setPath(directory.resolve("availability.snapshot"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engines.forEach(AvailabilityEngine::shutdown);
+    }
+
+    @Test
+    void write_ShouldRestoreTheSameCatalog() {
+        Product chair = createProduct(0, new Product.ArticleQuantity("leg", 4L));
+        Product stool = Product.builder().id("1").containArticles(List.of(new Product.ArticleQuantity("seat", 1L))).build();
+        when(productRepository.findAll()).thenReturn(List.of(chair, stool));
+        when(inventoryRepository.findAll()).thenReturn(List.of(new Inventory("leg", "Leg", 9L), new Inventory("seat", "Seat", 2L)));
+        AvailabilityEngine written = createEngine();
+        written.rebuild();
+        written.writeSnapshot();
+
+        AvailabilityEngine restored = createEngine();
+        assertTrue(restored.restoreSnapshot());
+
+        Map<Product, Long> sellable = sellable(restored);
+        assertEquals(List.of(2L, 2L), List.copyOf(sellable.values()));
+        Product restoredChair = sellable.keySet().iterator().next();
+        assertEquals("0", restoredChair.getId());
+        assertEquals("product 0", restoredChair.getName());
+        assertEquals(10.0, restoredChair.getPrice());
+        assertEquals("leg", restoredChair.getContainArticles().get(0).getArticleId());
+        assertEquals(4L, restoredChair.getContainArticles().get(0).getQuantity());
+        assertNull(sellable.keySet().stream().skip(1).findFirst().orElseThrow().getPrice());
+    }
+
+    @Test
+    void restoreSnapshot_ShouldKeepACatalogAlreadyBuiltFromMongo() {
+        when(productRepository.findAll()).thenReturn(List.of(createProduct(0, new Product.ArticleQuantity("leg", 4L))));
+        when(inventoryRepository.findAll()).thenReturn(List.of(new Inventory("leg", "Leg", 9L)));
+        AvailabilityEngine written = createEngine();
+        written.rebuild();
+        written.writeSnapshot();
+        when(inventoryRepository.findAll()).thenReturn(List.of(new Inventory("leg", "Leg", 4L)));
+
+        // A request served before the application was ready built the engine from MongoDB
+        AvailabilityEngine engine = createEngine();
+        assertEquals(List.of(1L), List.copyOf(sellable(engine).values()));
+        engine.applicationReady();
+
+        assertEquals(List.of(1L), List.copyOf(sellable(engine).values()));
+        verify(productRepository, times(2)).findAll();
+    }
+
+    @Test
+    void restoreSnapshot_ShouldIgnoreCorruptFiles() throws IOException {
+        Files.write(properties.getProduct().getEngine().getSnapshot().getPath(), new byte[]{0x57, 0x48, 0x53, 0x31, 0, 0});
+
+        assertFalse(createEngine().restoreSnapshot());
+    }
+
+    @Test
+    void applicationReady_ShouldServeTheFirstResponseFromTheSnapshotBeforeMongoHasBeenRead() {
+        List<Product> products = new ArrayList<>(CATALOG_SIZE);
+        List<Inventory> inventory = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            products.add(createProduct(i, new Product.ArticleQuantity(Integer.toString(i), 1L)));
+            inventory.add(new Inventory(Integer.toString(i), "article " + i, i % 10L));
+        }
+        // Reading the whole catalog from MongoDB is what a new instance waits for
+        when(productRepository.findAll()).thenAnswer(slowly(products));
+        when(inventoryRepository.findAll()).thenAnswer(slowly(inventory));
+
+        // Without a snapshot, as on the first deploy
+        long coldMillis = timeToFirstResponse(createEngine());
+        engines.get(0).writeSnapshot();
+
+        // With the snapshot the previous instance left behind
+        long warmMillis = timeToFirstResponse(createEngine());
+
+        assertTrue(coldMillis >= 2 * REPOSITORY_LATENCY_MILLIS, "cold start took " + coldMillis + " ms");
+        assertTrue(warmMillis < REPOSITORY_LATENCY_MILLIS, "warm start took " + warmMillis + " ms");
+        logger.info("Time to first response for {} products: {} ms without snapshot, {} ms with snapshot",
+                CATALOG_SIZE, coldMillis, warmMillis);
+
+        // The background reconciliation reads MongoDB as well
+        verify(productRepository, timeout(5_000).times(2)).findAll();
+    }
+
+    private long timeToFirstResponse(AvailabilityEngine engine) {
+        long start = System.nanoTime();
+        engine.applicationReady();
+        Map<Product, Long> sellable = sellable(engine);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // Every article with stock makes its product sellable
+        assertEquals(CATALOG_SIZE * 9 / 10, sellable.size());
+        assertEquals(9L, sellable.values().stream().mapToLong(Long::longValue).max().orElseThrow());
+        return elapsedMillis;
+    }
+
+    private AvailabilityEngine createEngine() {
+        AvailabilityEngine engine = new AvailabilityEngine(productRepository, inventoryRepository, new CatalogVersion(properties), properties);
+        engines.add(engine);
+        return engine;
+    }
+
+    private static Map<Product, Long> sellable(AvailabilityEngine engine) {
+        Map<Product, Long> sellable = new LinkedHashMap<>();
+        engine.forEachSellable(sellable::put);
+        return sellable;
+    }
+
+    private static <T> Answer<List<T>> slowly(List<T> documents) {
+        return invocation -> {
+            Thread.sleep(REPOSITORY_LATENCY_MILLIS);
+            return documents;
+        };
+    }
+
+    private static Product createProduct(int id, Product.ArticleQuantity... articles) {
+        return Product.builder()
+                .id(Integer.toString(id))
+                .name("product " + id)
+                .price(10.0)
+                .containArticles(List.of(articles))
+                .build();
+    }
+}
@@ -0,0 +1,106 @@
+package com.sona.warehouse.service;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.ConcurrentUpdateException;
+import com.sona.warehouse.exceptions.ProductSoldOutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConflictRetryTest {
+
+    private WarehouseProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private ConflictRetry conflictRetry;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getRetry().setInitialBackoff(Duration.ofMillis(1));
+        properties.getRetry().setMaxBackoff(Duration.ofMillis(2));
+        meterRegistry = new SimpleMeterRegistry();
+        conflictRetry = new ConflictRetry(properties, meterRegistry);
+    }
+
+    @Test
+    void execute_ShouldRetryConflictsUntilAnAttemptSucceeds() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        long result = conflictRetry.execute("product.sell", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("version changed");
+            }
+            return 42L;
+        });
+
+        assertEquals(42L, result);
+        assertEquals(3, attempts.get());
+        assertEquals(2.0, meterRegistry.get("warehouse.conflicts")
+                .tag("operation", "product.sell").tag("outcome", "retried").counter().count());
+    }
+
+    @Test
+    void execute_ShouldGiveUpAfterMaxAttempts() {
+        properties.getRetry().setMaxAttempts(2);
+        AtomicInteger attempts = new AtomicInteger();
+
+        ConcurrentUpdateException exception = assertThrows(ConcurrentUpdateException.class,
+                () -> conflictRetry.execute("product.upload", () -> {
+                    attempts.incrementAndGet();
+                    throw duplicateKeys();
+                }));
+
+        assertEquals(2, attempts.get());
+        assertInstanceOf(BulkOperationException.class, exception.getCause());
+        assertEquals(1.0, meterRegistry.get("warehouse.conflicts")
+                .tag("operation", "product.upload").tag("outcome", "exhausted").counter().count());
+    }
+
+    @Test
+    void execute_ShouldPassOtherExceptionsThroughWithoutRetrying() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(ProductSoldOutException.class, () -> conflictRetry.execute("product.sell", () -> {
+            attempts.incrementAndGet();
+            throw new ProductSoldOutException("1");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertEquals(0, meterRegistry.find("warehouse.conflicts").counters().size());
+    }
+
+    @Test
+    void isConflict_ShouldOnlyAcceptBulkWritesFailingWithDuplicateKeys() {
+        assertTrue(ConflictRetry.isConflict(duplicateKeys()));
+        assertFalse(ConflictRetry.isConflict(bulkFailure(new BulkWriteError(121, "Document failed validation", new BsonDocument(), 0))));
+        assertFalse(ConflictRetry.isConflict(new IllegalStateException()));
+    }
+
+    private static BulkOperationException duplicateKeys() {
+        return bulkFailure(new BulkWriteError(11000, "E11000 duplicate key error", new BsonDocument(), 0));
+    }
+
+    private static BulkOperationException bulkFailure(BulkWriteError error) {
+        BulkWriteResult result = BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+        return new BulkOperationException("Bulk write failed",
+                new MongoBulkWriteException(result, List.of(error), null, new ServerAddress(), Set.of()));
+    }
+}
@@ -1,8 +1,17 @@
 package com.sona.warehouse.service;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.dto.OrderLineDTO;
 import com.sona.warehouse.dto.ProductArticleDTO;
 import com.sona.warehouse.dto.ProductDTO;
 import com.sona.warehouse.dto.SellableProductDTO;
+import com.sona.warehouse.dto.SellableProductPageDTO;
+import com.sona.warehouse.exceptions.ArticleNotFoundException;
+import com.sona.warehouse.exceptions.CustomNumberFormatException;
+import com.sona.warehouse.exceptions.InvalidOrderException;
+import com.sona.warehouse.exceptions.PartialUploadException;
 import com.sona.warehouse.exceptions.ProductNotFoundException;
 import com.sona.warehouse.exceptions.ProductSoldOutException;
 import com.sona.warehouse.model.Inventory;
@@ -12,15 +21,25 @@ import com.sona.warehouse.repository.ProductRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -33,7 +52,8 @@ class ProductServiceTest {
     @Mock
     private InventoryRepository inventoryRepository;
 
-    @InjectMocks
+    private WarehouseProperties properties;
+    private CatalogVersion catalogVersion;
     private ProductService productService;
 
     private ProductDTO sampleProductDTO;
@@ -42,6 +62,12 @@ class ProductServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Service under test, reading the inventory without the in-process cache and materialized quantities
+        properties = new WarehouseProperties();
+        properties.getInventory().getCache().setEnabled(false);
+        properties.getProduct().getProjection().setEnabled(false);
+        createService();
+
         // Sample Product Article DTO
         ProductArticleDTO articleDTO = new ProductArticleDTO("1", "4");
 
@@ -65,29 +91,72 @@ class ProductServiceTest {
         sampleInventory = new Inventory("1", "Leg", 10L);
     }
 
+    private void createService() {
+        catalogVersion = new CatalogVersion(properties);
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+        AvailabilityCalculator availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+        SellableQuantityProjection projection = new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion,
+                new ConflictRetry(properties, new SimpleMeterRegistry()), properties);
+        productService = new ProductService(productRepository, inventoryCache, availabilityCalculator, projection,
+                new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties),
+                new StockDecrementBatcher(inventoryCache, properties, new SimpleMeterRegistry()),
+                new StockJournal(inventoryRepository, inventoryCache, projection,
+                        new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties), catalogVersion, properties),
+                catalogVersion, new ConflictRetry(properties, new SimpleMeterRegistry()), properties, new SimpleMeterRegistry());
+    }
+
     @Test
-    void saveAll_ShouldSaveNewProduct() {
-        when(productRepository.findByName(sampleProductDTO.getName())).thenReturn(Optional.empty());
+    void saveAll_ShouldUpsertProductsByName() {
+        when(productRepository.upsertByName(anyList(), eq(true))).thenReturn(acknowledged());
 
         productService.saveAll(List.of(sampleProductDTO));
 
-        verify(productRepository, times(1)).save(any(Product.class));
+        ArgumentCaptor<List<Product>> products = ArgumentCaptor.forClass(List.class);
+        verify(productRepository, times(1)).upsertByName(products.capture(), eq(true));
+        verify(productRepository, never()).findByName(anyString());
+        Product upserted = products.getValue().get(0);
+        assertEquals("Dining Chair", upserted.getName());
+        assertEquals(20.0, upserted.getPrice());
+        assertEquals(4L, upserted.getContainArticles().get(0).getQuantity());
     }
 
     @Test
-    void saveAll_ShouldUpdateExistingProduct() {
-        when(productRepository.findByName(sampleProductDTO.getName())).thenReturn(Optional.of(sampleProduct));
+    void saveAll_ShouldSendOneBulkWritePerBatch() {
+        properties.getProduct().getUpload().setBatchSize(2);
+        when(productRepository.upsertByName(anyList(), anyBoolean())).thenReturn(acknowledged());
 
-        productService.saveAll(List.of(sampleProductDTO));
+        productService.saveAll(List.of(sampleProductDTO, sampleProductDTO, sampleProductDTO));
+
+        verify(productRepository, times(2)).upsertByName(anyList(), anyBoolean());
+    }
+
+    @Test
+    void saveAll_ShouldRejectInvalidAmount() {
+        sampleProductDTO.setContainArticles(List.of(new ProductArticleDTO("1", "four")));
 
-        verify(productRepository, times(1)).save(sampleProduct);
-        assertEquals(20.0, sampleProduct.getPrice());
+        assertThrows(CustomNumberFormatException.class, () -> productService.saveAll(List.of(sampleProductDTO)));
+        verify(productRepository, never()).upsertByName(anyList(), anyBoolean());
+    }
+
+    @Test
+    void saveAll_ShouldReportTheSavedBatchesWhenALaterProductFails() {
+        properties.getProduct().getUpload().setBatchSize(1);
+        when(productRepository.upsertByName(anyList(), anyBoolean())).thenReturn(acknowledged());
+        ProductDTO invalidProductDTO = new ProductDTO("Table", 40.0, List.of(new ProductArticleDTO("1", "four")));
+
+        PartialUploadException exception = assertThrows(PartialUploadException.class,
+                () -> productService.saveAll(List.of(sampleProductDTO, invalidProductDTO)));
+
+        assertEquals(1, exception.getSaved());
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getHttpStatus());
+        assertInstanceOf(CustomNumberFormatException.class, exception.getCause());
+        verify(productRepository, times(1)).upsertByName(anyList(), anyBoolean());
     }
 
     @Test
     void findAll_ShouldReturnAvailableProducts() {
         when(productRepository.findAll()).thenReturn(List.of(sampleProduct));
-        when(inventoryRepository.findById("1")).thenReturn(Optional.of(sampleInventory));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
 
         List<SellableProductDTO> products = productService.findAll();
 
@@ -99,7 +168,7 @@ class ProductServiceTest {
     void findAll_ShouldFilterOutSoldOutProducts() {
         sampleInventory.setStock(2L); // Not enough stock
         when(productRepository.findAll()).thenReturn(List.of(sampleProduct));
-        when(inventoryRepository.findById("1")).thenReturn(Optional.of(sampleInventory));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
 
         List<SellableProductDTO> products = productService.findAll();
 
@@ -107,14 +176,238 @@ class ProductServiceTest {
     }
 
     @Test
-    void sell_ShouldReduceInventory() {
+    void findAll_ShouldReadMaterializedQuantities() {
+        properties.getProduct().getProjection().setEnabled(true);
+        createService();
+        sampleProduct.setSellableQuantity(2L);
+        when(productRepository.findAll()).thenReturn(List.of(sampleProduct)); // initial build of the projection
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
+        when(productRepository.findBySellableQuantityGreaterThan(0)).thenReturn(List.of(sampleProduct));
+
+        List<SellableProductDTO> products = productService.findAll();
+        productService.findAll();
+
+        assertEquals(1, products.size());
+        assertEquals(2L, products.get(0).getQuantity());
+        verify(productRepository, times(1)).findAll(); // built once, then read from the projection
+        verify(productRepository, times(2)).findBySellableQuantityGreaterThan(0);
+    }
+
+    @Test
+    void findByArticle_ShouldListProductsContainingArticleIncludingSoldOut() {
+        Product table = Product.builder()
+                .id("456")
+                .name("Table")
+                .price(50.0)
+                .containArticles(List.of(new Product.ArticleQuantity("1", 20L)))
+                .build();
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("1"))).thenReturn(List.of(sampleProduct, table));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
+
+        List<SellableProductDTO> products = productService.findByArticle("1");
+
+        assertEquals(2, products.size());
+        assertEquals(2L, products.get(0).getQuantity()); // 10 / 4
+        assertEquals(0L, products.get(1).getQuantity()); // 10 / 20
+    }
+
+    @Test
+    void findByArticle_ShouldRejectUnknownArticle() {
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("9"))).thenReturn(List.of());
+        when(inventoryRepository.findById("9")).thenReturn(Optional.empty());
+
+        assertThrows(ArticleNotFoundException.class, () -> productService.findByArticle("9"));
+    }
+
+    @Test
+    void sell_ShouldRefreshMaterializedQuantitiesOfAffectedProducts() {
+        properties.getProduct().getProjection().setEnabled(true);
+        createService();
+        sampleProduct.setSellableQuantity(2L);
         when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
-        when(inventoryRepository.findById("1")).thenReturn(Optional.of(sampleInventory));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory), List.of(new Inventory("1", "Leg", 6L)));
+        when(inventoryRepository.decrementStock(Map.of("1", 4L))).thenReturn(Optional.empty());
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("1"))).thenReturn(List.of(sampleProduct));
+
+        when(productRepository.updateSellableQuantities(List.of(sampleProduct), Map.of("123", 1L))).thenReturn(1); // 6 / 4
 
         productService.sell("123");
 
-        assertEquals(6, sampleInventory.getStock());
-        verify(inventoryRepository, times(1)).save(sampleInventory);
+        // Refreshed on the background thread of the projection
+        verify(productRepository, timeout(1000)).updateSellableQuantities(List.of(sampleProduct), Map.of("123", 1L));
+    }
+
+    @Test
+    void findAll_ShouldResolveSharedArticlesInBatches() {
+        properties.getInventory().setLookupBatchSize(2);
+        Product stool = Product.builder()
+                .id("456")
+                .name("Stool")
+                .price(10.0)
+                .containArticles(List.of(
+                        new Product.ArticleQuantity("1", 2L),
+                        new Product.ArticleQuantity("2", 1L),
+                        new Product.ArticleQuantity("3", 1L)))
+                .build();
+        when(productRepository.findAll()).thenReturn(List.of(sampleProduct, stool));
+        when(inventoryRepository.findAllById(List.of("1", "2"))).thenReturn(List.of(sampleInventory, new Inventory("2", "Seat", 3L)));
+        when(inventoryRepository.findAllById(List.of("3"))).thenReturn(List.of(new Inventory("3", "Screw", 8L)));
+
+        List<SellableProductDTO> products = productService.findAll();
+
+        assertEquals(2, products.size());
+        assertEquals(2L, products.get(0).getQuantity()); // 10 / 4
+        assertEquals(3L, products.get(1).getQuantity()); // min(10 / 2, 3 / 1, 8 / 1)
+        verify(inventoryRepository, times(2)).findAllById(anyList());
+        verify(inventoryRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void findPage_ShouldSkipUnsellableProductsAndReturnCursor() {
+        Product stool = Product.builder()
+                .id("456")
+                .name("Stool")
+                .price(10.0)
+                .containArticles(List.of(new Product.ArticleQuantity("2", 1L)))
+                .build();
+        Product bench = Product.builder()
+                .id("789")
+                .name("Bench")
+                .price(30.0)
+                .containArticles(List.of(new Product.ArticleQuantity("1", 5L)))
+                .build();
+        when(productRepository.findAllBy(PageRequest.of(0, 2, Sort.by("id")))).thenReturn(List.of(sampleProduct, stool));
+        when(productRepository.findByIdGreaterThan("456", PageRequest.of(0, 1, Sort.by("id")))).thenReturn(List.of(bench));
+        when(inventoryRepository.findAllById(anyList())).thenReturn(List.of(sampleInventory)); // article 2 is missing
+
+        SellableProductPageDTO page = productService.findPage(null, 2);
+
+        assertEquals(List.of("123", "789"), page.getProducts().stream().map(SellableProductDTO::getId).toList());
+        assertEquals(2L, page.getProducts().get(1).getQuantity()); // 10 / 5
+        assertEquals("789", page.getNextCursor());
+    }
+
+    @Test
+    void findPage_ShouldCapLimitAndEndOnShortChunk() {
+        properties.getProduct().getPage().setMaxSize(10);
+        when(productRepository.findByIdGreaterThan("100", PageRequest.of(0, 10, Sort.by("id")))).thenReturn(List.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
+
+        SellableProductPageDTO page = productService.findPage("100", 5000);
+
+        assertEquals(1, page.getProducts().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void forEachAvailable_ShouldWalkAllPagesOfTheProjection() {
+        properties.getProduct().getProjection().setEnabled(true);
+        properties.getProduct().getPage().setMaxSize(1);
+        createService();
+        sampleProduct.setSellableQuantity(2L);
+        Product stool = Product.builder().id("456").name("Stool").price(10.0)
+                .containArticles(List.of(new Product.ArticleQuantity("1", 1L))).sellableQuantity(10L).build();
+        when(productRepository.findAll()).thenReturn(List.of()); // initial build of the projection
+        when(productRepository.findBySellableQuantityGreaterThan(eq(0L), any(Pageable.class))).thenReturn(List.of(sampleProduct));
+        when(productRepository.findBySellableQuantityGreaterThanAndIdGreaterThan(eq(0L), eq("123"), any(Pageable.class)))
+                .thenReturn(List.of(stool));
+        when(productRepository.findBySellableQuantityGreaterThanAndIdGreaterThan(eq(0L), eq("456"), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        List<SellableProductDTO> products = new ArrayList<>();
+        productService.forEachAvailable(products::add);
+
+        assertEquals(List.of(2L, 10L), products.stream().map(SellableProductDTO::getQuantity).toList());
+        verify(inventoryRepository, never()).findAllById(anyList());
+    }
+
+    @Test
+    void sell_ShouldReduceInventory() {
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory), List.of(new Inventory("1", "Leg", 6L)));
+        when(inventoryRepository.decrementStock(Map.of("1", 4L))).thenReturn(Optional.empty());
+
+        long remaining = productService.sell("123");
+
+        assertEquals(1L, remaining); // 6 / 4
+        assertEquals(1L, catalogVersion.get());
+        verify(inventoryRepository, times(1)).decrementStock(Map.of("1", 4L));
+        verify(inventoryRepository, never()).save(any(Inventory.class));
+    }
+
+    @Test
+    void sell_ShouldDecrementEveryArticleOnceForAllUnits() {
+        sampleInventory.setStock(100L);
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory), List.of(new Inventory("1", "Leg", 40L)));
+        when(inventoryRepository.decrementStock(Map.of("1", 60L))).thenReturn(Optional.empty());
+
+        long remaining = productService.sell("123", 15);
+
+        assertEquals(10L, remaining); // 40 / 4
+        verify(inventoryRepository, times(1)).decrementStock(anyMap());
+    }
+
+    @Test
+    void sell_ShouldRejectMoreUnitsThanInStock() {
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
+
+        assertThrows(ProductSoldOutException.class, () -> productService.sell("123", 3)); // 3 * 4 > 10
+        assertThrows(InvalidOrderException.class, () -> productService.sell("123", 0));
+
+        verify(inventoryRepository, never()).decrementStock(anyMap());
+    }
+
+    @Test
+    void sell_ShouldThrowSoldOutWhenArticleRunsOutDuringWrite() {
+        sampleProduct.setContainArticles(List.of(
+                new Product.ArticleQuantity("1", 4L),
+                new Product.ArticleQuantity("2", 1L)));
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1", "2"))).thenReturn(List.of(sampleInventory, new Inventory("2", "Seat", 1L)));
+        when(inventoryRepository.decrementStock(Map.of("1", 4L, "2", 1L))).thenReturn(Optional.of("2")); // sold by someone else meanwhile
+        when(inventoryRepository.findById("2")).thenReturn(Optional.of(new Inventory("2", "Seat", 0L)));
+
+        assertThrows(ProductSoldOutException.class, () -> productService.sell("123"));
+    }
+
+    @Test
+    void sell_ShouldLeaveDecisionToConditionalWriteWithOtherInstances() {
+        properties.getMultiInstance().setEnabled(true);
+        properties.getInventory().getCache().setEnabled(true);
+        createService();
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+        when(inventoryRepository.decrementStock(Map.of("1", 4L))).thenReturn(Optional.empty());
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(new Inventory("1", "Leg", 8L)));
+
+        long remaining = productService.sell("123");
+
+        assertEquals(2L, remaining); // 8 / 4
+        verify(inventoryRepository, times(1)).findAllById(anyList()); // only for the remaining quantity
+    }
+
+    @Test
+    void sell_ShouldRejectACountWhoseArticleAmountOverflows() {
+        properties.getMultiInstance().setEnabled(true);
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+
+        assertThrows(InvalidOrderException.class, () -> productService.sell("123", Long.MAX_VALUE / 2)); // 4 legs each
+        verify(inventoryRepository, never()).decrementStock(anyMap());
+    }
+
+    @Test
+    void sell_ShouldThrowProductSoldOutExceptionWhenTheGroupCommitCannotCoverTheSale() {
+        properties.getProduct().getGroupCommit().setEnabled(true);
+        createService();
+        when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(new Inventory("1", "Leg", 8L)));
+        // Sold by another window in the meantime
+        when(inventoryRepository.decrementStock(Map.of("1", 4L))).thenReturn(Optional.of("1"));
+        when(inventoryRepository.findById("1")).thenReturn(Optional.of(new Inventory("1", "Leg", 2L)));
+
+        assertThrows(ProductSoldOutException.class, () -> productService.sell("123"));
+        verify(inventoryRepository, times(1)).decrementStock(anyMap());
     }
 
     @Test
@@ -128,8 +421,64 @@ class ProductServiceTest {
     void sell_ShouldThrowProductSoldOutException() {
         sampleInventory.setStock(2L); // Not enough stock
         when(productRepository.findById("123")).thenReturn(Optional.of(sampleProduct));
-        when(inventoryRepository.findById("1")).thenReturn(Optional.of(sampleInventory));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
 
         assertThrows(ProductSoldOutException.class, () -> productService.sell("123"));
     }
+
+    @Test
+    void sellOrder_ShouldDecrementAggregatedDemandInOneWrite() {
+        Product stool = Product.builder()
+                .id("456")
+                .name("Stool")
+                .price(10.0)
+                .containArticles(List.of(new Product.ArticleQuantity("1", 1L), new Product.ArticleQuantity("2", 2L)))
+                .build();
+        when(productRepository.findAllById(Set.of("123", "456"))).thenReturn(List.of(sampleProduct, stool));
+        when(inventoryRepository.findAllById(List.of("1", "2"))).thenReturn(List.of(sampleInventory, new Inventory("2", "Seat", 6L)));
+        when(inventoryRepository.decrementStock(Map.of("1", 7L, "2", 6L))).thenReturn(Optional.empty());
+
+        productService.sellOrder(List.of(
+                new OrderLineDTO("123", 1L), new OrderLineDTO("456", 2L), new OrderLineDTO("456", 1L)));
+
+        verify(inventoryRepository, times(1)).decrementStock(Map.of("1", 7L, "2", 6L)); // 4 * 1 + 1 * 3, 2 * 3
+        verify(inventoryRepository, never()).decrementStock(anyString(), anyLong());
+    }
+
+    @Test
+    void sellOrder_ShouldSellNothingWhenOrderExceedsStock() {
+        when(productRepository.findAllById(Set.of("123"))).thenReturn(List.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
+
+        // 3 chairs need 12 legs, only 10 in stock
+        assertThrows(ProductSoldOutException.class, () -> productService.sellOrder(List.of(new OrderLineDTO("123", 3L))));
+
+        verify(inventoryRepository, never()).decrementStock(anyMap());
+    }
+
+    @Test
+    void sellOrder_ShouldReportProductWhoseArticleRanOutDuringWrite() {
+        when(productRepository.findAllById(Set.of("123"))).thenReturn(List.of(sampleProduct));
+        when(inventoryRepository.findAllById(List.of("1"))).thenReturn(List.of(sampleInventory));
+        when(inventoryRepository.decrementStock(Map.of("1", 8L))).thenReturn(Optional.of("1"));
+        when(inventoryRepository.findById("1")).thenReturn(Optional.of(new Inventory("1", "Leg", 3L)));
+
+        ProductSoldOutException exception = assertThrows(ProductSoldOutException.class,
+                () -> productService.sellOrder(List.of(new OrderLineDTO("123", 2L))));
+
+        assertEquals("Product is sold out: 123", exception.getMessage());
+    }
+
+    @Test
+    void sellOrder_ShouldRejectInvalidLines() {
+        assertThrows(InvalidOrderException.class, () -> productService.sellOrder(List.of()));
+        assertThrows(InvalidOrderException.class, () -> productService.sellOrder(List.of(new OrderLineDTO("123", 0L))));
+        assertThrows(InvalidOrderException.class, () -> productService.sellOrder(
+                List.of(new OrderLineDTO("123", Long.MAX_VALUE), new OrderLineDTO("123", 1L))));
+        verifyNoInteractions(productRepository, inventoryRepository);
+    }
+
+    private static BulkWriteResult acknowledged() {
+        return BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of());
+    }
 }
@@ -0,0 +1,163 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.ConcurrentUpdateException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.Product;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SellableQuantityProjectionTest {
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private WarehouseProperties properties;
+    private CatalogVersion catalogVersion;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getInventory().getCache().setEnabled(false);
+        properties.getRetry().setInitialBackoff(Duration.ZERO);
+        catalogVersion = new CatalogVersion(properties);
+    }
+
+    private SellableQuantityProjection createProjection() {
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+        return new SellableQuantityProjection(productRepository, new AvailabilityCalculator(inventoryCache, properties),
+                catalogVersion, new ConflictRetry(properties, new SimpleMeterRegistry()), properties);
+    }
+
+    @Test
+    void articlesChanged_ShouldWriteOnlyChangedQuantities() {
+        Product chair = createProduct("1", "Chair", 3L, new Product.ArticleQuantity("leg", 4L));
+        Product table = createProduct("2", "Table", 2L, new Product.ArticleQuantity("leg", 4L), new Product.ArticleQuantity("top", 1L));
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("leg"))).thenReturn(List.of(chair, table));
+        when(inventoryRepository.findAllById(List.of("leg", "top"))).thenReturn(List.of(
+                new Inventory("leg", "Leg", 8L), new Inventory("top", "Top", 5L)));
+        when(productRepository.updateSellableQuantities(List.of(chair), Map.of("1", 2L))).thenReturn(1);
+
+        Map<String, Long> changed = createProjection().articlesChanged(List.of("leg"));
+
+        // The table is still min(8 / 4, 5 / 1) = 2 and is not written
+        assertEquals(Map.of("1", 2L), changed);
+        verify(productRepository, never()).findAllById(anyIterable());
+    }
+
+    @Test
+    void articlesChanged_ShouldRecalculateProductsWrittenByAConcurrentRefresh() {
+        Product chair = createProduct("1", "Chair", 3L, new Product.ArticleQuantity("leg", 4L));
+        chair.setVersion(7L);
+        Product written = createProduct("1", "Chair", 1L, new Product.ArticleQuantity("leg", 4L));
+        written.setVersion(8L);
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("leg"))).thenReturn(List.of(chair));
+        // The stock read by this refresh is outdated by the time it writes
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of(new Inventory("leg", "Leg", 8L)),
+                List.of(new Inventory("leg", "Leg", 0L)));
+        when(productRepository.updateSellableQuantities(List.of(chair), Map.of("1", 2L))).thenReturn(0);
+        when(productRepository.findAllById(Set.of("1"))).thenReturn(List.of(written));
+        when(productRepository.updateSellableQuantities(List.of(written), Map.of("1", 0L))).thenReturn(1);
+
+        Map<String, Long> changed = createProjection().articlesChanged(List.of("leg"));
+
+        assertEquals(Map.of("1", 0L), changed);
+        verify(productRepository, times(2)).updateSellableQuantities(anyList(), anyMap());
+    }
+
+    @Test
+    void articlesChanged_ShouldGiveUpOnProductsThatKeepBeingWrittenConcurrently() {
+        Product chair = createProduct("1", "Chair", 3L, new Product.ArticleQuantity("leg", 4L));
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("leg"))).thenReturn(List.of(chair));
+        when(productRepository.findAllById(Set.of("1"))).thenReturn(List.of(chair));
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of(new Inventory("leg", "Leg", 8L)));
+        when(productRepository.updateSellableQuantities(List.of(chair), Map.of("1", 2L))).thenReturn(0);
+
+        SellableQuantityProjection projection = createProjection();
+
+        assertThrows(ConcurrentUpdateException.class, () -> projection.articlesChanged(List.of("leg")));
+        verify(productRepository, times(properties.getRetry().getMaxAttempts())).updateSellableQuantities(anyList(), anyMap());
+    }
+
+    @Test
+    void articlesChangedLater_ShouldRefreshInTheBackgroundAndIncreaseTheCatalogVersion() {
+        Product chair = createProduct("1", "Chair", 3L, new Product.ArticleQuantity("leg", 4L));
+        when(productRepository.findByContainArticlesArticleIdIn(List.of("leg"))).thenReturn(List.of(chair));
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of(new Inventory("leg", "Leg", 8L)));
+        when(productRepository.updateSellableQuantities(List.of(chair), Map.of("1", 2L))).thenReturn(1);
+        long version = catalogVersion.get();
+
+        SellableQuantityProjection projection = createProjection();
+        try {
+            projection.articlesChangedLater(Set.of("leg"));
+
+            verify(productRepository, timeout(1000)).updateSellableQuantities(List.of(chair), Map.of("1", 2L));
+            await(() -> catalogVersion.get() > version);
+        } finally {
+            projection.shutdown();
+        }
+    }
+
+    @Test
+    void productsChanged_ShouldMarkProductsWithMissingArticlesAsSoldOut() {
+        Product chair = createProduct("1", "Chair", null, new Product.ArticleQuantity("leg", 4L));
+        when(productRepository.findByNameIn(List.of("Chair"))).thenReturn(List.of(chair));
+        when(inventoryRepository.findAllById(List.of("leg"))).thenReturn(List.of());
+
+        when(productRepository.updateSellableQuantities(List.of(chair), Map.of("1", 0L))).thenReturn(1);
+
+        createProjection().productsChanged(List.of("Chair"));
+
+        verify(productRepository, times(1)).updateSellableQuantities(List.of(chair), Map.of("1", 0L));
+    }
+
+    @Test
+    void disabledProjection_ShouldNotTouchRepositories() {
+        properties.getProduct().getProjection().setEnabled(false);
+
+        createProjection().articlesChanged(List.of("leg"));
+
+        verifyNoInteractions(productRepository, inventoryRepository);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    private Product createProduct(String id, String name, Long sellableQuantity, Product.ArticleQuantity... articles) {
+        return Product.builder()
+                .id(id)
+                .name(name)
+                .price(10.0)
+                .containArticles(List.of(articles))
+                .sellableQuantity(sellableQuantity)
+                .build();
+    }
+}
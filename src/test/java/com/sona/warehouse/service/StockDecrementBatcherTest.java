@@ -0,0 +1,149 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Inventory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockDecrementBatcherTest {
+
+    @Mock
+    private InventoryCache inventoryCache;
+
+    private WarehouseProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private StockDecrementBatcher batcher;
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+    }
+
+    @Test
+    void write_ShouldDecrementTheDemandOfTheWholeWindowAtOnce() {
+        batcher = new StockDecrementBatcher(inventoryCache, properties, meterRegistry);
+        List<StockDecrementBatcher.Sale> window = List.of(sale(Map.of("leg", 4L)), sale(Map.of("leg", 4L, "top", 1L)));
+        when(inventoryCache.decrementStock(Map.of("leg", 8L, "top", 1L))).thenReturn(Optional.empty());
+
+        batcher.write(window);
+
+        assertEquals(List.of(Optional.empty(), Optional.empty()), results(window));
+        verify(inventoryCache, times(1)).decrementStock(anyMap());
+    }
+
+    @Test
+    void write_ShouldSellOutOnlyTheSalesTheStockCannotCover() {
+        batcher = new StockDecrementBatcher(inventoryCache, properties, meterRegistry);
+        List<StockDecrementBatcher.Sale> window = List.of(
+                sale(Map.of("leg", 4L)), sale(Map.of("leg", 8L)), sale(Map.of("leg", 4L)), sale(Map.of("top", 1L)));
+        when(inventoryCache.decrementStock(Map.of("leg", 16L, "top", 1L))).thenReturn(Optional.of("leg"));
+        when(inventoryCache.findById("leg")).thenReturn(Optional.of(new Inventory("leg", "Leg", 10L)));
+        when(inventoryCache.decrementStock(Map.of("leg", 8L, "top", 1L))).thenReturn(Optional.empty());
+
+        batcher.write(window);
+
+        // The second sale does not fit after the first, the third still does
+        assertEquals(List.of(Optional.empty(), Optional.of("leg"), Optional.empty(), Optional.empty()), results(window));
+    }
+
+    @Test
+    void write_ShouldRejectEverySaleOfAMissingArticle() {
+        batcher = new StockDecrementBatcher(inventoryCache, properties, meterRegistry);
+        List<StockDecrementBatcher.Sale> window = List.of(sale(Map.of("leg", 4L)), sale(Map.of("leg", 4L, "top", 1L)));
+        when(inventoryCache.decrementStock(Map.of("leg", 8L, "top", 1L))).thenReturn(Optional.of("leg"));
+        when(inventoryCache.findById("leg")).thenReturn(Optional.empty());
+
+        batcher.write(window);
+
+        assertEquals(List.of(Optional.of("leg"), Optional.of("leg")), results(window));
+        verify(inventoryCache, times(1)).decrementStock(anyMap());
+    }
+
+    @Test
+    void decrementStock_ShouldNeverOversellWhenConcurrentSalesAreBatched() throws Exception {
+        properties.getProduct().getGroupCommit().setEnabled(true);
+        properties.getProduct().getGroupCommit().setMaxWait(Duration.ofMillis(5));
+        AtomicLong stock = new AtomicLong(100);
+        AtomicInteger writes = new AtomicInteger();
+        when(inventoryCache.decrementStock(anyMap())).thenAnswer(invocation -> {
+            writes.incrementAndGet();
+            long amount = invocation.<Map<String, Long>>getArgument(0).get("leg");
+            if (stock.get() < amount) {
+                return Optional.of("leg");
+            }
+            stock.addAndGet(-amount);
+            return Optional.empty();
+        });
+        lenient().when(inventoryCache.findById("leg")).thenAnswer(invocation -> Optional.of(new Inventory("leg", "Leg", stock.get())));
+        batcher = new StockDecrementBatcher(inventoryCache, properties, meterRegistry);
+
+        // 40 threads each trying to sell 5 times 1 unit of 100 in stock
+        ExecutorService executor = Executors.newFixedThreadPool(40);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger sold = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 40; thread++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < 5; i++) {
+                    if (batcher.decrementStock(Map.of("leg", 1L)).isEmpty()) {
+                        sold.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(100, sold.get());
+        assertEquals(0L, stock.get());
+        assertTrue(writes.get() < 200, "wrote " + writes.get() + " times for 200 sales");
+        assertEquals(200.0, meterRegistry.get("warehouse.product.sell.batch.size").summary().totalAmount());
+    }
+
+    private static StockDecrementBatcher.Sale sale(Map<String, Long> amountByArticle) {
+        return new StockDecrementBatcher.Sale(amountByArticle, new CompletableFuture<>());
+    }
+
+    private static List<Optional<String>> results(List<StockDecrementBatcher.Sale> window) {
+        return window.stream().map(sale -> sale.result().getNow(null)).toList();
+    }
+}
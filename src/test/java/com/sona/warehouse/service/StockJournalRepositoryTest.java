@@ -0,0 +1,105 @@
+package com.sona.warehouse.service;
+
+import com.github.dockerjava.api.model.ExposedPort;
+import com.github.dockerjava.api.model.PortBinding;
+import com.github.dockerjava.api.model.Ports;
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.repository.InventoryRepository;
+import com.sona.warehouse.repository.ProductRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Replays the stock journal into MongoDB, where {@link StockJournalTest} replays it into a mocked repository.
+ */
+@Testcontainers
+@DataMongoTest
+@ExtendWith(SpringExtension.class)
+class StockJournalRepositoryTest {
+
+    private static final int OUTPUT_MONGODB_PORT = 27018;
+    private static final int MONGODB_PORT = 27017;
+
+    @Container
+    private static final MongoDBContainer mongoDBContainer = new MongoDBContainer(DockerImageName.parse("mongo:latest"))
+            .withExposedPorts(MONGODB_PORT)
+            .withCreateContainerCmdModifier(cmd -> cmd.withPortBindings(
+                    new PortBinding(Ports.Binding.bindPort(OUTPUT_MONGODB_PORT), new ExposedPort(MONGODB_PORT))
+            ));
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @TempDir
+    private Path directory;
+
+    private WarehouseProperties properties;
+
+    @BeforeEach
+    void setUp() {
+        inventoryRepository.deleteAll();
+        properties = new WarehouseProperties();
+        properties.getProduct().getProjection().setEnabled(false);
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDirectory(directory);
+        properties.getJournal().setFlushInterval(Duration.ofMillis(1));
+    }
+
+    @Test
+    void start_ShouldApplyEveryChangeLeftByACrashExactlyOnce() throws IOException {
+        // Given an article, sold from and restocked with an article without a name through the journal
+        inventoryRepository.save(new Inventory("leg", "Leg", 10L));
+        StockJournal journal = createJournal();
+        journal.start();
+        assertEquals(Optional.empty(), journal.decrementStock(Map.of("leg", 4L)));
+        assertEquals(1, journal.addStock(List.of(new Inventory("seat", null, 3L))));
+        assertEquals(Optional.empty(), journal.decrementStock(Map.of("leg", 1L, "seat", 1L)));
+
+        // When the application crashes with the journal files left behind, whatever the applier got to, and restarts
+        journal.halt();
+        StockJournal restarted = createJournal();
+        restarted.start();
+        restarted.stop();
+
+        // Then every change is in MongoDB once, including the article created without a name
+        assertEquals(5L, inventoryRepository.findById("leg").orElseThrow().getStock());
+        assertEquals(2L, inventoryRepository.findById("seat").orElseThrow().getStock());
+        assertEquals(3L, inventoryRepository.findMaxJournalSequence());
+        assertEquals(List.of(), JournalSegment.list(directory));
+    }
+
+    private StockJournal createJournal() {
+        InventoryCache inventoryCache = new InventoryCache(inventoryRepository, properties, new SimpleMeterRegistry());
+        AvailabilityCalculator availabilityCalculator = new AvailabilityCalculator(inventoryCache, properties);
+        CatalogVersion catalogVersion = new CatalogVersion(properties);
+        return new StockJournal(inventoryRepository, inventoryCache,
+                new SellableQuantityProjection(productRepository, availabilityCalculator, catalogVersion,
+                        new ConflictRetry(properties, new SimpleMeterRegistry()), properties),
+                new AvailabilityEngine(productRepository, inventoryRepository, catalogVersion, properties),
+                catalogVersion, properties);
+    }
+}
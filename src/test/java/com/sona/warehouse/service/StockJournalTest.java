@@ -0,0 +1,210 @@
+package com.sona.warehouse.service;
+
+import com.sona.warehouse.cache.InventoryCache;
+import com.sona.warehouse.config.WarehouseProperties;
+import com.sona.warehouse.exceptions.StockJournalFailedException;
+import com.sona.warehouse.model.Inventory;
+import com.sona.warehouse.model.StockJournalEntry;
+import com.sona.warehouse.repository.InventoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StockJournalTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+    @Mock
+    private InventoryCache inventoryCache;
+    @Mock
+    private SellableQuantityProjection projection;
+    @Mock
+    private AvailabilityEngine availabilityEngine;
+
+    @TempDir
+    private Path directory;
+
+    private WarehouseProperties properties;
+
+    // The inventory collection: stock and journal sequence per article
+    private final Map<String, long[]> collection = new ConcurrentHashMap<>();
+    // Applies only the first delta of a batch and then fails, as if the application died in the middle of it
+    private final AtomicBoolean failing = new AtomicBoolean();
+
+    @BeforeEach
+    void setUp() {
+        properties = new WarehouseProperties();
+        properties.getJournal().setEnabled(true);
+        properties.getJournal().setDirectory(directory);
+        properties.getJournal().setFlushInterval(Duration.ofMillis(1));
+        collection.put("leg", new long[]{10, 0});
+        collection.put("top", new long[]{5, 0});
+
+        lenient().when(inventoryRepository.findAllById(anyCollection())).thenAnswer(invocation ->
+                invocation.<Collection<String>>getArgument(0).stream()
+                        .filter(collection::containsKey)
+                        .map(articleId -> new Inventory(articleId, articleId, collection.get(articleId)[0]))
+                        .toList());
+        lenient().when(inventoryRepository.findMaxJournalSequence()).thenAnswer(invocation ->
+                collection.values().stream().mapToLong(article -> article[1]).max().orElse(0));
+        lenient().when(inventoryRepository.applyJournal(anyList())).thenAnswer(invocation -> {
+            int applied = 0;
+            for (StockJournalEntry entry : invocation.<List<StockJournalEntry>>getArgument(0)) {
+                for (StockJournalEntry.Delta delta : entry.getDeltas()) {
+                    long[] article = collection.computeIfAbsent(delta.getArticleId(), articleId -> new long[2]);
+                    if (article[1] < entry.getSequence()) {
+                        article[0] += delta.getAmount();
+                        article[1] = entry.getSequence();
+                        applied++;
+                    }
+                    if (failing.get()) {
+                        throw new IllegalStateException("Connection lost");
+                    }
+                }
+            }
+            return applied;
+        });
+    }
+
+    @Test
+    void start_ShouldReplayTheSalesThatWereNotAppliedBeforeACrash() {
+        StockJournal journal = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine, new CatalogVersion(properties), properties);
+        journal.start();
+        failing.set(true);
+
+        for (int sale = 0; sale < 3; sale++) {
+            assertEquals(Optional.empty(), journal.decrementStock(new TreeMap<>(Map.of("leg", 2L, "top", 1L))));
+        }
+        assertEquals(Map.of("leg", 4L, "top", 2L), journal.findStock(List.of("leg", "top")));
+        journal.halt();
+
+        // At most the first article of the first sale reached the collection
+        assertEquals(5L, collection.get("top")[0]);
+        assertTrue(collection.get("leg")[0] >= 8L);
+
+        failing.set(false);
+        StockJournal restarted = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine, new CatalogVersion(properties), properties);
+        restarted.start();
+
+        assertEquals(4L, collection.get("leg")[0]);
+        assertEquals(2L, collection.get("top")[0]);
+        assertEquals(Optional.of("leg"), restarted.decrementStock(Map.of("leg", 5L)));
+        assertEquals(Optional.empty(), restarted.decrementStock(Map.of("leg", 4L)));
+        restarted.stop();
+
+        assertEquals(0L, collection.get("leg")[0]);
+        assertEquals(4L, collection.get("leg")[1]);
+        assertEquals(List.of(), listFiles());
+    }
+
+    @Test
+    void start_ShouldIgnoreARecordTornByACrash() throws Exception {
+        JournalSegment segment = JournalSegment.create(directory, 1, 4096);
+        segment.append(new StockJournalEntry(1, List.of(new StockJournalEntry.Delta("leg", null, -1))));
+        segment.append(new StockJournalEntry(2, List.of(new StockJournalEntry.Delta("seat", "Seat", 3))));
+        int torn = JournalSegment.encode(new StockJournalEntry(1, List.of(new StockJournalEntry.Delta("leg", null, -1)))).length
+                + JournalSegment.encode(new StockJournalEntry(2, List.of(new StockJournalEntry.Delta("seat", "Seat", 3)))).length
+                + 4 * Integer.BYTES;
+        segment.append(new StockJournalEntry(3, List.of(new StockJournalEntry.Delta("top", null, -5))));
+        segment.force();
+        segment.close();
+        // Only part of the last record reached the disk
+        try (FileChannel channel = FileChannel.open(segment.getPath(), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(8), torn + 2 * Integer.BYTES + 4);
+        }
+
+        StockJournal journal = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine, new CatalogVersion(properties), properties);
+        journal.start();
+
+        assertEquals(9L, collection.get("leg")[0]);
+        assertEquals(3L, collection.get("seat")[0]);
+        assertEquals(5L, collection.get("top")[0]);
+        assertEquals(Map.of("top", 5L), journal.findStock(List.of("top")));
+        assertEquals(Optional.empty(), journal.decrementStock(Map.of("top", 5L)));
+        journal.stop();
+
+        assertEquals(0L, collection.get("top")[0]);
+        assertEquals(3L, collection.get("top")[1]);
+    }
+
+    @Test
+    void addStock_ShouldCreateMissingArticlesAndCountThem() {
+        StockJournal journal = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine, new CatalogVersion(properties), properties);
+        journal.start();
+
+        int created = journal.addStock(List.of(new Inventory("leg", "Leg", 2L), new Inventory("seat", "Seat", 4L),
+                new Inventory("seat", "Seat", 1L)));
+        assertEquals(Optional.of("screw"), journal.decrementStock(Map.of("leg", 1L, "screw", 1L)));
+        journal.stop();
+
+        assertEquals(1, created);
+        assertEquals(12L, collection.get("leg")[0]);
+        assertEquals(5L, collection.get("seat")[0]);
+        verify(projection, atLeastOnce()).articlesChanged(anyCollection());
+    }
+
+    @Test
+    void flushFailed_ShouldAcknowledgeAppendedChangesOnceAppliedAndRefuseNewOnes() throws Exception {
+        // Nothing is flushed during the test
+        properties.getJournal().setFlushInterval(Duration.ofHours(1));
+        StockJournal journal = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine, new CatalogVersion(properties), properties);
+        journal.start();
+        CompletableFuture<Optional<String>> sale = CompletableFuture.supplyAsync(() -> journal.decrementStock(Map.of("leg", 2L)));
+        while (journal.findStock(List.of("leg")).get("leg") != 8L) {
+            Thread.onSpinWait();
+        }
+
+        journal.flushFailed(new UncheckedIOException(new IOException("Disk full")));
+
+        // The appended sale is not reported as failed, it reaches the collection instead of the disk
+        assertEquals(Optional.empty(), sale.get(5, TimeUnit.SECONDS));
+        assertEquals(8L, collection.get("leg")[0]);
+        assertThrows(StockJournalFailedException.class, () -> journal.decrementStock(Map.of("leg", 1L)));
+        assertThrows(StockJournalFailedException.class, () -> journal.addStock(List.of(new Inventory("leg", "Leg", 1L))));
+        journal.halt();
+    }
+
+    @Test
+    void start_ShouldRejectMultipleInstances() {
+        properties.getMultiInstance().setEnabled(true);
+        StockJournal journal = new StockJournal(inventoryRepository, inventoryCache, projection, availabilityEngine, new CatalogVersion(properties), properties);
+
+        assertThrows(IllegalStateException.class, journal::start);
+    }
+
+    private List<Path> listFiles() {
+        try {
+            return JournalSegment.list(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}